@@ -10,6 +10,7 @@ package org.eclipse.lsp4j.debug.launch;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.ByteChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 
@@ -69,6 +70,17 @@ public final class DSPLauncher {
 		return DebugLauncher.createLauncher(server, IDebugProtocolClient.class, in, out, executorService, wrapper);
 	}
 
+	/**
+	 * Create a new Launcher for a debug server and a blocking channel, e.g. a Unix domain socket channel
+	 * obtained with {@link org.eclipse.lsp4j.jsonrpc.UnixDomainSockets#accept(java.nio.file.Path)}.
+	 * 
+	 * @param server - the server that receives method calls from the remote client
+	 * @param channel - channel to listen for incoming messages and to send outgoing messages
+	 */
+	public static Launcher<IDebugProtocolClient> createServerLauncher(IDebugProtocolServer server, ByteChannel channel) {
+		return DebugLauncher.createLauncher(server, IDebugProtocolClient.class, channel);
+	}
+
 	/**
 	 * Create a new Launcher for a debug client and an input and output stream.
 	 * 
@@ -111,4 +123,15 @@ public final class DSPLauncher {
 		return DebugLauncher.createLauncher(client, IDebugProtocolServer.class, in, out, executorService, wrapper);
 	}
 
+	/**
+	 * Create a new Launcher for a debug client and a blocking channel, e.g. a Unix domain socket channel
+	 * obtained with {@link org.eclipse.lsp4j.jsonrpc.UnixDomainSockets#connect(java.nio.file.Path)}.
+	 * 
+	 * @param client - the client that receives method calls from the remote server
+	 * @param channel - channel to listen for incoming messages and to send outgoing messages
+	 */
+	public static Launcher<IDebugProtocolServer> createClientLauncher(IDebugProtocolClient client, ByteChannel channel) {
+		return DebugLauncher.createLauncher(client, IDebugProtocolServer.class, channel);
+	}
+
 }
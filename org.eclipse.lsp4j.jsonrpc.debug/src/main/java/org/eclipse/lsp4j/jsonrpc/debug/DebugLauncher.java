@@ -10,6 +10,7 @@ package org.eclipse.lsp4j.jsonrpc.debug;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.ByteChannel;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
@@ -21,8 +22,6 @@ import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
 import org.eclipse.lsp4j.jsonrpc.debug.json.DebugMessageJsonHandler;
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
-import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
-import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
 import org.eclipse.lsp4j.jsonrpc.validation.ReflectiveMessageValidator;
 
 import com.google.gson.GsonBuilder;
@@ -59,6 +58,27 @@ public final class DebugLauncher {
 				.create();
 	}
 
+	/**
+	 * Create a new Launcher for a given local service object, a given remote
+	 * interface and a blocking channel that is used for both incoming and
+	 * outgoing messages.
+	 *
+	 * @param localService
+	 *            - an object on which classes RPC methods are looked up
+	 * @param remoteInterface
+	 *            - an interface on which RPC methods are looked up
+	 * @param channel
+	 *            - channel to listen for incoming messages and to send outgoing
+	 *            messages
+	 */
+	public static <T> Launcher<T> createLauncher(Object localService, Class<T> remoteInterface, ByteChannel channel) {
+		return new Builder<T>()
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.setChannel(channel)
+				.create();
+	}
+
 	/**
 	 * Create a new Launcher for a given local service object, a given remote
 	 * interface and an input and output stream, and set up message validation and
@@ -196,7 +216,9 @@ public final class DebugLauncher {
 		@Override
 		protected MessageJsonHandler createJsonHandler() {
 			Map<String, JsonRpcMethod> supportedMethods = getSupportedMethods();
-			if (configureGson != null)
+			if (typeAdapterRegistry != null)
+				return new DebugMessageJsonHandler(supportedMethods, typeAdapterRegistry);
+			else if (configureGson != null)
 				return new DebugMessageJsonHandler(supportedMethods, configureGson);
 			else
 				return new DebugMessageJsonHandler(supportedMethods);
@@ -204,9 +226,10 @@ public final class DebugLauncher {
 		
 		@Override
 		protected RemoteEndpoint createRemoteEndpoint(MessageJsonHandler jsonHandler) {
-			MessageConsumer outgoingMessageStream = new StreamMessageConsumer(output, jsonHandler);
+			MessageConsumer outgoingMessageStream = createMessageConsumer(jsonHandler);
 			outgoingMessageStream = wrapMessageConsumer(outgoingMessageStream);
-			RemoteEndpoint remoteEndpoint = new DebugRemoteEndpoint(outgoingMessageStream, ServiceEndpoints.toEndpoint(localServices));
+			RemoteEndpoint remoteEndpoint = new DebugRemoteEndpoint(outgoingMessageStream, createLocalEndpoint());
+			configureRemoteEndpoint(remoteEndpoint);
 			jsonHandler.setMethodProvider(remoteEndpoint);
 			return remoteEndpoint;
 		}
@@ -14,6 +14,7 @@ import org.eclipse.lsp4j.jsonrpc.debug.adapters.DebugEnumTypeAdapter;
 import org.eclipse.lsp4j.jsonrpc.debug.adapters.DebugMessageTypeAdapter;
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.TypeAdapterRegistry;
 
 import com.google.gson.GsonBuilder;
 
@@ -26,9 +27,32 @@ public class DebugMessageJsonHandler extends MessageJsonHandler {
 		super(supportedMethods, configureGson);
 	}
 
+	public DebugMessageJsonHandler(Map<String, JsonRpcMethod> supportedMethods, TypeAdapterRegistry registry) {
+		super(supportedMethods, registry);
+	}
+
+	private static class DefaultRegistryHolder {
+		static final TypeAdapterRegistry INSTANCE = new TypeAdapterRegistry(
+				TypeAdapterRegistry.createGsonBuilder().registerTypeAdapterFactory(new DebugEnumTypeAdapter.Factory()));
+	}
+
+	/**
+	 * A registry with the default configuration of debug protocol messages, to be shared by debug launchers
+	 * through {@link org.eclipse.lsp4j.jsonrpc.Launcher.Builder#setTypeAdapterRegistry(TypeAdapterRegistry)}.
+	 * Since it is never released, it must only be used for types whose class loaders live as long as this library.
+	 */
+	public static TypeAdapterRegistry getDefaultTypeAdapterRegistry() {
+		return DefaultRegistryHolder.INSTANCE;
+	}
+
 	public GsonBuilder getDefaultGsonBuilder() {
 		return super.getDefaultGsonBuilder().registerTypeAdapterFactory(new DebugMessageTypeAdapter.Factory(this))
 				.registerTypeAdapterFactory(new DebugEnumTypeAdapter.Factory());
 	}
 
+	@Override
+	public GsonBuilder getGsonBuilder(TypeAdapterRegistry registry) {
+		return super.getGsonBuilder(registry).registerTypeAdapterFactory(new DebugMessageTypeAdapter.Factory(this));
+	}
+
 }
@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.MessageIssueHandler;
+import org.eclipse.lsp4j.jsonrpc.json.BufferPool;
+import org.eclipse.lsp4j.jsonrpc.json.MessageCompression;
+import org.eclipse.lsp4j.jsonrpc.json.MessageFrameDecoder;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+
+/**
+ * A non-blocking socket connection served by an {@link NioEventLoop}. Incoming bytes are read and decoded
+ * into messages on the event loop thread; the messages are then passed to the message consumer in their
+ * original order using an executor, so the event loop is never blocked by message handlers. Outgoing
+ * bytes are queued and written by the event loop as soon as the socket accepts them.
+ */
+public class NioConnection implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(NioConnection.class.getName());
+
+	public static final long DEFAULT_MAX_PENDING_BYTES = 16L << 20;
+
+	private static final int MAX_READS_PER_EVENT = 16;
+	private static final int MAX_BUFFERS_PER_WRITE = 64;
+
+	private final SocketChannel channel;
+	private final NioEventLoop eventLoop;
+	private final WritableByteChannel output = new OutputChannel();
+
+	private final Queue<ByteBuffer> pendingOutput = new ConcurrentLinkedQueue<>();
+	private final AtomicLong pendingBytes = new AtomicLong();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final Object pendingLock = new Object();
+	private long maxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+
+	private final AtomicBoolean started = new AtomicBoolean();
+	private final CompletableFuture<Void> closed = new CompletableFuture<>();
+	private volatile boolean closing;
+
+	private SelectionKey key;
+	private MessageFrameDecoder decoder;
+	private int maxMessageSize = Integer.MAX_VALUE;
+	private BufferPool bufferPool;
+	private MessageCompression compression;
+
+	private final SelectionHandler selectionHandler = new SelectionHandler() {
+		@Override
+		public void handle(SelectionKey key) throws IOException {
+			if (key.isReadable())
+				read();
+			if (key.isValid() && key.isWritable())
+				flush();
+		}
+
+		@Override
+		public void close() {
+			NioConnection.this.close();
+		}
+	};
+
+	public NioConnection(SocketChannel channel, NioEventLoop eventLoop) throws IOException {
+		channel.configureBlocking(false);
+		this.channel = channel;
+		this.eventLoop = eventLoop;
+	}
+
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	public NioEventLoop getEventLoop() {
+		return eventLoop;
+	}
+
+	/**
+	 * The channel through which outgoing messages are sent. Writing to it copies the data into a queue
+	 * that is drained by the event loop; the writer only waits when the number of pending bytes exceeds
+	 * the configured maximum.
+	 */
+	public WritableByteChannel getOutput() {
+		return output;
+	}
+
+	public long getMaxPendingBytes() {
+		return maxPendingBytes;
+	}
+
+	/**
+	 * Set the number of outgoing bytes that may be queued before writers have to wait.
+	 */
+	public void setMaxPendingBytes(long maxPendingBytes) {
+		if (maxPendingBytes <= 0)
+			throw new IllegalArgumentException("maxPendingBytes must be positive");
+		this.maxPendingBytes = maxPendingBytes;
+	}
+
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/**
+	 * Set the maximal content length of incoming messages. Larger messages are skipped and reported
+	 * as issues. Must be set before the connection is started.
+	 */
+	public void setMaxMessageSize(int maxMessageSize) {
+		if (maxMessageSize <= 0)
+			throw new IllegalArgumentException("maxMessageSize must be positive");
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Set the pool from which buffers for the content of incoming messages are obtained. Must be set before
+	 * the connection is started.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	public MessageCompression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Set the compression settings shared with the message consumer that writes to {@link #getOutput()}.
+	 * Must be set before the connection is started.
+	 */
+	public void setCompression(MessageCompression compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * The number of outgoing bytes that have not been written to the socket yet.
+	 */
+	public long getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	/**
+	 * A future that is completed when the connection has been closed.
+	 */
+	public CompletableFuture<Void> getClosedFuture() {
+		return closed;
+	}
+
+	/**
+	 * Start reading incoming messages.
+	 * 
+	 * @param jsonHandler - used to parse the incoming messages
+	 * @param messageConsumer - receives the incoming messages
+	 * @param issueHandler - receives the issues found while parsing messages
+	 * @param executor - used to call the message consumer and the issue handler
+	 * @return the future returned by {@link #getClosedFuture()}
+	 */
+	public CompletableFuture<Void> start(MessageJsonHandler jsonHandler, MessageConsumer messageConsumer,
+			MessageIssueHandler issueHandler, Executor executor) {
+		if (!started.compareAndSet(false, true))
+			throw new IllegalStateException("This connection has already been started.");
+		SerialExecutor serialExecutor = new SerialExecutor(executor);
+		MessageConsumer callback = message -> serialExecutor.execute(() -> messageConsumer.consume(message));
+		MessageIssueHandler issueCallback = issueHandler == null ? null
+				: (message, issues) -> serialExecutor.execute(() -> issueHandler.handle(message, issues));
+		MessageFrameDecoder frameDecoder = new MessageFrameDecoder(jsonHandler, callback, issueCallback);
+		frameDecoder.setMaxMessageSize(maxMessageSize);
+		if (bufferPool != null)
+			frameDecoder.setBufferPool(bufferPool);
+		frameDecoder.setCompression(compression);
+		eventLoop.execute(() -> {
+			if (closing)
+				return;
+			try {
+				decoder = frameDecoder;
+				key = eventLoop.register(channel, SelectionKey.OP_READ, selectionHandler);
+				flush();
+			} catch (IOException exception) {
+				LOG.log(Level.FINE, exception.getMessage(), exception);
+				close();
+			}
+		});
+		return closed;
+	}
+
+	/**
+	 * Close the socket and discard all pending output.
+	 */
+	@Override
+	public void close() {
+		if (!eventLoop.inEventLoop() && eventLoop.isRunning()) {
+			try {
+				eventLoop.execute(this::doClose);
+				return;
+			} catch (RuntimeException exception) {
+				// The event loop has been closed in the meantime
+			}
+		}
+		doClose();
+	}
+
+	private void doClose() {
+		closing = true;
+		if (key != null)
+			key.cancel();
+		try {
+			channel.close();
+		} catch (IOException exception) {
+			LOG.log(Level.FINE, exception.getMessage(), exception);
+		}
+		if (decoder != null)
+			decoder.reset();
+		pendingOutput.clear();
+		synchronized (pendingLock) {
+			pendingBytes.set(0);
+			pendingLock.notifyAll();
+		}
+		closed.complete(null);
+	}
+
+	private void read() throws IOException {
+		ByteBuffer buffer = eventLoop.getReadBuffer();
+		for (int i = 0; i < MAX_READS_PER_EVENT; i++) {
+			buffer.clear();
+			int count = channel.read(buffer);
+			if (count < 0) {
+				close();
+				return;
+			}
+			if (count == 0)
+				return;
+			buffer.flip();
+			decoder.feed(buffer);
+		}
+	}
+
+	/**
+	 * Write as much pending output as the socket accepts, and register for write readiness if
+	 * some of it remains. Called on the event loop thread.
+	 */
+	private void flush() throws IOException {
+		if (key == null || !key.isValid())
+			return;
+		ByteBuffer[] buffers = new ByteBuffer[MAX_BUFFERS_PER_WRITE];
+		while (true) {
+			int count = 0;
+			for (ByteBuffer buffer : pendingOutput) {
+				buffers[count++] = buffer;
+				if (count == buffers.length)
+					break;
+			}
+			if (count == 0)
+				break;
+			long written = channel.write(buffers, 0, count);
+			int completed = 0;
+			while (completed < count && !buffers[completed].hasRemaining()) {
+				pendingOutput.poll();
+				completed++;
+			}
+			releasePendingBytes(written);
+			if (completed < count) {
+				// The socket buffer is full
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+	}
+
+	private void releasePendingBytes(long count) {
+		long remaining = pendingBytes.addAndGet(-count);
+		if (remaining + count > maxPendingBytes && remaining <= maxPendingBytes) {
+			synchronized (pendingLock) {
+				pendingLock.notifyAll();
+			}
+		}
+	}
+
+	private void requestFlush() {
+		if (eventLoop.inEventLoop()) {
+			try {
+				flush();
+			} catch (IOException exception) {
+				LOG.log(Level.FINE, exception.getMessage(), exception);
+				close();
+			}
+		} else if (flushScheduled.compareAndSet(false, true)) {
+			eventLoop.execute(() -> {
+				flushScheduled.set(false);
+				try {
+					flush();
+				} catch (IOException exception) {
+					LOG.log(Level.FINE, exception.getMessage(), exception);
+					close();
+				}
+			});
+		}
+	}
+
+	private void awaitPendingBytes() throws IOException {
+		if (eventLoop.inEventLoop())
+			return;
+		synchronized (pendingLock) {
+			while (pendingBytes.get() > maxPendingBytes && !closing) {
+				try {
+					pendingLock.wait();
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues written bytes for the event loop.
+	 */
+	private class OutputChannel implements WritableByteChannel {
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			awaitPendingBytes();
+			if (closing)
+				throw new ClosedChannelException();
+			int length = src.remaining();
+			ByteBuffer copy = ByteBuffer.allocate(length);
+			copy.put(src);
+			copy.flip();
+			pendingBytes.addAndGet(length);
+			pendingOutput.add(copy);
+			try {
+				requestFlush();
+			} catch (RuntimeException exception) {
+				// The event loop has been closed
+				throw new ClosedChannelException();
+			}
+			return length;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return !closing;
+		}
+
+		@Override
+		public void close() {
+			NioConnection.this.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A thread that multiplexes any number of non-blocking channels with a {@link Selector}. Tasks submitted
+ * with {@link #execute(Runnable)} are run on the event loop thread between selection operations.
+ */
+public class NioEventLoop implements Executor, Closeable {
+
+	private static final Logger LOG = Logger.getLogger(NioEventLoop.class.getName());
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final Selector selector;
+	private final Thread thread;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Shared by all channels of this event loop, since reading and decoding happens on the event loop thread.
+	 */
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+	private volatile boolean running = true;
+	/** Set when the remaining tasks have been run after stopping, guarded by the lock of {@link #tasks}. */
+	private boolean terminated;
+
+	public NioEventLoop() throws IOException {
+		this("lsp4j-nio-event-loop");
+	}
+
+	public NioEventLoop(String threadName) throws IOException {
+		this.selector = Selector.open();
+		this.thread = new Thread(this::run, threadName);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Run the given task on the event loop thread. Tasks that are accepted while the event loop is stopping are
+	 * still run before it terminates.
+	 * 
+	 * @throws RejectedExecutionException if the event loop has terminated
+	 */
+	@Override
+	public void execute(Runnable task) {
+		synchronized (tasks) {
+			if (terminated)
+				throw new RejectedExecutionException("The event loop has been closed.");
+			tasks.add(task);
+		}
+		if (!inEventLoop())
+			selector.wakeup();
+	}
+
+	/**
+	 * Whether the current thread is the event loop thread.
+	 */
+	public boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Stop the event loop and close all channels registered with it.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Wait until the event loop thread has terminated.
+	 */
+	public void join(long millis) throws InterruptedException {
+		thread.join(millis);
+	}
+
+	/**
+	 * Register a channel with the selector. Must be called on the event loop thread.
+	 */
+	SelectionKey register(SelectableChannel channel, int ops, SelectionHandler handler) throws ClosedChannelException {
+		return channel.register(selector, ops, handler);
+	}
+
+	/**
+	 * The buffer to read into. Must only be used on the event loop thread.
+	 */
+	ByteBuffer getReadBuffer() {
+		return readBuffer;
+	}
+
+	private void run() {
+		try {
+			while (running) {
+				// Tasks may have been submitted on the event loop thread, which does not wake up the selector
+				if (tasks.isEmpty())
+					selector.select();
+				else
+					selector.selectNow();
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					SelectionHandler handler = (SelectionHandler) key.attachment();
+					try {
+						if (key.isValid())
+							handler.handle(key);
+					} catch (IOException | RuntimeException exception) {
+						LOG.log(Level.FINE, exception.getMessage(), exception);
+						handler.close();
+					}
+				}
+				runTasks();
+			}
+		} catch (IOException | RuntimeException exception) {
+			LOG.log(Level.SEVERE, "The event loop has failed.", exception);
+		} finally {
+			running = false;
+			shutdown();
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException exception) {
+				LOG.log(Level.SEVERE, exception.getMessage(), exception);
+			}
+		}
+	}
+
+	private void shutdown() {
+		List<SelectionHandler> handlers = new ArrayList<>();
+		try {
+			for (SelectionKey key : selector.keys()) {
+				handlers.add((SelectionHandler) key.attachment());
+			}
+		} catch (RuntimeException exception) {
+			// The selector is already closed
+		}
+		for (SelectionHandler handler : handlers) {
+			handler.close();
+		}
+		// Tasks may be added until the queue is found empty under the lock
+		while (true) {
+			runTasks();
+			synchronized (tasks) {
+				if (tasks.isEmpty()) {
+					terminated = true;
+					break;
+				}
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException exception) {
+			LOG.log(Level.WARNING, exception.getMessage(), exception);
+		}
+	}
+
+}
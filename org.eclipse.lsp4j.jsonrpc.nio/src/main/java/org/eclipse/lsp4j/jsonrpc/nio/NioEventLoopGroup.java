@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of event loops to which channels are assigned in a round-robin fashion.
+ */
+public class NioEventLoopGroup implements Closeable {
+
+	private final NioEventLoop[] eventLoops;
+	private final AtomicInteger nextIndex = new AtomicInteger();
+
+	/**
+	 * Create one event loop per available processor.
+	 */
+	public NioEventLoopGroup() throws IOException {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public NioEventLoopGroup(int size) throws IOException {
+		if (size <= 0)
+			throw new IllegalArgumentException("The size must be positive.");
+		eventLoops = new NioEventLoop[size];
+		try {
+			for (int i = 0; i < size; i++) {
+				eventLoops[i] = new NioEventLoop("lsp4j-nio-event-loop-" + i);
+			}
+		} catch (IOException exception) {
+			close();
+			throw exception;
+		}
+	}
+
+	public int size() {
+		return eventLoops.length;
+	}
+
+	/**
+	 * Return the event loop to which the next channel shall be assigned.
+	 */
+	public NioEventLoop next() {
+		return eventLoops[Math.floorMod(nextIndex.getAndIncrement(), eventLoops.length)];
+	}
+
+	@Override
+	public void close() {
+		for (NioEventLoop eventLoop : eventLoops) {
+			if (eventLoop != null)
+				eventLoop.close();
+		}
+	}
+
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.jsonrpc.VirtualThreads;
+import org.eclipse.lsp4j.jsonrpc.json.AsyncStreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
+
+/**
+ * Creates launchers for connections that are served by {@link NioEventLoop}s, so no thread is dedicated
+ * to reading the input of a connection.
+ */
+public final class NioLauncher {
+
+	private NioLauncher() {}
+
+	/**
+	 * Create a launcher for the given connection.
+	 * 
+	 * @param localService - the object that receives method calls from the remote service
+	 * @param remoteInterface - an interface on which RPC methods are looked up
+	 * @param connection - a connection that has not been started yet
+	 */
+	public static <T> Launcher<T> createLauncher(Object localService, Class<T> remoteInterface, NioConnection connection) {
+		return new Builder<T>()
+				.setConnection(connection)
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.create();
+	}
+
+	/**
+	 * Listen for connections at the given address. For every accepted connection, a local service is created
+	 * and connected to the proxy of the remote service before the connection is started. This can be used
+	 * e.g. for language servers that serve many clients:
+	 * 
+	 * <pre>
+	 * NioLauncher.createServer(address, eventLoops, MyLanguageServer::new, LanguageClient.class, MyLanguageServer::connect);
+	 * </pre>
+	 * 
+	 * @param address - the local address to bind to
+	 * @param eventLoops - the event loops that serve the accepted connections
+	 * @param localServiceFactory - creates the local service for a connection
+	 * @param remoteInterface - an interface on which RPC methods are looked up
+	 * @param connect - called with the local service and the proxy of the remote service
+	 */
+	public static <S, T> NioServer createServer(SocketAddress address, NioEventLoopGroup eventLoops,
+			Supplier<S> localServiceFactory, Class<T> remoteInterface, BiConsumer<S, T> connect) throws IOException {
+		return NioServer.open(address, eventLoops, connection -> {
+			S localService = localServiceFactory.get();
+			Launcher<T> launcher = createLauncher(localService, remoteInterface, connection);
+			connect.accept(localService, launcher.getRemoteProxy());
+			launcher.startListening();
+		});
+	}
+
+	/**
+	 * Listen for connections at the given address and create a launcher for each of them with a builder
+	 * obtained from the given factory. The factory is expected to configure at least the local services and
+	 * remote interfaces; the connection is set by the server.
+	 * 
+	 * @param address - the local address to bind to
+	 * @param eventLoops - the event loops that serve the accepted connections
+	 * @param builderFactory - creates a builder for a connection
+	 * @param connect - called with every launcher before it is started
+	 */
+	public static <T> NioServer createServer(SocketAddress address, NioEventLoopGroup eventLoops,
+			Supplier<? extends Builder<T>> builderFactory, Consumer<Launcher<T>> connect) throws IOException {
+		return NioServer.open(address, eventLoops, connection -> {
+			Builder<T> builder = builderFactory.get();
+			builder.setConnection(connection);
+			Launcher<T> launcher = builder.create();
+			if (connect != null)
+				connect.accept(launcher);
+			launcher.startListening();
+		});
+	}
+
+	private static ExecutorService sharedExecutorService;
+
+	/**
+	 * The executor service used for connections that have not been configured with one. Its threads are only
+	 * busy while messages are being handled.
+	 */
+	static synchronized ExecutorService getSharedExecutorService() {
+		if (sharedExecutorService == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+			ThreadFactory threadFactory = runnable -> {
+				Thread thread = new Thread(runnable, "lsp4j-nio-worker-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			};
+			sharedExecutorService = Executors.newCachedThreadPool(threadFactory);
+		}
+		return sharedExecutorService;
+	}
+
+	/**
+	 * A launcher builder for {@link NioConnection}s. Input and output streams are not used.
+	 */
+	public static class Builder<T> extends Launcher.Builder<T> {
+
+		protected NioConnection connection;
+
+		public Builder<T> setConnection(NioConnection connection) {
+			this.connection = connection;
+			return this;
+		}
+
+		@Override
+		protected void checkConfiguration() {
+			if (connection == null)
+				throw new IllegalStateException("Connection must be configured.");
+			if (localServices == null)
+				throw new IllegalStateException("Local service must be configured.");
+			if (remoteInterfaces == null)
+				throw new IllegalStateException("Remote interface must be configured.");
+		}
+
+		/**
+		 * Create a launcher that starts the connection. The input settings of this builder are applied to the
+		 * connection, which reads the input on its event loop.
+		 */
+		@Override
+		protected Launcher<T> createLauncher(MessageJsonHandler jsonHandler, RemoteEndpoint remoteEndpoint, T remoteProxy,
+				MessageConsumer messageConsumer, ExecutorService execService) {
+			connection.setMaxMessageSize(maxMessageSize);
+			if (bufferPool != null)
+				connection.setBufferPool(bufferPool);
+			connection.setCompression(compression);
+			return new Launcher<T>() {
+				@Override
+				public Future<Void> startListening() {
+					return connection.start(jsonHandler, messageConsumer, remoteEndpoint, execService);
+				}
+
+				@Override
+				public T getRemoteProxy() {
+					return remoteProxy;
+				}
+
+				@Override
+				public RemoteEndpoint getRemoteEndpoint() {
+					return remoteEndpoint;
+				}
+			};
+		}
+
+		@Override
+		protected ExecutorService getExecutorService() {
+			if (executorService != null)
+				return executorService;
+			if (virtualThreads && VirtualThreads.isSupported())
+				return VirtualThreads.getSharedExecutorService();
+			return getSharedExecutorService();
+		}
+
+		@Override
+		protected MessageConsumer createMessageConsumer(MessageJsonHandler jsonHandler) {
+			StreamMessageConsumer consumer;
+			if (outputQueue != null)
+				consumer = new AsyncStreamMessageConsumer(connection.getOutput(), jsonHandler, outputQueue);
+			else
+				consumer = new StreamMessageConsumer(connection.getOutput(), jsonHandler);
+			consumer.setCompression(compression);
+			return consumer;
+		}
+
+	}
+
+}
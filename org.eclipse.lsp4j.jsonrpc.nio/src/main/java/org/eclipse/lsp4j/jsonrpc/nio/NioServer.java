@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Accepts socket connections and distributes them over the event loops of a {@link NioEventLoopGroup}.
+ */
+public class NioServer implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(NioServer.class.getName());
+
+	/**
+	 * Listen for connections at the given address.
+	 * 
+	 * @param address - the local address to bind to
+	 * @param eventLoops - the event loops that serve the accepted connections
+	 * @param connectionHandler - called on an event loop thread for every accepted connection
+	 */
+	public static NioServer open(SocketAddress address, NioEventLoopGroup eventLoops,
+			Consumer<NioConnection> connectionHandler) throws IOException {
+		ServerSocketChannel serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.bind(address);
+			serverChannel.configureBlocking(false);
+		} catch (IOException exception) {
+			serverChannel.close();
+			throw exception;
+		}
+		NioServer server = new NioServer(serverChannel, eventLoops, connectionHandler);
+		server.start();
+		return server;
+	}
+
+	private final ServerSocketChannel serverChannel;
+	private final NioEventLoopGroup eventLoops;
+	private final Consumer<NioConnection> connectionHandler;
+
+	protected NioServer(ServerSocketChannel serverChannel, NioEventLoopGroup eventLoops,
+			Consumer<NioConnection> connectionHandler) {
+		this.serverChannel = serverChannel;
+		this.eventLoops = eventLoops;
+		this.connectionHandler = connectionHandler;
+	}
+
+	public SocketAddress getLocalAddress() throws IOException {
+		return serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * Stop accepting connections. Connections that have already been accepted are not closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverChannel.close();
+	}
+
+	protected void start() {
+		NioEventLoop acceptLoop = eventLoops.next();
+		acceptLoop.execute(() -> {
+			try {
+				acceptLoop.register(serverChannel, SelectionKey.OP_ACCEPT, new SelectionHandler() {
+					@Override
+					public void handle(SelectionKey key) throws IOException {
+						accept();
+					}
+
+					@Override
+					public void close() {
+						try {
+							NioServer.this.close();
+						} catch (IOException exception) {
+							LOG.log(Level.WARNING, exception.getMessage(), exception);
+						}
+					}
+				});
+			} catch (IOException exception) {
+				LOG.log(Level.SEVERE, exception.getMessage(), exception);
+			}
+		});
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = serverChannel.accept()) != null) {
+			try {
+				connectionHandler.accept(new NioConnection(channel, eventLoops.next()));
+			} catch (Exception exception) {
+				LOG.log(Level.SEVERE, "Failed to set up an accepted connection.", exception);
+				channel.close();
+			}
+		}
+	}
+
+}
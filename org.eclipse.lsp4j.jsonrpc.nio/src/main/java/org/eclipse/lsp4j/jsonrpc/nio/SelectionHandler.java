@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.nio;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Attached to the selection keys of an {@link NioEventLoop} to handle readiness events.
+ */
+interface SelectionHandler {
+
+	/**
+	 * Handle the operations for which the key is ready. Called on the event loop thread.
+	 */
+	void handle(SelectionKey key) throws IOException;
+
+	/**
+	 * Close the underlying channel, e.g. after {@link #handle(SelectionKey)} has failed or when the event loop
+	 * is closed.
+	 */
+	void close();
+
+}
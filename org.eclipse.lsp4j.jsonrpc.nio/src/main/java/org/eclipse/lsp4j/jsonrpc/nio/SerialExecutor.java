@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.nio;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks one after another in submission order on an underlying executor, without occupying a thread
+ * while there is nothing to do.
+ */
+class SerialExecutor implements Executor {
+
+	private static final Logger LOG = Logger.getLogger(SerialExecutor.class.getName());
+
+	private final Executor executor;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		tasks.add(task);
+		schedule();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::runTasks);
+			} catch (RuntimeException exception) {
+				scheduled.set(false);
+				throw exception;
+			}
+		}
+	}
+
+	private void runTasks() {
+		try {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException exception) {
+					LOG.log(Level.SEVERE, exception.getMessage(), exception);
+				}
+			}
+		} finally {
+			scheduled.set(false);
+			// A task may have been added after polling, but before the flag was reset
+			if (!tasks.isEmpty())
+				schedule();
+		}
+	}
+
+}
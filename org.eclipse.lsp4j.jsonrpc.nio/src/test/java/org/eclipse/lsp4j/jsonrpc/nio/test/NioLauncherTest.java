@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.nio.test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.nio.NioConnection;
+import org.eclipse.lsp4j.jsonrpc.nio.NioEventLoop;
+import org.eclipse.lsp4j.jsonrpc.nio.NioEventLoopGroup;
+import org.eclipse.lsp4j.jsonrpc.nio.NioLauncher;
+import org.eclipse.lsp4j.jsonrpc.nio.NioServer;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioLauncherTest {
+
+	private static final long TIMEOUT = 10000;
+
+	public static interface Server {
+		@JsonRequest
+		CompletableFuture<String> ask(String question);
+	}
+
+	public static interface Client {
+		@JsonNotification
+		void tell(String message);
+	}
+
+	public static class ServerImpl implements Server {
+		Client client;
+
+		void connect(Client client) {
+			this.client = client;
+		}
+
+		@Override
+		public CompletableFuture<String> ask(String question) {
+			client.tell("thinking about " + question);
+			return CompletableFuture.completedFuture("answer to " + question);
+		}
+	}
+
+	public static class ClientImpl implements Client {
+		final CompletableFuture<String> told = new CompletableFuture<>();
+
+		@Override
+		public void tell(String message) {
+			told.complete(message);
+		}
+	}
+
+	private NioEventLoopGroup eventLoops;
+	private NioServer server;
+
+	@Before
+	public void setup() throws IOException {
+		eventLoops = new NioEventLoopGroup(2);
+		server = NioLauncher.createServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), eventLoops,
+				ServerImpl::new, Client.class, ServerImpl::connect);
+	}
+
+	@After
+	public void teardown() throws IOException {
+		server.close();
+		eventLoops.close();
+	}
+
+	@Test
+	public void testBlockingClient() throws Exception {
+		InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+		try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+			ClientImpl client = new ClientImpl();
+			Launcher<Server> launcher = Launcher.createLauncher(client, Server.class, socket.getInputStream(), socket.getOutputStream());
+			launcher.startListening();
+			String answer = launcher.getRemoteProxy().ask("life").get(TIMEOUT, TimeUnit.MILLISECONDS);
+			Assert.assertEquals("answer to life", answer);
+			Assert.assertEquals("thinking about life", client.told.get(TIMEOUT, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	public void testManyConnections() throws Exception {
+		List<SocketChannel> channels = new ArrayList<>();
+		List<CompletableFuture<String>> answers = new ArrayList<>();
+		List<ClientImpl> clients = new ArrayList<>();
+		try {
+			for (int i = 0; i < 100; i++) {
+				SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+				channels.add(channel);
+				ClientImpl client = new ClientImpl();
+				clients.add(client);
+				NioConnection connection = new NioConnection(channel, eventLoops.next());
+				Launcher<Server> launcher = NioLauncher.createLauncher(client, Server.class, connection);
+				launcher.startListening();
+				answers.add(launcher.getRemoteProxy().ask("question " + i));
+			}
+			for (int i = 0; i < answers.size(); i++) {
+				Assert.assertEquals("answer to question " + i, answers.get(i).get(TIMEOUT, TimeUnit.MILLISECONDS));
+				Assert.assertEquals("thinking about question " + i, clients.get(i).told.get(TIMEOUT, TimeUnit.MILLISECONDS));
+			}
+		} finally {
+			for (SocketChannel channel : channels) {
+				channel.close();
+			}
+		}
+	}
+
+	@Test
+	public void testLargeMessage() throws Exception {
+		SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+		NioConnection connection = new NioConnection(channel, eventLoops.next());
+		try {
+			Launcher<Server> launcher = NioLauncher.createLauncher(new ClientImpl(), Server.class, connection);
+			launcher.startListening();
+			String question = new String(new char[1000000]).replace('\0', 'ö');
+			String answer = launcher.getRemoteProxy().ask(question).get(TIMEOUT, TimeUnit.MILLISECONDS);
+			Assert.assertEquals("answer to " + question, answer);
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+		NioConnection connection = new NioConnection(channel, eventLoops.next());
+		Launcher<Server> launcher = NioLauncher.createLauncher(new ClientImpl(), Server.class, connection);
+		CompletableFuture<?> listening = (CompletableFuture<?>) launcher.startListening();
+		connection.close();
+		listening.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertFalse(channel.isOpen());
+		Assert.assertFalse(connection.getOutput().isOpen());
+	}
+
+	@Test
+	public void testBuilderWarmUp() throws Exception {
+		SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+		NioConnection connection = new NioConnection(channel, eventLoops.next());
+		try {
+			CompletableFuture<MessageJsonHandler> warmedUp = new CompletableFuture<>();
+			new NioLauncher.Builder<Server>() {
+				@Override
+				protected void startWarmUp(MessageJsonHandler jsonHandler) {
+					warmedUp.complete(jsonHandler);
+				}
+			}
+				.setConnection(connection)
+				.setLocalService(new ClientImpl())
+				.setRemoteInterface(Server.class)
+				.setWarmUp(true)
+				.create();
+			Assert.assertTrue(warmedUp.isDone());
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void testEventLoopTasksWhileClosing() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			NioEventLoop eventLoop = new NioEventLoop();
+			AtomicInteger accepted = new AtomicInteger();
+			AtomicInteger run = new AtomicInteger();
+			Thread submitter = new Thread(() -> {
+				try {
+					while (true) {
+						eventLoop.execute(run::incrementAndGet);
+						accepted.incrementAndGet();
+					}
+				} catch (RejectedExecutionException exception) {
+					// The event loop has terminated
+				}
+			});
+			submitter.start();
+			Thread.sleep(5);
+			eventLoop.close();
+			eventLoop.join(TIMEOUT);
+			submitter.join(TIMEOUT);
+			Assert.assertFalse(submitter.isAlive());
+			// Every accepted task has been run
+			Assert.assertEquals(accepted.get(), run.get());
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.lsp4j.jsonrpc.PriorityScheduler.Priority;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+
+/**
+ * Rejects incoming low-priority requests while the server cannot keep up with its latency targets, instead of
+ * queuing work that cannot be answered in useful time. Used by an {@link OrderedMessageDispatcher}, which reports
+ * when messages arrive and when they are passed to the {@link RemoteEndpoint}.
+ *
+ * <p>Messages are classified by the {@link Priority} of their method. For each class the controller measures the
+ * queueing delay, i.e. the time between the arrival of a message and the start of its handling. A class exceeds its
+ * latency target if messages of that class are waiting and either the recent queueing delay or the time since the
+ * last message of that class was started is above the target. As long as any class exceeds its target, new requests
+ * with the shed priority or a lower priority are answered with an error response right away. Notifications are
+ * never rejected.</p>
+ */
+public class AdmissionController {
+
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private final MethodPriorities methodPriorities;
+	private final long[] latencyTargets = new long[PRIORITIES.length];
+	private volatile Priority shedPriority = Priority.NORMAL;
+	private volatile ResponseErrorCode errorCode = ResponseErrorCode.ServerCancelled;
+
+	private final Object lock = new Object();
+	private final int[] backlog = new int[PRIORITIES.length];
+	/** Exponentially weighted moving average of the queueing delay in nanoseconds. */
+	private final long[] averageDelay = new long[PRIORITIES.length];
+	/** The time when a message was last started, or when the backlog became non-empty. */
+	private final long[] lastProgress = new long[PRIORITIES.length];
+
+	private final AtomicLong shedCount = new AtomicLong();
+	private final Map<String, AtomicLong> shedCountByMethod = new ConcurrentHashMap<>();
+
+	/**
+	 * @param methodPriorities - the priorities that classify incoming messages
+	 * @param latencyTarget - the latency target of all priorities
+	 * @param unit - the unit of the latency target
+	 */
+	public AdmissionController(MethodPriorities methodPriorities, long latencyTarget, TimeUnit unit) {
+		this.methodPriorities = methodPriorities;
+		for (Priority priority : PRIORITIES) {
+			setLatencyTarget(priority, latencyTarget, unit);
+		}
+	}
+
+	/**
+	 * Set the maximal acceptable queueing delay of messages with the given priority. Zero means the priority has
+	 * no target.
+	 */
+	public AdmissionController setLatencyTarget(Priority priority, long latencyTarget, TimeUnit unit) {
+		synchronized (lock) {
+			latencyTargets[priority.ordinal()] = unit.toNanos(latencyTarget);
+		}
+		return this;
+	}
+
+	/**
+	 * Set the highest priority of requests that are rejected while a latency target is exceeded. Requests with
+	 * lower priorities are rejected, too. The default is {@link Priority#NORMAL}.
+	 */
+	public AdmissionController setShedPriority(Priority shedPriority) {
+		this.shedPriority = shedPriority;
+		return this;
+	}
+
+	/**
+	 * Set the error code of responses to rejected requests. The default is {@link ResponseErrorCode#ServerCancelled}.
+	 */
+	public AdmissionController setErrorCode(ResponseErrorCode errorCode) {
+		this.errorCode = errorCode;
+		return this;
+	}
+
+	public MethodPriorities getMethodPriorities() {
+		return methodPriorities;
+	}
+
+	/**
+	 * The number of admitted messages that have not been started yet.
+	 */
+	public int getBacklog() {
+		synchronized (lock) {
+			int result = 0;
+			for (int count : backlog) {
+				result += count;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The number of admitted messages with the given priority that have not been started yet.
+	 */
+	public int getBacklog(Priority priority) {
+		synchronized (lock) {
+			return backlog[priority.ordinal()];
+		}
+	}
+
+	/**
+	 * The recent queueing delay of messages with the given priority in milliseconds.
+	 */
+	public long getQueueingDelay(Priority priority) {
+		synchronized (lock) {
+			return TimeUnit.NANOSECONDS.toMillis(averageDelay[priority.ordinal()]);
+		}
+	}
+
+	/**
+	 * The number of requests that have been rejected.
+	 */
+	public long getShedCount() {
+		return shedCount.get();
+	}
+
+	/**
+	 * The number of requests with the given method that have been rejected.
+	 */
+	public long getShedCount(String method) {
+		AtomicLong count = shedCountByMethod.get(method);
+		return count != null ? count.get() : 0;
+	}
+
+	/**
+	 * Decide whether an arriving message is accepted. If it is, {@link #started(Message, long)} must be called when
+	 * its handling starts.
+	 *
+	 * @return {@code false} if the message is a request that must be rejected
+	 */
+	public boolean admit(Message message) {
+		Priority priority = methodPriorities.getPriority(message);
+		long now = System.nanoTime();
+		synchronized (lock) {
+			if (message instanceof RequestMessage && priority.compareTo(shedPriority) >= 0 && isOverloaded(now)) {
+				String method = ((RequestMessage) message).getMethod();
+				shedCount.incrementAndGet();
+				if (method != null)
+					shedCountByMethod.computeIfAbsent(method, m -> new AtomicLong()).incrementAndGet();
+				return false;
+			}
+			int index = priority.ordinal();
+			if (backlog[index]++ == 0)
+				lastProgress[index] = now;
+		}
+		return true;
+	}
+
+	/**
+	 * Record that the handling of an admitted message starts.
+	 *
+	 * @param arrivalTime - the {@link System#nanoTime()} when the message arrived
+	 */
+	public void started(Message message, long arrivalTime) {
+		Priority priority = methodPriorities.getPriority(message);
+		long now = System.nanoTime();
+		int index = priority.ordinal();
+		synchronized (lock) {
+			lastProgress[index] = now;
+			if (--backlog[index] <= 0) {
+				backlog[index] = 0;
+				averageDelay[index] = 0;
+			} else {
+				averageDelay[index] += (now - arrivalTime - averageDelay[index]) / 4;
+			}
+		}
+	}
+
+	/**
+	 * The error with which the given rejected request is answered.
+	 */
+	public ResponseError createRejectionError(RequestMessage request) {
+		String message = "The request (id: " + request.getId() + ", method: '" + request.getMethod()
+				+ "') has been rejected since the server is overloaded";
+		return new ResponseError(errorCode, message, null);
+	}
+
+	/**
+	 * Whether any priority currently exceeds its latency target. Must be called with the lock held.
+	 */
+	private boolean isOverloaded(long now) {
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			long target = latencyTargets[i];
+			if (target > 0 && backlog[i] > 0 && (averageDelay[i] > target || now - lastProgress[i] > target))
+				return true;
+		}
+		return false;
+	}
+
+}
@@ -16,12 +16,15 @@ public final class CompletableFutures {
 	private CompletableFutures() {}
 	
 	/**
-	 * A utility method to create a {@link CompletableFuture} with cancellation support.
+	 * A utility method to create a {@link CompletableFuture} with cancellation support. The code runs in the
+	 * common fork-join pool, or in a new virtual thread if this method is called from a virtual thread.
 	 * 
 	 * @param code a function that accepts a {@link CancelChecker} and returns the to be computed value
 	 * @return a future
 	 */
 	public static <R> CompletableFuture<R> computeAsync(Function<CancelChecker, R> code) {
+		if (VirtualThreads.isVirtual(Thread.currentThread()))
+			return computeAsync(VirtualThreads.getSharedExecutorService(), code);
 		CompletableFuture<CancelChecker> start = new CompletableFuture<>();
 		CompletableFuture<R> result = start.thenApplyAsync(code);
 		CancelChecker cancelIndicator = () -> {
@@ -10,22 +10,35 @@ package org.eclipse.lsp4j.jsonrpc;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.ByteChannel;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import org.eclipse.lsp4j.jsonrpc.json.AsyncStreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.BufferPool;
 import org.eclipse.lsp4j.jsonrpc.json.ConcurrentMessageProcessor;
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethodProvider;
+import org.eclipse.lsp4j.jsonrpc.json.MessageCompression;
+import org.eclipse.lsp4j.jsonrpc.json.MessageDecodingPipeline;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.MessageOutputQueue;
 import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
 import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+import org.eclipse.lsp4j.jsonrpc.json.TypeAdapterRegistry;
+import org.eclipse.lsp4j.jsonrpc.json.TypeAdapterWarmUp;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.services.Bulkhead;
+import org.eclipse.lsp4j.jsonrpc.services.GenericEndpoint;
 import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
 import org.eclipse.lsp4j.jsonrpc.validation.ReflectiveMessageValidator;
 
@@ -54,6 +67,22 @@ public interface Launcher<T> {
 				.create();
 	}
 	
+	/**
+	 * Create a new Launcher for a given local service object, a given remote interface and a blocking channel
+	 * that is used for both incoming and outgoing messages, e.g. a socket channel obtained from {@link UnixDomainSockets}.
+	 * 
+	 * @param localService - the object that receives method calls from the remote service
+	 * @param remoteInterface - an interface on which RPC methods are looked up
+	 * @param channel - channel to listen for incoming messages and to send outgoing messages
+	 */
+	static <T> Launcher<T> createLauncher(Object localService, Class<T> remoteInterface, ByteChannel channel) {
+		return new Builder<T>()
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.setChannel(channel)
+				.create();
+	}
+	
 	/**
 	 * Create a new Launcher for a given local service object, a given remote interface and an input and output stream,
 	 * and set up message validation and tracing.
@@ -190,12 +219,32 @@ public interface Launcher<T> {
 		protected Collection<Class<? extends T>> remoteInterfaces;
 		protected InputStream input;
 		protected OutputStream output;
+		protected ByteChannel channel;
 		protected ExecutorService executorService;
+		/** The executor service created for the current launcher if none has been configured. */
+		private ExecutorService defaultExecutorService;
 		protected Function<MessageConsumer, MessageConsumer> messageWrapper;
 		protected boolean validateMessages;
 		protected PrintWriter messageTracer;
 		protected Consumer<GsonBuilder> configureGson;
+		protected TypeAdapterRegistry typeAdapterRegistry;
+		protected boolean warmUp;
+		protected int warmUpIterations;
 		protected ClassLoader classLoader;
+		protected int maxMessageSize = Integer.MAX_VALUE;
+		protected BufferPool bufferPool;
+		protected MessageCompression compression;
+		protected MessageOutputQueue outputQueue;
+		protected MessageDecodingPipeline decodingPipeline;
+		protected boolean parallelDispatch;
+		protected boolean virtualThreads;
+		protected PriorityScheduler priorityScheduler;
+		protected AdmissionController admissionController;
+		protected Function<Message, Object> orderingKey;
+		protected StaleRequestCanceller staleRequestCanceller;
+		protected long requestTimeout;
+		protected Map<String, Long> requestTimeouts = new LinkedHashMap<>();
+		protected Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
 		
 		public Builder<T> setLocalService(Object localService) {
 			this.localServices = Collections.singletonList(localService);
@@ -227,6 +276,15 @@ public interface Launcher<T> {
 			return this;
 		}
 
+		/**
+		 * Use the given blocking channel for both incoming and outgoing messages instead of an input
+		 * and output stream.
+		 */
+		public Builder<T> setChannel(ByteChannel channel) {
+			this.channel = channel;
+			return this;
+		}
+
 		public Builder<T> setExecutorService(ExecutorService executorService) {
 			this.executorService = executorService;
 			return this;
@@ -256,30 +314,207 @@ public interface Launcher<T> {
 			this.configureGson = configureGson;
 			return this;
 		}
+		
+		/**
+		 * Set a registry of type adapters to share with other launchers. By default each launcher creates its own
+		 * adapters. A registry keeps the types of its adapters, and their class loaders, alive as long as it is
+		 * reachable, so a registry must not be shared by launchers whose service classes can be unloaded
+		 * independently, e.g. by different bundles.
+		 */
+		public Builder<T> setTypeAdapterRegistry(TypeAdapterRegistry typeAdapterRegistry) {
+			this.typeAdapterRegistry = typeAdapterRegistry;
+			return this;
+		}
+		
+		/**
+		 * Create the type adapters for the parameter and return types of all supported methods on a background
+		 * thread when the launcher is created, so the first messages need not create them.
+		 */
+		public Builder<T> setWarmUp(boolean warmUp) {
+			return setWarmUp(warmUp, 0);
+		}
+		
+		/**
+		 * Create the type adapters of all supported methods on a background thread, and decode synthetic samples
+		 * of the messages and types of the methods the given number of times so the decoding code is compiled
+		 * by the JIT.
+		 */
+		public Builder<T> setWarmUp(boolean warmUp, int sampleIterations) {
+			this.warmUp = warmUp;
+			this.warmUpIterations = sampleIterations;
+			return this;
+		}
+		
+		/**
+		 * Set the maximal content length of incoming messages in bytes. Larger messages are skipped and reported
+		 * as issues instead of being read into memory.
+		 */
+		public Builder<T> setMaxMessageSize(int maxMessageSize) {
+			this.maxMessageSize = maxMessageSize;
+			return this;
+		}
+		
+		/**
+		 * Set the pool from which buffers for the content of incoming messages are obtained.
+		 */
+		public Builder<T> setBufferPool(BufferPool bufferPool) {
+			this.bufferPool = bufferPool;
+			return this;
+		}
+
+		/**
+		 * Compress large outgoing messages if the remote endpoint accepts compressed content.
+		 * A new {@link MessageCompression} instance must be used for every launcher.
+		 */
+		public Builder<T> setCompression(MessageCompression compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * Write outgoing messages asynchronously: messages are put into the given queue and written in
+		 * batches on a dedicated writer thread, see {@link AsyncStreamMessageConsumer}. The limits and overflow
+		 * policy of the queue determine what happens when the remote side does not read fast enough, and the
+		 * queue can be used to monitor the writer.
+		 */
+		public Builder<T> setOutputQueue(MessageOutputQueue outputQueue) {
+			this.outputQueue = outputQueue;
+			return this;
+		}
+
+		/**
+		 * Decode incoming messages in a separate task of the executor service, so reading the next messages
+		 * overlaps with decoding. The pipeline limits the number of messages waiting to be decoded and can be
+		 * used to monitor the queue depth.
+		 */
+		public Builder<T> setDecodingPipeline(MessageDecodingPipeline decodingPipeline) {
+			this.decodingPipeline = decodingPipeline;
+			return this;
+		}
+
+		/**
+		 * Consume incoming requests and notifications on the threads of the executor service instead of the
+		 * thread that reads the messages. Messages with the same ordering key keep their arrival order, see
+		 * {@link OrderedMessageDispatcher}.
+		 */
+		public Builder<T> setParallelDispatch(boolean parallelDispatch) {
+			this.parallelDispatch = parallelDispatch;
+			return this;
+		}
+
+		/**
+		 * Run the message reader and the handlers of incoming messages on virtual threads if they are supported by
+		 * the Java runtime (Java 21 and later), otherwise on a cached thread pool. This implies parallel dispatch,
+		 * and {@link CompletableFutures#computeAsync(java.util.function.Function)} called from a handler runs its
+		 * code on a virtual thread, too. Has no effect on the executor if one is set explicitly.
+		 */
+		public Builder<T> setVirtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+			return this;
+		}
+
+		/**
+		 * Consume incoming requests and notifications on the workers of the given scheduler according to the
+		 * priorities of their methods. This implies parallel dispatch.
+		 */
+		public Builder<T> setPriorityScheduler(PriorityScheduler priorityScheduler) {
+			this.priorityScheduler = priorityScheduler;
+			return this;
+		}
+
+		/**
+		 * Cancel incoming requests automatically when they have become stale because of later notifications,
+		 * e.g. when the document they refer to has changed.
+		 */
+		public Builder<T> setStaleRequestCanceller(StaleRequestCanceller staleRequestCanceller) {
+			this.staleRequestCanceller = staleRequestCanceller;
+			return this;
+		}
+
+		/**
+		 * Let outgoing requests fail with a {@link java.util.concurrent.TimeoutException} if no response has been
+		 * received within the given time. Zero disables the timeout, which is the default.
+		 */
+		public Builder<T> setRequestTimeout(long timeout, TimeUnit unit) {
+			this.requestTimeout = unit.toMillis(timeout);
+			return this;
+		}
+
+		/**
+		 * Set the timeout of outgoing requests with the given method, overriding the default timeout.
+		 * Zero disables the timeout for the method.
+		 */
+		public Builder<T> setRequestTimeout(String method, long timeout, TimeUnit unit) {
+			this.requestTimeouts.put(method, unit.toMillis(timeout));
+			return this;
+		}
+
+		/**
+		 * Limit the concurrent invocations of the given local methods with a bulkhead. If multiple methods are given,
+		 * they are limited as a group.
+		 */
+		public Builder<T> setBulkhead(Bulkhead bulkhead, String... methods) {
+			for (String method : methods) {
+				this.bulkheads.put(method, bulkhead);
+			}
+			return this;
+		}
+
+		/**
+		 * Reject incoming low-priority requests while the server exceeds the latency targets of the given
+		 * controller. This implies parallel dispatch.
+		 */
+		public Builder<T> setAdmissionController(AdmissionController admissionController) {
+			this.admissionController = admissionController;
+			return this;
+		}
+
+		/**
+		 * Set the function that determines the ordering key of incoming messages when parallel dispatch is enabled.
+		 * By default this is the {@code textDocument.uri} of the message parameters.
+		 */
+		public Builder<T> setOrderingKey(Function<Message, Object> orderingKey) {
+			this.orderingKey = orderingKey;
+			return this;
+		}
 
-		@SuppressWarnings("unchecked")
 		public Launcher<T> create() {
-			if (input == null)
+			checkConfiguration();
+			defaultExecutorService = null;
+			
+			MessageJsonHandler jsonHandler = createJsonHandler();
+			RemoteEndpoint remoteEndpoint = createRemoteEndpoint(jsonHandler);
+			T remoteProxy = createProxy(remoteEndpoint);
+			ExecutorService execService = getExecutorService();
+			MessageConsumer messageConsumer = wrapMessageConsumer(createMessageDispatcher(remoteEndpoint, execService));
+			Launcher<T> launcher = createLauncher(jsonHandler, remoteEndpoint, remoteProxy, messageConsumer, execService);
+			if (warmUp)
+				startWarmUp(jsonHandler);
+			return launcher;
+		}
+		
+		/**
+		 * Check that the builder has been configured with everything needed to create a launcher.
+		 * 
+		 * @throws IllegalStateException if a mandatory setting is missing
+		 */
+		protected void checkConfiguration() {
+			if (input == null && channel == null)
 				throw new IllegalStateException("Input stream must be configured.");
-			if (output == null)
+			if (output == null && channel == null)
 				throw new IllegalStateException("Output stream must be configured.");
 			if (localServices == null)
 				throw new IllegalStateException("Local service must be configured.");
 			if (remoteInterfaces == null)
 				throw new IllegalStateException("Remote interface must be configured.");
-			
-			MessageJsonHandler jsonHandler = createJsonHandler();
-			RemoteEndpoint remoteEndpoint = createRemoteEndpoint(jsonHandler);
-			T remoteProxy;
-			if (localServices.size() == 1 && remoteInterfaces.size() == 1) {
-				remoteProxy = ServiceEndpoints.toServiceObject(remoteEndpoint, remoteInterfaces.iterator().next());
-			} else {
-				remoteProxy = (T) ServiceEndpoints.toServiceObject(remoteEndpoint, (Collection<Class<?>>) (Object) remoteInterfaces, classLoader);
-			}
-			StreamMessageProducer reader = new StreamMessageProducer(input, jsonHandler, remoteEndpoint);
-			MessageConsumer messageConsumer = wrapMessageConsumer(remoteEndpoint);
-			ExecutorService execService = executorService != null ? executorService : Executors.newCachedThreadPool();
-			
+		}
+		
+		/**
+		 * Create the launcher that starts reading the input and passes incoming messages to the given consumer.
+		 */
+		protected Launcher<T> createLauncher(MessageJsonHandler jsonHandler, RemoteEndpoint remoteEndpoint, T remoteProxy,
+				MessageConsumer messageConsumer, ExecutorService execService) {
+			StreamMessageProducer reader = createMessageProducer(jsonHandler, remoteEndpoint);
 			return new Launcher<T> () {
 				@Override
 				public Future<Void> startListening() {
@@ -298,6 +533,42 @@ public interface Launcher<T> {
 			};
 		}
 		
+		/**
+		 * Start the warm-up of the type adapters of the supported methods on a background thread.
+		 */
+		protected void startWarmUp(MessageJsonHandler jsonHandler) {
+			TypeAdapterWarmUp.start(jsonHandler, getSupportedMethods(), warmUpIterations);
+		}
+		
+		/**
+		 * Create the proxy that implements the remote interfaces by sending messages through the remote endpoint.
+		 */
+		@SuppressWarnings("unchecked")
+		protected T createProxy(RemoteEndpoint remoteEndpoint) {
+			if (localServices.size() == 1 && remoteInterfaces.size() == 1) {
+				return ServiceEndpoints.toServiceObject(remoteEndpoint, remoteInterfaces.iterator().next());
+			} else {
+				return (T) ServiceEndpoints.toServiceObject(remoteEndpoint, (Collection<Class<?>>) (Object) remoteInterfaces, classLoader);
+			}
+		}
+		
+		/**
+		 * Create the consumer that dispatches incoming messages to the remote endpoint. This is the endpoint itself
+		 * unless parallel dispatch is enabled.
+		 */
+		protected MessageConsumer createMessageDispatcher(RemoteEndpoint remoteEndpoint, ExecutorService execService) {
+			if (!parallelDispatch && !virtualThreads && priorityScheduler == null && admissionController == null)
+				return remoteEndpoint;
+			Executor executor = priorityScheduler != null ? priorityScheduler : execService;
+			OrderedMessageDispatcher dispatcher;
+			if (orderingKey != null)
+				dispatcher = new OrderedMessageDispatcher(remoteEndpoint, executor, orderingKey);
+			else
+				dispatcher = new OrderedMessageDispatcher(remoteEndpoint, executor);
+			dispatcher.setAdmissionController(admissionController);
+			return dispatcher;
+		}
+		
 		protected MessageConsumer wrapMessageConsumer(MessageConsumer consumer) {
 			MessageConsumer result = consumer;
 			if (messageTracer != null) {
@@ -345,22 +616,95 @@ public interface Launcher<T> {
 		 */
 		protected MessageJsonHandler createJsonHandler() {
 			Map<String, JsonRpcMethod> supportedMethods = getSupportedMethods();
-			if (configureGson != null)
+			if (typeAdapterRegistry != null)
+				return new MessageJsonHandler(supportedMethods, typeAdapterRegistry);
+			else if (configureGson != null)
 				return new MessageJsonHandler(supportedMethods, configureGson);
 			else
 				return new MessageJsonHandler(supportedMethods);
 		}
 		
+		/**
+		 * Create the message producer that reads incoming messages from the input stream.
+		 */
+		protected StreamMessageProducer createMessageProducer(MessageJsonHandler jsonHandler, RemoteEndpoint remoteEndpoint) {
+			StreamMessageProducer reader;
+			if (input == null)
+				reader = new StreamMessageProducer(channel, jsonHandler, remoteEndpoint);
+			else
+				reader = new StreamMessageProducer(input, jsonHandler, remoteEndpoint);
+			reader.setMaxMessageSize(maxMessageSize);
+			if (bufferPool != null)
+				reader.setBufferPool(bufferPool);
+			reader.setCompression(compression);
+			if (decodingPipeline != null)
+				reader.setDecodingPipeline(decodingPipeline, getExecutorService());
+			return reader;
+		}
+		
+		/**
+		 * Return the executor service used to start threads. If none has been configured, a cached thread pool,
+		 * or a virtual thread executor if virtual threads are enabled, is created once per launcher.
+		 */
+		protected ExecutorService getExecutorService() {
+			if (executorService != null)
+				return executorService;
+			if (defaultExecutorService == null)
+				defaultExecutorService = virtualThreads ? VirtualThreads.newExecutorService() : Executors.newCachedThreadPool();
+			return defaultExecutorService;
+		}
+		
+		/**
+		 * Create the message consumer that writes outgoing messages to the output stream.
+		 */
+		protected MessageConsumer createMessageConsumer(MessageJsonHandler jsonHandler) {
+			StreamMessageConsumer consumer;
+			if (output == null) {
+				if (outputQueue != null)
+					consumer = new AsyncStreamMessageConsumer(channel, jsonHandler, outputQueue);
+				else
+					consumer = new StreamMessageConsumer(channel, jsonHandler);
+			} else {
+				if (outputQueue != null)
+					consumer = new AsyncStreamMessageConsumer(output, jsonHandler, outputQueue);
+				else
+					consumer = new StreamMessageConsumer(output, jsonHandler);
+			}
+			consumer.setCompression(compression);
+			return consumer;
+		}
+		
 		/**
 		 * Create the remote endpoint that communicates with the local services.
 		 */
 		protected RemoteEndpoint createRemoteEndpoint(MessageJsonHandler jsonHandler) {
-			MessageConsumer outgoingMessageStream = new StreamMessageConsumer(output, jsonHandler);
+			MessageConsumer outgoingMessageStream = createMessageConsumer(jsonHandler);
 			outgoingMessageStream = wrapMessageConsumer(outgoingMessageStream);
-			RemoteEndpoint remoteEndpoint = new RemoteEndpoint(outgoingMessageStream, ServiceEndpoints.toEndpoint(localServices));
+			RemoteEndpoint remoteEndpoint = new RemoteEndpoint(outgoingMessageStream, createLocalEndpoint());
+			configureRemoteEndpoint(remoteEndpoint);
 			jsonHandler.setMethodProvider(remoteEndpoint);
 			return remoteEndpoint;
 		}
+		
+		/**
+		 * Create the endpoint that delegates incoming messages to the local services.
+		 */
+		protected Endpoint createLocalEndpoint() {
+			Endpoint localEndpoint = ServiceEndpoints.toEndpoint(localServices);
+			if (localEndpoint instanceof GenericEndpoint)
+				bulkheads.forEach(((GenericEndpoint) localEndpoint)::setBulkhead);
+			return localEndpoint;
+		}
+		
+		/**
+		 * Apply the endpoint options of this builder to the given remote endpoint.
+		 */
+		protected void configureRemoteEndpoint(RemoteEndpoint remoteEndpoint) {
+			remoteEndpoint.setStaleRequestCanceller(staleRequestCanceller);
+			if (requestTimeout > 0)
+				remoteEndpoint.setRequestTimeout(requestTimeout, TimeUnit.MILLISECONDS);
+			requestTimeouts.forEach((method, timeout) -> remoteEndpoint.setRequestTimeout(method, timeout, TimeUnit.MILLISECONDS));
+		}
 	}
 	
 	
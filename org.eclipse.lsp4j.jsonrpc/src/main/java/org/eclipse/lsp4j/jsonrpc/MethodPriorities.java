@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.lsp4j.jsonrpc.PriorityScheduler.Priority;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+
+/**
+ * Maps JSON-RPC method names to the priority with which a {@link PriorityScheduler} handles incoming messages.
+ * Methods that are not mapped get the default priority for requests or notifications, respectively. By default
+ * notifications are {@link Priority#URGENT}, since they are cheap and later requests usually depend on them, and
+ * requests are {@link Priority#NORMAL}.
+ *
+ * <p>The mapping can be loaded from properties of the form {@code textDocument/completion = INTERACTIVE}.</p>
+ */
+public class MethodPriorities {
+
+	private final Map<String, Priority> priorities = new ConcurrentHashMap<>();
+	private volatile Priority requestPriority = Priority.NORMAL;
+	private volatile Priority notificationPriority = Priority.URGENT;
+
+	public MethodPriorities() {
+		set(MessageJsonHandler.CANCEL_METHOD, Priority.URGENT);
+	}
+
+	/**
+	 * Load the priorities from a properties file that maps method names to priority names.
+	 */
+	public static MethodPriorities load(InputStream input) throws IOException {
+		Properties properties = new Properties();
+		properties.load(input);
+		return load(properties);
+	}
+
+	/**
+	 * Load the priorities from properties that map method names to priority names.
+	 *
+	 * @throws IllegalArgumentException if a value is not the name of a {@link Priority}
+	 */
+	public static MethodPriorities load(Properties properties) {
+		MethodPriorities result = new MethodPriorities();
+		for (String method : properties.stringPropertyNames()) {
+			result.set(method, Priority.valueOf(properties.getProperty(method).trim()));
+		}
+		return result;
+	}
+
+	public MethodPriorities set(String method, Priority priority) {
+		if (priority == null)
+			priorities.remove(method);
+		else
+			priorities.put(method, priority);
+		return this;
+	}
+
+	public MethodPriorities set(JsonRpcMethod method, Priority priority) {
+		return set(method.getMethodName(), priority);
+	}
+
+	/**
+	 * Set the priority of requests whose method is not mapped.
+	 */
+	public MethodPriorities setRequestPriority(Priority priority) {
+		this.requestPriority = priority;
+		return this;
+	}
+
+	/**
+	 * Set the priority of notifications whose method is not mapped.
+	 */
+	public MethodPriorities setNotificationPriority(Priority priority) {
+		this.notificationPriority = priority;
+		return this;
+	}
+
+	/**
+	 * The priority of the given method, or {@code null} if it is not mapped.
+	 */
+	public Priority get(String method) {
+		return method != null ? priorities.get(method) : null;
+	}
+
+	/**
+	 * The priority with which the given incoming message is handled.
+	 */
+	public Priority getPriority(Message message) {
+		if (message instanceof RequestMessage) {
+			Priority priority = get(((RequestMessage) message).getMethod());
+			return priority != null ? priority : requestPriority;
+		}
+		if (message instanceof NotificationMessage) {
+			Priority priority = get(((NotificationMessage) message).getMethod());
+			return priority != null ? priority : notificationPriority;
+		}
+		return Priority.URGENT;
+	}
+
+}
@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Dispatches incoming requests and notifications to a delegate consumer (usually the {@link RemoteEndpoint}) on
+ * the threads of an executor, so a handler that does expensive work synchronously does not block the reading of
+ * further messages.
+ *
+ * <p>Each message is assigned an ordering key, by default the {@code textDocument.uri} of its parameters. Messages
+ * that share a key are consumed one after another in arrival order, while messages with different keys are consumed
+ * concurrently. A message without a key is consumed only after all earlier messages, and all later messages wait
+ * until it has been consumed, so the order relative to such messages is not changed either.</p>
+ *
+ * <p>Responses and {@code $/cancelRequest} notifications are consumed directly on the calling thread. A request
+ * that is cancelled while it is still waiting to be dispatched is not passed to the local service at all if the
+ * delegate is a {@link RemoteEndpoint}; the endpoint replies with a {@code RequestCancelled} error instead. For
+ * other delegates the cancel notification is delivered right after the request.</p>
+ *
+ * <p>If the executor is a {@link PriorityScheduler}, messages that are ready to be consumed are scheduled with
+ * the priority of their method. An {@link AdmissionController} can be set to reject requests on arrival while
+ * the queueing delay is too high.</p>
+ */
+public class OrderedMessageDispatcher implements MessageConsumer {
+
+	private static final Logger LOG = Logger.getLogger(OrderedMessageDispatcher.class.getName());
+
+	/**
+	 * The default ordering key: the {@code textDocument.uri} of the message parameters, or {@code null} if the
+	 * parameters have no such property.
+	 */
+	public static final Function<Message, Object> TEXT_DOCUMENT_URI = OrderedMessageDispatcher::getTextDocumentUri;
+
+	private final MessageConsumer delegate;
+	private final Executor executor;
+	private final Function<Message, Object> orderingKey;
+
+	private final Object lock = new Object();
+	/** Tasks that wait for a running or pending message without key, in arrival order. */
+	private final ArrayDeque<Task> waiting = new ArrayDeque<>();
+	/** Tasks that wait for an earlier message with the same key; a key is present while one of its tasks runs. */
+	private final Map<Object, ArrayDeque<Task>> lanes = new HashMap<>();
+	/** Requests that have not been consumed yet, by request id. */
+	private final Map<String, Task> pendingRequests = new ConcurrentHashMap<>();
+	private int activeCount;
+	private boolean barrier;
+	private volatile AdmissionController admissionController;
+
+	public OrderedMessageDispatcher(MessageConsumer delegate, Executor executor) {
+		this(delegate, executor, TEXT_DOCUMENT_URI);
+	}
+
+	/**
+	 * @param delegate - the consumer to which messages are dispatched
+	 * @param executor - the executor on which requests and notifications are consumed
+	 * @param orderingKey - a function that returns the ordering key of a request or notification, or {@code null}
+	 */
+	public OrderedMessageDispatcher(MessageConsumer delegate, Executor executor, Function<Message, Object> orderingKey) {
+		this.delegate = delegate;
+		this.executor = executor;
+		this.orderingKey = orderingKey;
+	}
+
+	/**
+	 * Set a controller that decides whether arriving requests are accepted. Rejected requests are answered by the
+	 * delegate, which must be a {@link RemoteEndpoint}.
+	 */
+	public void setAdmissionController(AdmissionController admissionController) {
+		if (admissionController != null && !(delegate instanceof RemoteEndpoint))
+			throw new IllegalStateException("Admission control requires a RemoteEndpoint as delegate.");
+		this.admissionController = admissionController;
+	}
+
+	public AdmissionController getAdmissionController() {
+		return admissionController;
+	}
+
+	@Override
+	public void consume(Message message) {
+		if (message instanceof NotificationMessage && isCancelNotification((NotificationMessage) message)) {
+			consumeCancel((NotificationMessage) message);
+		} else if (message instanceof RequestMessage || message instanceof NotificationMessage) {
+			AdmissionController controller = admissionController;
+			if (controller != null && !controller.admit(message)) {
+				RequestMessage request = (RequestMessage) message;
+				((RemoteEndpoint) delegate).handleRejectedRequest(request, controller.createRejectionError(request));
+				return;
+			}
+			Task task = new Task(message, orderingKey.apply(message));
+			if (controller != null) {
+				task.admissionController = controller;
+				task.arrivalTime = System.nanoTime();
+			}
+			if (message instanceof RequestMessage && ((RequestMessage) message).getId() != null)
+				pendingRequests.put(((RequestMessage) message).getId(), task);
+			synchronized (lock) {
+				if (barrier || !waiting.isEmpty())
+					waiting.add(task);
+				else
+					schedule(task);
+			}
+		} else {
+			delegate.consume(message);
+		}
+	}
+
+	protected boolean isCancelNotification(NotificationMessage message) {
+		return MessageJsonHandler.CANCEL_METHOD.getMethodName().equals(message.getMethod())
+				&& message.getParams() instanceof CancelParams;
+	}
+
+	private void consumeCancel(NotificationMessage message) {
+		String id = ((CancelParams) message.getParams()).getId();
+		Task task = id != null ? pendingRequests.get(id) : null;
+		if (task != null) {
+			synchronized (task) {
+				if (!task.consumed) {
+					task.cancelNotification = message;
+					return;
+				}
+			}
+		}
+		delegate.consume(message);
+	}
+
+	/**
+	 * Start the given task or put it into its lane. Must be called with the lock held.
+	 */
+	private void schedule(Task task) {
+		if (task.key == null) {
+			if (activeCount == 0) {
+				barrier = true;
+				execute(task);
+			} else {
+				waiting.add(task);
+			}
+		} else {
+			activeCount++;
+			ArrayDeque<Task> lane = lanes.get(task.key);
+			if (lane != null) {
+				lane.add(task);
+			} else {
+				lanes.put(task.key, new ArrayDeque<>());
+				execute(task);
+			}
+		}
+	}
+
+	private void execute(Task task) {
+		if (executor instanceof PriorityScheduler)
+			((PriorityScheduler) executor).execute(task.message, () -> run(task));
+		else
+			executor.execute(() -> run(task));
+	}
+
+	private void run(Task task) {
+		try {
+			dispatch(task);
+		} finally {
+			// Also release the lane if the handler has thrown an Error, otherwise all later messages would wait
+			synchronized (lock) {
+				Task next = completed(task);
+				// The next task of the lane is submitted again so it is scheduled with its own priority
+				if (next != null)
+					execute(next);
+			}
+		}
+	}
+
+	/**
+	 * Update the state after the given task has been consumed and return the next task of the same lane, if any.
+	 * Must be called with the lock held.
+	 */
+	private Task completed(Task task) {
+		if (task.key == null) {
+			barrier = false;
+		} else {
+			ArrayDeque<Task> lane = lanes.get(task.key);
+			Task next = lane.poll();
+			activeCount--;
+			if (next != null)
+				return next;
+			lanes.remove(task.key);
+		}
+		while (!waiting.isEmpty() && !barrier) {
+			Task waitingTask = waiting.peek();
+			if (waitingTask.key == null && activeCount > 0)
+				break;
+			waiting.poll();
+			schedule(waitingTask);
+		}
+		return null;
+	}
+
+	private void dispatch(Task task) {
+		if (task.admissionController != null)
+			task.admissionController.started(task.message, task.arrivalTime);
+		if (task.message instanceof RequestMessage && delegate instanceof RemoteEndpoint) {
+			boolean cancelled;
+			synchronized (task) {
+				cancelled = task.cancelNotification != null;
+				task.consumed = cancelled;
+			}
+			if (cancelled) {
+				pendingRequests.remove(((RequestMessage) task.message).getId(), task);
+				((RemoteEndpoint) delegate).handleCancelledRequest((RequestMessage) task.message);
+				return;
+			}
+		}
+		try {
+			delegate.consume(task.message);
+		} catch (RuntimeException exception) {
+			LOG.log(Level.SEVERE, "Error while consuming message: " + exception.getMessage(), exception);
+		}
+		if (task.message instanceof RequestMessage) {
+			NotificationMessage cancelNotification;
+			synchronized (task) {
+				task.consumed = true;
+				cancelNotification = task.cancelNotification;
+			}
+			pendingRequests.remove(((RequestMessage) task.message).getId(), task);
+			if (cancelNotification != null)
+				delegate.consume(cancelNotification);
+		}
+	}
+
+	private static class Task {
+		final Message message;
+		final Object key;
+		boolean consumed;
+		NotificationMessage cancelNotification;
+		AdmissionController admissionController;
+		long arrivalTime;
+
+		Task(Message message, Object key) {
+			this.message = message;
+			this.key = key;
+		}
+	}
+
+	//------------------------------ Default Ordering Key ------------------------------//
+
+	/**
+	 * The public getter of a property per parameter class.
+	 */
+	private static class Getters extends ClassValue<Optional<Method>> {
+		private final String name;
+
+		Getters(String name) {
+			this.name = name;
+		}
+
+		@Override
+		protected Optional<Method> computeValue(Class<?> type) {
+			try {
+				Method method = type.getMethod(name);
+				if (Modifier.isPublic(method.getDeclaringClass().getModifiers()) || trySetAccessible(method))
+					return Optional.of(method);
+			} catch (NoSuchMethodException exception) {
+				// The parameters do not have the property
+			}
+			return Optional.empty();
+		}
+	}
+
+	private static final Getters TEXT_DOCUMENT_GETTERS = new Getters("getTextDocument");
+	private static final Getters URI_GETTERS = new Getters("getUri");
+
+	private static Object getTextDocumentUri(Message message) {
+		Object params;
+		if (message instanceof RequestMessage)
+			params = ((RequestMessage) message).getParams();
+		else if (message instanceof NotificationMessage)
+			params = ((NotificationMessage) message).getParams();
+		else
+			return null;
+		if (params instanceof JsonElement) {
+			JsonElement textDocument = getMember((JsonElement) params, "textDocument");
+			JsonElement uri = textDocument != null ? getMember(textDocument, "uri") : null;
+			return uri != null && uri.isJsonPrimitive() ? uri.getAsString() : null;
+		}
+		Object textDocument = invokeGetter(params, TEXT_DOCUMENT_GETTERS);
+		Object uri = invokeGetter(textDocument, URI_GETTERS);
+		return uri instanceof String ? uri : null;
+	}
+
+	private static JsonElement getMember(JsonElement element, String name) {
+		if (element.isJsonObject())
+			return ((JsonObject) element).get(name);
+		return null;
+	}
+
+	private static Object invokeGetter(Object object, Getters getters) {
+		if (object == null)
+			return null;
+		Optional<Method> getter = getters.get(object.getClass());
+		if (!getter.isPresent())
+			return null;
+		try {
+			return getter.get().invoke(object);
+		} catch (IllegalAccessException | InvocationTargetException exception) {
+			return null;
+		}
+	}
+
+	private static boolean trySetAccessible(Method method) {
+		try {
+			method.setAccessible(true);
+			return true;
+		} catch (RuntimeException exception) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+
+/**
+ * A fixed number of worker threads that run tasks in the order of their priority, and in submission order within
+ * the same priority. Part of the workers is reserved for the priorities {@link Priority#URGENT} and
+ * {@link Priority#INTERACTIVE}, so tasks with these priorities can start even while all other workers are busy
+ * with expensive tasks.
+ *
+ * <p>When used as the executor of an {@link OrderedMessageDispatcher}, the priority of each incoming message is
+ * determined by the {@link MethodPriorities}.</p>
+ */
+public class PriorityScheduler implements Executor {
+
+	public enum Priority {
+		/** Messages that must be handled before anything else, e.g. document changes and cancellation. */
+		URGENT,
+		/** Requests for which the user is waiting, e.g. completion and hover. */
+		INTERACTIVE,
+		/** The default priority of requests. */
+		NORMAL,
+		/** Expensive requests that can wait, e.g. searching the whole workspace. */
+		BACKGROUND
+	}
+
+	private static final Logger LOG = Logger.getLogger(PriorityScheduler.class.getName());
+	private static final Priority[] PRIORITIES = Priority.values();
+	private static final AtomicInteger SCHEDULER_COUNT = new AtomicInteger();
+
+	private final int workers;
+	private final int reservedWorkers;
+	private final MethodPriorities methodPriorities;
+	private final String threadNamePrefix;
+
+	private final Object lock = new Object();
+	private final ArrayDeque<?>[] queues = new ArrayDeque<?>[PRIORITIES.length];
+	private int threadCount;
+	/** The number of waiting workers that have not been notified yet. */
+	private int idleCount;
+	/** The number of notifications that have not been received by a waiting worker yet. */
+	private int pendingWakeups;
+	/** The number of running tasks that do not have a reserved priority. */
+	private int unreservedRunning;
+	private boolean shutdown;
+
+	public PriorityScheduler(MethodPriorities methodPriorities) {
+		this(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), 1, methodPriorities);
+	}
+
+	/**
+	 * @param workers - the maximal number of worker threads
+	 * @param reservedWorkers - the number of workers that only run tasks with a reserved priority
+	 * @param methodPriorities - the priorities of incoming messages
+	 */
+	public PriorityScheduler(int workers, int reservedWorkers, MethodPriorities methodPriorities) {
+		if (workers <= 0)
+			throw new IllegalArgumentException("workers must be positive");
+		if (reservedWorkers < 0 || reservedWorkers >= workers)
+			throw new IllegalArgumentException("reservedWorkers must be between 0 and workers - 1");
+		this.workers = workers;
+		this.reservedWorkers = reservedWorkers;
+		this.methodPriorities = methodPriorities;
+		this.threadNamePrefix = "lsp4j-scheduler-" + SCHEDULER_COUNT.incrementAndGet() + "-worker-";
+		for (int i = 0; i < queues.length; i++) {
+			queues[i] = new ArrayDeque<Runnable>();
+		}
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public int getReservedWorkers() {
+		return reservedWorkers;
+	}
+
+	public MethodPriorities getMethodPriorities() {
+		return methodPriorities;
+	}
+
+	/**
+	 * The number of tasks with the given priority that wait for a worker.
+	 */
+	public int getQueueDepth(Priority priority) {
+		synchronized (lock) {
+			return queue(priority).size();
+		}
+	}
+
+	/**
+	 * Run the task with {@link Priority#NORMAL}.
+	 */
+	@Override
+	public void execute(Runnable task) {
+		execute(task, Priority.NORMAL);
+	}
+
+	/**
+	 * Run a task that handles the given incoming message, with the priority of the message.
+	 */
+	public void execute(Message message, Runnable task) {
+		execute(task, methodPriorities.getPriority(message));
+	}
+
+	public void execute(Runnable task, Priority priority) {
+		synchronized (lock) {
+			if (shutdown)
+				throw new RejectedExecutionException("The scheduler has been shut down.");
+			queue(priority).add(task);
+			if (idleCount > 0) {
+				// Claim the idle worker, so the next task notifies another worker or starts a new one
+				idleCount--;
+				pendingWakeups++;
+				lock.notify();
+			} else if (threadCount < workers) {
+				threadCount++;
+				Thread thread = new Thread(this::work, threadNamePrefix + threadCount);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+	}
+
+	/**
+	 * Let the workers terminate after the queued tasks have been run. No new tasks are accepted.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			shutdown = true;
+			lock.notifyAll();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private ArrayDeque<Runnable> queue(Priority priority) {
+		return (ArrayDeque<Runnable>) queues[priority.ordinal()];
+	}
+
+	private static boolean isReserved(Priority priority) {
+		return priority == Priority.URGENT || priority == Priority.INTERACTIVE;
+	}
+
+	private void work() {
+		while (true) {
+			Runnable task = null;
+			boolean reserved = false;
+			synchronized (lock) {
+				while (task == null) {
+					for (Priority priority : PRIORITIES) {
+						ArrayDeque<Runnable> queue = queue(priority);
+						if (queue.isEmpty())
+							continue;
+						reserved = isReserved(priority);
+						if (!reserved && unreservedRunning >= workers - reservedWorkers)
+							break;
+						task = queue.poll();
+						if (!reserved)
+							unreservedRunning++;
+						break;
+					}
+					if (task == null) {
+						if (shutdown) {
+							threadCount--;
+							return;
+						}
+						idleCount++;
+						try {
+							lock.wait();
+						} catch (InterruptedException exception) {
+							// Continue waiting for tasks
+						} finally {
+							if (pendingWakeups > 0)
+								pendingWakeups--;
+							else
+								idleCount--;
+						}
+					}
+				}
+			}
+			try {
+				task.run();
+			} catch (RuntimeException | Error exception) {
+				// Keep the worker alive, otherwise the scheduler would lose capacity
+				LOG.log(Level.SEVERE, exception.getMessage(), exception);
+			} finally {
+				if (!reserved) {
+					synchronized (lock) {
+						unreservedRunning--;
+					}
+				}
+			}
+		}
+	}
+
+}
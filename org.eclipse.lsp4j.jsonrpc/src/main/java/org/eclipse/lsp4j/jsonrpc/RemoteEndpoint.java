@@ -10,13 +10,16 @@ package org.eclipse.lsp4j.jsonrpc;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -72,8 +75,14 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 	private final Function<Throwable, ResponseError> exceptionHandler;
 	
 	private final AtomicInteger nextRequestId = new AtomicInteger();
-	private final Map<String, PendingRequestInfo> sentRequestMap = new LinkedHashMap<>();
-	private final Map<String, CompletableFuture<?>> receivedRequestMap = new LinkedHashMap<>();
+	private final RequestIdMap<PendingRequestInfo> sentRequestMap = new RequestIdMap<>();
+	private final RequestIdMap<CompletableFuture<?>> receivedRequestMap = new RequestIdMap<>();
+	private volatile StaleRequestCanceller staleRequestCanceller;
+	private final AtomicLong cancelledBeforeStartCount = new AtomicLong();
+	private final AtomicLong cancelledDuringExecutionCount = new AtomicLong();
+	private volatile TimingWheel timingWheel;
+	private volatile long defaultRequestTimeout;
+	private final Map<String, Long> requestTimeouts = new ConcurrentHashMap<>();
 	
 	/**
 	 * Information about requests that have been sent and for which no response has been received yet.
@@ -85,6 +94,7 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 		}
 		RequestMessage requestMessage;
 		CompletableFuture<Object> future;
+		volatile TimingWheel.Timeout timeout;
 	}
 	
 	/**
@@ -111,6 +121,69 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 	public RemoteEndpoint(MessageConsumer out, Endpoint localEndpoint) {
 		this(out, localEndpoint, DEFAULT_EXCEPTION_HANDLER);
 	}
+	
+	/**
+	 * Set a policy for cancelling incoming requests that have become stale because of later notifications.
+	 * By default no requests are cancelled automatically.
+	 */
+	public void setStaleRequestCanceller(StaleRequestCanceller staleRequestCanceller) {
+		this.staleRequestCanceller = staleRequestCanceller;
+	}
+	
+	public StaleRequestCanceller getStaleRequestCanceller() {
+		return staleRequestCanceller;
+	}
+	
+	/**
+	 * Set the time after which outgoing requests fail with a {@link TimeoutException} if no response has been
+	 * received. The remote endpoint is then notified that the request has been cancelled. A value of zero, which
+	 * is the default, disables the timeout.
+	 */
+	public void setRequestTimeout(long timeout, TimeUnit unit) {
+		this.defaultRequestTimeout = unit.toMillis(timeout);
+	}
+	
+	/**
+	 * Set the timeout of outgoing requests with the given method, overriding the default timeout. A value of
+	 * zero disables the timeout for the method, a negative value removes the override.
+	 */
+	public void setRequestTimeout(String method, long timeout, TimeUnit unit) {
+		if (timeout < 0)
+			requestTimeouts.remove(method);
+		else
+			requestTimeouts.put(method, unit.toMillis(timeout));
+	}
+	
+	/**
+	 * The timeout in milliseconds of outgoing requests with the given method, or zero if they have no timeout.
+	 */
+	public long getRequestTimeout(String method) {
+		Long timeout = requestTimeouts.get(method);
+		return timeout != null ? timeout : defaultRequestTimeout;
+	}
+	
+	/**
+	 * Set the timing wheel that tracks the timeouts of outgoing requests. By default the
+	 * {@link TimingWheel#getShared() shared} timing wheel is used.
+	 */
+	public void setTimingWheel(TimingWheel timingWheel) {
+		this.timingWheel = timingWheel;
+	}
+	
+	/**
+	 * The number of incoming requests that were cancelled before they were passed to the local endpoint.
+	 */
+	public long getCancelledBeforeStartCount() {
+		return cancelledBeforeStartCount.get();
+	}
+	
+	/**
+	 * The number of incoming requests that were cancelled by the remote endpoint while the local endpoint
+	 * was computing their result.
+	 */
+	public long getCancelledDuringExecutionCount() {
+		return cancelledDuringExecutionCount.get();
+	}
 
 	/**
 	 * Send a notification to the remote endpoint.
@@ -147,9 +220,15 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 				return super.cancel(mayInterruptIfRunning);
 			}
 		};
-		synchronized(sentRequestMap) {
-			// Store request information so it can be handled when the response is received
-			sentRequestMap.put(requestMessage.getId(), new PendingRequestInfo(requestMessage, result));
+		// Store request information so it can be handled when the response is received
+		PendingRequestInfo requestInfo = new PendingRequestInfo(requestMessage, result);
+		sentRequestMap.put(requestMessage.getId(), requestInfo);
+		long timeout = getRequestTimeout(method);
+		if (timeout > 0) {
+			TimingWheel wheel = timingWheel != null ? timingWheel : TimingWheel.getShared();
+			// The wheel thread only hands off the expiry, so dependent actions of the future do not run on it
+			requestInfo.timeout = wheel.schedule(() -> CompletableFuture.runAsync(() -> handleTimeout(requestInfo, timeout)),
+					timeout, TimeUnit.MILLISECONDS);
 		}
 		
 		try {
@@ -162,6 +241,16 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 		return result;
 	}
 
+	private void handleTimeout(PendingRequestInfo requestInfo, long timeout) {
+		RequestMessage requestMessage = requestInfo.requestMessage;
+		if (sentRequestMap.remove(requestMessage.getId()) == null)
+			return;
+		String message = "The request (id: " + requestMessage.getId() + ", method: '" + requestMessage.getMethod()
+				+ "') has not been answered within " + timeout + " ms";
+		if (requestInfo.future.completeExceptionally(new TimeoutException(message)))
+			sendCancelNotification(requestMessage.getRawId());
+	}
+	
 	protected RequestMessage createRequestMessage(String method, Object parameter) {
 		RequestMessage requestMessage = new RequestMessage();
 		requestMessage.setId(String.valueOf(nextRequestId.incrementAndGet()));
@@ -193,14 +282,15 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 	}
 
 	protected void handleResponse(ResponseMessage responseMessage) {
-		PendingRequestInfo requestInfo;
-		synchronized (sentRequestMap) {
-			requestInfo = sentRequestMap.remove(responseMessage.getId());
-		}
+		PendingRequestInfo requestInfo = sentRequestMap.remove(responseMessage.getId());
 		if (requestInfo == null) {
 			// We have no pending request information that matches the id given in the response
 			LOG.log(Level.WARNING, "Unmatched response message: " + responseMessage);
-		} else if (responseMessage.getError() != null) {
+			return;
+		}
+		if (requestInfo.timeout != null)
+			requestInfo.timeout.cancel();
+		if (responseMessage.getError() != null) {
 			// The remote service has replied with an error
 			requestInfo.future.completeExceptionally(new ResponseErrorException(responseMessage.getError()));
 		} else {
@@ -211,6 +301,7 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 
 	protected void handleNotification(NotificationMessage notificationMessage) {
 		if (!handleCancellation(notificationMessage)) {
+			cancelStaleRequests(notificationMessage);
 			// Forward the notification to the local endpoint
 			try {
 				localEndpoint.notify(notificationMessage.getMethod(), notificationMessage.getParams());
@@ -231,14 +322,13 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 			Object cancelParams = notificationMessage.getParams();
 			if (cancelParams != null) {
 				if (cancelParams instanceof CancelParams) {
-					synchronized (receivedRequestMap) {
-						String id = ((CancelParams) cancelParams).getId();
-						CompletableFuture<?> future = receivedRequestMap.get(id);
-						if (future != null)
-							future.cancel(true);
-						else
-							LOG.warning("Unmatched cancel notification for request id " + id);
-					}
+					String id = ((CancelParams) cancelParams).getId();
+					CompletableFuture<?> future = receivedRequestMap.get(id);
+					if (future != null) {
+						if (future.cancel(true))
+							cancelledDuringExecutionCount.incrementAndGet();
+					} else
+						LOG.warning("Unmatched cancel notification for request id " + id);
 					return true;
 				} else {
 					LOG.warning("Cancellation support is disabled, since the '" + MessageJsonHandler.CANCEL_METHOD.getMethodName() + "' method has been registered explicitly.");
@@ -250,6 +340,44 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 		return false;
 	}
 	
+	/**
+	 * Cancel the incoming requests that have become stale because of the given notification, as determined
+	 * by the {@link StaleRequestCanceller}. This is done before the notification is forwarded to the local endpoint.
+	 */
+	protected void cancelStaleRequests(NotificationMessage notificationMessage) {
+		StaleRequestCanceller canceller = staleRequestCanceller;
+		if (canceller != null) {
+			for (String id : canceller.notificationReceived(notificationMessage)) {
+				CompletableFuture<?> future = receivedRequestMap.get(id);
+				if (future != null)
+					future.cancel(true);
+			}
+		}
+	}
+	
+	/**
+	 * Reply to a request that has been cancelled before it was passed to the local endpoint, without
+	 * forwarding it.
+	 */
+	protected void handleCancelledRequest(RequestMessage requestMessage) {
+		cancelledBeforeStartCount.incrementAndGet();
+		out.consume(createCancelledResponseMessage(requestMessage));
+	}
+	
+	/**
+	 * Reply to a request that has been rejected before it was passed to the local endpoint, e.g. because the
+	 * server is overloaded, without forwarding it.
+	 */
+	protected void handleRejectedRequest(RequestMessage requestMessage, ResponseError errorObject) {
+		out.consume(createErrorResponseMessage(requestMessage, errorObject));
+	}
+	
+	private ResponseMessage createCancelledResponseMessage(RequestMessage requestMessage) {
+		String message = "The request (id: " + requestMessage.getId() + ", method: '" + requestMessage.getMethod()  + "') has been cancelled";
+		ResponseError errorObject = new ResponseError(ResponseErrorCode.RequestCancelled, message, null);
+		return createErrorResponseMessage(requestMessage, errorObject);
+	}
+	
 	protected void handleRequest(RequestMessage requestMessage) {
 		CompletableFuture<?> future;
 		try {
@@ -269,9 +397,10 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 		}
 		
 		final String messageId = requestMessage.getId();
-		synchronized (receivedRequestMap) {
-			receivedRequestMap.put(messageId, future);
-		}
+		receivedRequestMap.put(messageId, future);
+		StaleRequestCanceller canceller = staleRequestCanceller;
+		if (canceller != null)
+			canceller.requestReceived(requestMessage);
 		future.thenAccept((result) -> {
 			// Reply with the result object that was computed by the local endpoint 
 			out.consume(createResultResponseMessage(requestMessage, result));
@@ -279,9 +408,7 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 			// The local endpoint has failed computing a result - reply with an error response
 			ResponseMessage responseMessage;
 			if (isCancellation(t)) {
-				String message = "The request (id: " + messageId + ", method: '" + requestMessage.getMethod()  + "') has been cancelled";
-				ResponseError errorObject = new ResponseError(ResponseErrorCode.RequestCancelled, message, null);
-				responseMessage = createErrorResponseMessage(requestMessage, errorObject);
+				responseMessage = createCancelledResponseMessage(requestMessage);
 			} else {
 				ResponseError errorObject = exceptionHandler.apply(t);
 				if (errorObject == null) {
@@ -292,9 +419,9 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 			out.consume(responseMessage);
 			return null;
 		}).thenApply((obj) -> {
-			synchronized (receivedRequestMap) {
-				receivedRequestMap.remove(messageId);
-			}
+			receivedRequestMap.remove(messageId);
+			if (canceller != null)
+				canceller.requestCompleted(requestMessage);
 			return null;
 		});
 	}
@@ -342,15 +469,14 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 	}
 	
 	protected void handleResponseIssues(ResponseMessage responseMessage, List<MessageIssue> issues) {
-		PendingRequestInfo requestInfo;
-		synchronized (sentRequestMap) {
-			requestInfo = sentRequestMap.remove(responseMessage.getId());
-		}
+		PendingRequestInfo requestInfo = sentRequestMap.remove(responseMessage.getId());
 		if (requestInfo == null) {
 			// We have no pending request information that matches the id given in the response
 			LOG.log(Level.WARNING, "Unmatched response message: " + responseMessage);
 			logIssues(responseMessage, issues);
 		} else {
+			if (requestInfo.timeout != null)
+				requestInfo.timeout.cancel();
 			requestInfo.future.completeExceptionally(new MessageIssueException(responseMessage, issues));
 		}
 	}
@@ -383,11 +509,9 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MessageIssueHa
 
 	@Override
 	public String resolveMethod(String requestId) {
-		synchronized (sentRequestMap) {
-			PendingRequestInfo requestInfo = sentRequestMap.get(requestId);
-			if (requestInfo != null) {
-				return requestInfo.requestMessage.getMethod();
-			}
+		PendingRequestInfo requestInfo = sentRequestMap.get(requestId);
+		if (requestInfo != null) {
+			return requestInfo.requestMessage.getMethod();
 		}
 		return null;
 	}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free map from request ids to pending requests, used by {@link RemoteEndpoint}.
+ *
+ * <p>Ids that are non-negative decimal integers, like the ones generated by {@link RemoteEndpoint}, are stored in
+ * an array of slots indexed by the low bits of the id. Since such ids are usually assigned sequentially, all
+ * pending requests get their own slot unless more requests than slots are pending. Ids whose slot is taken and
+ * all other ids are stored in a {@link ConcurrentHashMap}, which is only consulted when it is not empty.</p>
+ */
+public class RequestIdMap<V> {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static class Entry<V> {
+		final int id;
+		final V value;
+		Entry(int id, V value) {
+			this.id = id;
+			this.value = value;
+		}
+	}
+
+	private final AtomicReferenceArray<Entry<V>> slots;
+	private final int mask;
+	private final ConcurrentHashMap<Object, V> overflow = new ConcurrentHashMap<>();
+
+	public RequestIdMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity - the number of slots, rounded up to a power of two
+	 */
+	public RequestIdMap(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	public void put(String id, V value) {
+		int key = toIntKey(id);
+		if (key >= 0)
+			put(key, value);
+		else
+			overflow.put(id, value);
+	}
+
+	public V get(String id) {
+		if (id == null)
+			return null;
+		int key = toIntKey(id);
+		if (key >= 0)
+			return get(key);
+		return overflow.get(id);
+	}
+
+	public V remove(String id) {
+		if (id == null)
+			return null;
+		int key = toIntKey(id);
+		if (key >= 0)
+			return remove(key);
+		return overflow.remove(id);
+	}
+
+	public void put(int id, V value) {
+		if (!slots.compareAndSet(id & mask, null, new Entry<>(id, value)))
+			overflow.put(id, value);
+	}
+
+	public V get(int id) {
+		Entry<V> entry = slots.get(id & mask);
+		if (entry != null && entry.id == id)
+			return entry.value;
+		if (overflow.isEmpty())
+			return null;
+		return overflow.get(id);
+	}
+
+	public V remove(int id) {
+		int index = id & mask;
+		Entry<V> entry = slots.get(index);
+		if (entry != null && entry.id == id && slots.compareAndSet(index, entry, null))
+			return entry.value;
+		if (overflow.isEmpty())
+			return null;
+		return overflow.remove(id);
+	}
+
+	/**
+	 * Convert an id that is the canonical decimal representation of a non-negative {@code int} to that number.
+	 *
+	 * @return the number, or -1 if the id has another form
+	 */
+	static int toIntKey(String id) {
+		int length = id.length();
+		if (length == 0 || length > 10 || (length > 1 && id.charAt(0) == '0'))
+			return -1;
+		long result = 0;
+		for (int i = 0; i < length; i++) {
+			int digit = id.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			result = 10 * result + digit;
+		}
+		if (result > Integer.MAX_VALUE)
+			return -1;
+		return (int) result;
+	}
+
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+
+/**
+ * A policy for a {@link RemoteEndpoint} that cancels incoming requests whose result has become useless because a
+ * later notification changed the resource they refer to, e.g. hover requests for a document that has been edited
+ * since. The endpoint cancels the futures of such requests and answers them with
+ * {@link org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode#RequestCancelled}.
+ *
+ * <p>Subclasses determine which requests refer to which resource and which notifications change a resource.
+ * If a notification carries a version, only changes with a newer version than seen before cancel requests.</p>
+ */
+public abstract class StaleRequestCanceller {
+
+	/** The ids of in-flight requests by resource; the sets are only accessed inside {@code compute} calls. */
+	private final Map<Object, Set<String>> requests = new ConcurrentHashMap<>();
+	private final Map<Object, Integer> versions = new ConcurrentHashMap<>();
+	private final AtomicLong cancelledCount = new AtomicLong();
+
+	/**
+	 * The resource the given request refers to, or {@code null} if the request is not cancelled on changes.
+	 */
+	protected abstract Object getResource(RequestMessage request);
+
+	/**
+	 * The resource changed by the given notification, or {@code null} if it is not a change notification.
+	 */
+	protected abstract Object getChangedResource(NotificationMessage notification);
+
+	/**
+	 * The version of the changed resource after the change, or {@code null} if the notification has no version.
+	 */
+	protected Integer getChangedVersion(NotificationMessage notification) {
+		return null;
+	}
+
+	/**
+	 * The resource that is no longer tracked after the given notification, e.g. because it has been closed, or
+	 * {@code null}.
+	 */
+	protected Object getReleasedResource(NotificationMessage notification) {
+		return null;
+	}
+
+	/**
+	 * The number of requests that have been cancelled so far.
+	 */
+	public long getCancelledCount() {
+		return cancelledCount.get();
+	}
+
+	/**
+	 * Track a request that has been passed to the local endpoint.
+	 */
+	public void requestReceived(RequestMessage request) {
+		Object resource = request.getId() != null ? getResource(request) : null;
+		if (resource != null) {
+			requests.compute(resource, (key, ids) -> {
+				if (ids == null)
+					ids = new HashSet<>();
+				ids.add(request.getId());
+				return ids;
+			});
+		}
+	}
+
+	/**
+	 * Stop tracking a request whose response has been sent.
+	 */
+	public void requestCompleted(RequestMessage request) {
+		Object resource = request.getId() != null ? getResource(request) : null;
+		if (resource != null) {
+			requests.computeIfPresent(resource, (key, ids) -> {
+				ids.remove(request.getId());
+				return ids.isEmpty() ? null : ids;
+			});
+		}
+	}
+
+	/**
+	 * Process an incoming notification before it is passed to the local endpoint.
+	 *
+	 * @return the ids of the requests that have become stale and must be cancelled
+	 */
+	public Collection<String> notificationReceived(NotificationMessage notification) {
+		Object released = getReleasedResource(notification);
+		if (released != null)
+			versions.remove(released);
+		Object resource = getChangedResource(notification);
+		if (resource == null)
+			return Collections.emptyList();
+		Integer version = getChangedVersion(notification);
+		if (version != null) {
+			boolean[] newer = new boolean[1];
+			versions.compute(resource, (key, previous) -> {
+				newer[0] = previous == null || version > previous;
+				return newer[0] ? version : previous;
+			});
+			if (!newer[0])
+				return Collections.emptyList();
+		}
+		Set<String> stale = requests.remove(resource);
+		if (stale == null)
+			return Collections.emptyList();
+		cancelledCount.addAndGet(stale.size());
+		return stale;
+	}
+
+}
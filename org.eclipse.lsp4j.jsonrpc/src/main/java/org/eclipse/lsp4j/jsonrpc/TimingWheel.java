@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timing wheel that runs tasks after a delay. The wheel is an array of buckets, each covering one tick.
+ * A task is put into the bucket in which its deadline falls, together with the number of full rotations until it
+ * is due, so scheduling and cancelling are constant-time operations and thousands of pending timeouts need neither
+ * a scheduled task nor a heap operation each. The precision of the deadlines is one tick.
+ *
+ * <p>A single daemon thread advances the wheel. It is started when the first task is scheduled and stops after
+ * {@link #stop()}. Expired tasks are run on that thread, so they should be cheap.</p>
+ */
+public class TimingWheel {
+
+	public static final long DEFAULT_TICK_MILLIS = 100;
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private static final Logger LOG = Logger.getLogger(TimingWheel.class.getName());
+	private static final AtomicInteger WHEEL_COUNT = new AtomicInteger();
+
+	private static TimingWheel shared;
+
+	/**
+	 * A timing wheel with default settings that is shared by all endpoints.
+	 */
+	public static synchronized TimingWheel getShared() {
+		if (shared == null)
+			shared = new TimingWheel();
+		return shared;
+	}
+
+	/**
+	 * A handle for a scheduled task.
+	 */
+	public static final class Timeout {
+		private final Runnable task;
+		private final long deadline;
+		private long remainingRounds;
+		private volatile boolean cancelled;
+		private volatile boolean expired;
+		// Links within a bucket, only accessed by the worker thread
+		private Timeout previous;
+		private Timeout next;
+
+		Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Prevent the task from running. Has no effect if it has already run.
+		 *
+		 * @return {@code true} if the task will not run because of this call
+		 */
+		public boolean cancel() {
+			if (expired || cancelled)
+				return false;
+			cancelled = true;
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public boolean isExpired() {
+			return expired;
+		}
+	}
+
+	private static final class Bucket {
+		Timeout head;
+		Timeout tail;
+
+		void add(Timeout timeout) {
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.previous = tail;
+				tail = timeout;
+			}
+		}
+
+		Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.previous != null)
+				timeout.previous.next = next;
+			if (next != null)
+				next.previous = timeout.previous;
+			if (timeout == head)
+				head = next;
+			if (timeout == tail)
+				tail = timeout.previous;
+			timeout.previous = timeout.next = null;
+			return next;
+		}
+	}
+
+	private final long tickNanos;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final String threadName;
+	/** Timeouts that have been scheduled but not yet put into their bucket. */
+	private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	private final Object lock = new Object();
+	private Thread worker;
+	private volatile boolean stopped;
+	private long startTime;
+	private long tick;
+
+	public TimingWheel() {
+		this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param tickDuration - the duration covered by each bucket, which is the precision of the deadlines
+	 * @param unit - the unit of the tick duration
+	 * @param wheelSize - the number of buckets, rounded up to a power of two
+	 */
+	public TimingWheel(long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0)
+			throw new IllegalArgumentException("tickDuration must be positive");
+		if (wheelSize <= 0 || wheelSize > 1 << 30)
+			throw new IllegalArgumentException("Invalid wheelSize: " + wheelSize);
+		int size = Integer.highestOneBit(wheelSize);
+		if (size < wheelSize)
+			size <<= 1;
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		this.threadName = "lsp4j-timing-wheel-" + WHEEL_COUNT.incrementAndGet();
+	}
+
+	/**
+	 * The number of scheduled tasks that have neither run nor been removed after cancellation.
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * Run the given task after the given delay, unless the returned timeout is cancelled before.
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		if (stopped)
+			throw new IllegalStateException("The timing wheel has been stopped.");
+		start();
+		Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0)));
+		pendingCount.incrementAndGet();
+		added.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stop the worker thread. Pending tasks are not run.
+	 */
+	public void stop() {
+		synchronized (lock) {
+			stopped = true;
+			if (worker != null)
+				worker.interrupt();
+		}
+	}
+
+	private void start() {
+		synchronized (lock) {
+			if (worker == null) {
+				startTime = System.nanoTime();
+				worker = new Thread(this::work, threadName);
+				worker.setDaemon(true);
+				worker.start();
+			}
+		}
+	}
+
+	private void work() {
+		while (!stopped) {
+			long deadline = tickNanos * (tick + 1);
+			long sleepNanos = deadline - (System.nanoTime() - startTime);
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException exception) {
+					continue;
+				}
+			}
+			transferAdded();
+			expire(wheel[(int) (tick & mask)], deadline);
+			tick++;
+		}
+	}
+
+	/**
+	 * Put the newly scheduled timeouts into their buckets.
+	 */
+	private void transferAdded() {
+		Timeout timeout;
+		while ((timeout = added.poll()) != null) {
+			if (timeout.cancelled) {
+				pendingCount.decrementAndGet();
+				continue;
+			}
+			long dueTick = Math.max(timeout.deadline / tickNanos, tick);
+			timeout.remainingRounds = (dueTick - tick) / wheel.length;
+			wheel[(int) (dueTick & mask)].add(timeout);
+		}
+	}
+
+	private void expire(Bucket bucket, long deadline) {
+		Timeout timeout = bucket.head;
+		while (timeout != null) {
+			if (timeout.cancelled) {
+				timeout = bucket.remove(timeout);
+				pendingCount.decrementAndGet();
+			} else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+				Timeout next = bucket.remove(timeout);
+				pendingCount.decrementAndGet();
+				timeout.expired = true;
+				try {
+					timeout.task.run();
+				} catch (RuntimeException exception) {
+					LOG.log(Level.WARNING, "Timeout task threw an exception: " + exception.getMessage(), exception);
+				}
+				timeout = next;
+			} else {
+				timeout.remainingRounds--;
+				timeout = timeout.next;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Opens Unix domain socket channels for connecting a client and a server that run on the same machine.
+ * Compared to TCP loopback connections this avoids the overhead of the network stack, and access can be
+ * restricted with file permissions. The returned channels can be passed to
+ * {@link Launcher#createLauncher(Object, Class, java.nio.channels.ByteChannel)} or
+ * {@link Launcher.Builder#setChannel(java.nio.channels.ByteChannel)}.
+ * 
+ * <p>Unix domain sockets are available on Java 16 and later. They are accessed reflectively so this class
+ * can be loaded on older runtimes, where {@link #isSupported()} returns {@code false}.</p>
+ */
+public final class UnixDomainSockets {
+
+	private UnixDomainSockets() {}
+
+	private static final ProtocolFamily UNIX;
+	private static final Method ADDRESS_OF;
+	private static final Method SOCKET_OPEN;
+	private static final Method SERVER_SOCKET_OPEN;
+
+	static {
+		ProtocolFamily family = null;
+		Method addressOf = null, socketOpen = null, serverSocketOpen = null;
+		try {
+			family = StandardProtocolFamily.valueOf("UNIX");
+			addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+			socketOpen = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+			serverSocketOpen = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+		} catch (IllegalArgumentException | ReflectiveOperationException e) {
+			family = null;
+		}
+		UNIX = family;
+		ADDRESS_OF = addressOf;
+		SOCKET_OPEN = socketOpen;
+		SERVER_SOCKET_OPEN = serverSocketOpen;
+	}
+
+	/**
+	 * Whether the current runtime supports Unix domain socket channels.
+	 */
+	public static boolean isSupported() {
+		return UNIX != null;
+	}
+
+	/**
+	 * Create the socket address for the given socket file.
+	 * 
+	 * @throws UnsupportedOperationException if Unix domain sockets are not supported
+	 */
+	public static SocketAddress address(Path path) {
+		return (SocketAddress) invoke(ADDRESS_OF, path);
+	}
+
+	/**
+	 * Connect to a server that listens on the given socket file. This is the client role.
+	 * 
+	 * @throws UnsupportedOperationException if Unix domain sockets are not supported
+	 */
+	public static SocketChannel connect(Path path) throws IOException {
+		SocketAddress address = address(path);
+		SocketChannel channel = (SocketChannel) invoke(SOCKET_OPEN, UNIX);
+		try {
+			channel.connect(address);
+			return channel;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Bind a server channel to the given socket file, which must not exist yet. Connections are accepted with
+	 * {@link ServerSocketChannel#accept()}. The socket file is not removed when the channel is closed.
+	 * 
+	 * @throws UnsupportedOperationException if Unix domain sockets are not supported
+	 */
+	public static ServerSocketChannel bind(Path path) throws IOException {
+		SocketAddress address = address(path);
+		ServerSocketChannel serverChannel = (ServerSocketChannel) invoke(SERVER_SOCKET_OPEN, UNIX);
+		try {
+			serverChannel.bind(address);
+			return serverChannel;
+		} catch (IOException | RuntimeException e) {
+			serverChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait for a single client to connect to the given socket file. This is the server role for the common
+	 * case that a language or debug server is started for exactly one client. The socket file is removed
+	 * as soon as the client is connected.
+	 * 
+	 * @throws UnsupportedOperationException if Unix domain sockets are not supported
+	 */
+	public static SocketChannel accept(Path path) throws IOException {
+		try (ServerSocketChannel serverChannel = bind(path)) {
+			return serverChannel.accept();
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	private static Object invoke(Method method, Object argument) {
+		if (!isSupported())
+			throw new UnsupportedOperationException("Unix domain sockets are not supported by this Java runtime.");
+		try {
+			return method.invoke(null, argument);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new JsonRpcException((Exception) cause);
+		} catch (IllegalAccessException e) {
+			throw new JsonRpcException(e);
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors that start a new virtual thread for each task. Virtual threads are cheap enough to block, so
+ * request handlers that do blocking I/O neither pin platform threads nor starve a shared pool.
+ *
+ * <p>Virtual threads are available on Java 21 and later. They are accessed reflectively so this class can be
+ * loaded on older runtimes, where {@link #isSupported()} returns {@code false} and cached thread pools are used
+ * instead.</p>
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {}
+
+	private static final Method NEW_VIRTUAL_EXECUTOR;
+	private static final Method IS_VIRTUAL;
+
+	static {
+		Method newVirtualExecutor = null, isVirtual = null;
+		try {
+			// Virtual threads are a preview feature on Java 19 and 20, so creating a builder fails unless enabled
+			Thread.class.getMethod("ofVirtual").invoke(null);
+			newVirtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			isVirtual = Thread.class.getMethod("isVirtual");
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			newVirtualExecutor = null;
+			isVirtual = null;
+		}
+		NEW_VIRTUAL_EXECUTOR = newVirtualExecutor;
+		IS_VIRTUAL = isVirtual;
+	}
+
+	private static volatile ExecutorService sharedExecutor;
+
+	/**
+	 * Whether the current runtime supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	/**
+	 * Create an executor service that runs each task in a new virtual thread, or a cached thread pool if virtual
+	 * threads are not supported.
+	 */
+	public static ExecutorService newExecutorService() {
+		if (!isSupported())
+			return Executors.newCachedThreadPool();
+		try {
+			return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new UnsupportedOperationException("Failed to create a virtual thread executor.", e);
+		}
+	}
+
+	/**
+	 * An executor service that runs each task in a new virtual thread, shared by all callers.
+	 *
+	 * @throws UnsupportedOperationException if virtual threads are not supported
+	 */
+	public static ExecutorService getSharedExecutorService() {
+		if (!isSupported())
+			throw new UnsupportedOperationException("Virtual threads are not supported by this Java runtime.");
+		ExecutorService result = sharedExecutor;
+		if (result == null) {
+			synchronized (VirtualThreads.class) {
+				result = sharedExecutor;
+				if (result == null)
+					sharedExecutor = result = newExecutorService();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Whether the given thread is a virtual thread.
+	 */
+	public static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null)
+			return false;
+		try {
+			return (Boolean) IS_VIRTUAL.invoke(thread);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			return false;
+		}
+	}
+
+}
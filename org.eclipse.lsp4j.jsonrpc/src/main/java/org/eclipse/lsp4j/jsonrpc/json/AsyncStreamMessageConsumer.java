@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.lsp4j.jsonrpc.JsonRpcException;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+
+/**
+ * A message consumer that serializes messages on the calling thread and hands them to a single writer
+ * task through a bounded {@link MessageOutputQueue}. The writer drains all pending messages, writes them
+ * back to back and flushes the output once per batch, so callers are not blocked by a slow receiver
+ * unless the queue is full. The overflow policy of the queue determines what happens in that case.
+ *
+ * <p>By default, the writer runs on a dedicated daemon thread of the consumer, which terminates while there is
+ * nothing to write. If an executor is given instead, the writer task blocks one of its threads while the receiver
+ * does not read fast enough. The executor must then be able to run the writer independently of the threads that
+ * send messages or read the input; a small fixed thread pool shared with the message handlers can deadlock.</p>
+ */
+public class AsyncStreamMessageConsumer extends StreamMessageConsumer {
+
+	private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+	private final MessageOutputQueue queue;
+	private final Executor executor;
+
+	private final AtomicBoolean writerScheduled = new AtomicBoolean();
+	private volatile Exception writeFailure;
+
+	private OutputStream bufferedOutput;
+	private OutputStream bufferedOutputTarget;
+
+	public AsyncStreamMessageConsumer(OutputStream output, MessageJsonHandler jsonHandler, MessageOutputQueue queue) {
+		this(output, StandardCharsets.UTF_8.name(), jsonHandler, queue, createWriterExecutor());
+	}
+
+	public AsyncStreamMessageConsumer(OutputStream output, MessageJsonHandler jsonHandler,
+			MessageOutputQueue queue, Executor executor) {
+		this(output, StandardCharsets.UTF_8.name(), jsonHandler, queue, executor);
+	}
+
+	public AsyncStreamMessageConsumer(OutputStream output, String encoding, MessageJsonHandler jsonHandler,
+			MessageOutputQueue queue, Executor executor) {
+		super(output, encoding, jsonHandler);
+		this.queue = queue;
+		this.executor = executor;
+	}
+
+	public AsyncStreamMessageConsumer(WritableByteChannel channel, MessageJsonHandler jsonHandler, MessageOutputQueue queue) {
+		this(channel, StandardCharsets.UTF_8.name(), jsonHandler, queue, createWriterExecutor());
+	}
+
+	public AsyncStreamMessageConsumer(WritableByteChannel channel, MessageJsonHandler jsonHandler,
+			MessageOutputQueue queue, Executor executor) {
+		this(channel, StandardCharsets.UTF_8.name(), jsonHandler, queue, executor);
+	}
+
+	public AsyncStreamMessageConsumer(WritableByteChannel channel, String encoding, MessageJsonHandler jsonHandler,
+			MessageOutputQueue queue, Executor executor) {
+		super(channel, encoding, jsonHandler);
+		this.queue = queue;
+		this.executor = executor;
+	}
+
+	/**
+	 * An executor with a single daemon thread for the writer of one consumer. The thread is started on demand
+	 * and terminates after being idle for a while.
+	 */
+	private static Executor createWriterExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "lsp4j-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	public MessageOutputQueue getQueue() {
+		return queue;
+	}
+
+	@Override
+	public void consume(Message message) {
+		checkWriteFailure();
+		byte[] frame;
+		MessageOutputBuffer buffer = MessageOutputBuffer.acquire();
+		try {
+			String separateHeader = serialize(message, buffer);
+			frame = buffer.toByteArray(separateHeader);
+		} catch (IOException exception) {
+			throw new JsonRpcException(exception);
+		} finally {
+			buffer.release();
+		}
+		try {
+			queue.put(frame, message instanceof NotificationMessage ? ((NotificationMessage) message).getMethod() : null);
+		} catch (OutputQueueFullException exception) {
+			throw new JsonRpcException(exception);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new JsonRpcException(exception);
+		}
+		scheduleWriter();
+		checkWriteFailure();
+	}
+
+	private void checkWriteFailure() {
+		Exception failure = writeFailure;
+		if (failure != null)
+			throw new JsonRpcException(failure);
+	}
+
+	private void scheduleWriter() {
+		if (writerScheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::writePendingMessages);
+			} catch (RejectedExecutionException exception) {
+				writerScheduled.set(false);
+				throw exception;
+			}
+		}
+	}
+
+	/**
+	 * Write batches of queued messages until the queue is empty. At most one invocation of this method
+	 * is running at any time.
+	 */
+	protected void writePendingMessages() {
+		List<byte[]> batch = new ArrayList<>();
+		try {
+			while (true) {
+				if (queue.drainTo(batch) == 0) {
+					writerScheduled.set(false);
+					// A message may have been queued after draining, but before the flag was reset
+					if (queue.isEmpty() || !writerScheduled.compareAndSet(false, true))
+						return;
+					continue;
+				}
+				synchronized (getOutputLock()) {
+					WritableByteChannel channel = getChannel();
+					if (channel != null)
+						write(channel, batch);
+					else
+						write(getBufferedOutput(), batch);
+				}
+				queue.recordBatch(batch.size());
+				batch.clear();
+			}
+		} catch (IOException | RuntimeException exception) {
+			// Keep the writer flag set so no further writes are attempted
+			writeFailure = exception;
+			queue.clear();
+		}
+	}
+
+	private OutputStream getBufferedOutput() {
+		OutputStream output = getOutput();
+		if (bufferedOutput == null || bufferedOutputTarget != output) {
+			bufferedOutput = new BufferedOutputStream(output, OUTPUT_BUFFER_SIZE);
+			bufferedOutputTarget = output;
+		}
+		return bufferedOutput;
+	}
+
+	private void write(OutputStream output, List<byte[]> batch) throws IOException {
+		for (byte[] frame : batch) {
+			output.write(frame);
+		}
+		output.flush();
+	}
+
+	private void write(WritableByteChannel channel, List<byte[]> batch) throws IOException {
+		ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = ByteBuffer.wrap(batch.get(i));
+		}
+		if (channel instanceof GatheringByteChannel) {
+			ByteBuffer last = buffers[buffers.length - 1];
+			while (last.hasRemaining()) {
+				((GatheringByteChannel) channel).write(buffers);
+			}
+		} else {
+			for (ByteBuffer buffer : buffers) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		}
+	}
+
+}
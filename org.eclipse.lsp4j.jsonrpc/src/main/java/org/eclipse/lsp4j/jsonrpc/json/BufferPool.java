@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+/**
+ * A pool of byte arrays used to hold the content of incoming messages.
+ */
+public interface BufferPool {
+	
+	/**
+	 * Obtain a buffer with at least the given length. The returned array may be longer than requested.
+	 */
+	byte[] acquire(int minLength);
+	
+	/**
+	 * Return a buffer that has been obtained with {@link #acquire(int)}. The caller must not access
+	 * the buffer anymore after releasing it.
+	 */
+	void release(byte[] buffer);
+	
+	/**
+	 * Drop the buffers that are retained for the current thread.
+	 */
+	default void trim() {
+	}
+
+}
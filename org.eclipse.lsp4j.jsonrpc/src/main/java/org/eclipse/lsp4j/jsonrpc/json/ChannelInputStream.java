@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads from a blocking channel. Unlike {@link java.nio.channels.Channels#newInputStream(ReadableByteChannel)},
+ * this does not hold the blocking lock of selectable channels while reading, so messages can be written to
+ * the same socket channel concurrently.
+ */
+class ChannelInputStream extends InputStream {
+
+	private final ReadableByteChannel channel;
+	private ByteBuffer buffer;
+	private byte[] array;
+
+	ChannelInputStream(ReadableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int count = read(b, 0, 1);
+		return count < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		// Reuse the wrapper when the caller reads into the same array repeatedly
+		if (b != array) {
+			array = b;
+			buffer = ByteBuffer.wrap(b);
+		}
+		buffer.limit(off + len).position(off);
+		int count;
+		do {
+			count = channel.read(buffer);
+		} while (count == 0);
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
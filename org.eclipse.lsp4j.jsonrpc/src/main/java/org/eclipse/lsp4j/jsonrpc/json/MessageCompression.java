@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.lsp4j.jsonrpc.MessageIssueException;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer.Headers;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+
+/**
+ * Negotiates the compression of message content between the two sides of a connection. The same instance
+ * must be passed to the {@link StreamMessageProducer} (or {@link MessageFrameDecoder}) and the
+ * {@link StreamMessageConsumer} of a connection.
+ *
+ * <p>Outgoing messages carry an {@code Accept-Encoding} header that lists the supported encodings until
+ * the peer has sent such a header, too, and at least the first outgoing message carries it. Content is compressed only after the peer has announced that it
+ * accepts one of the supported encodings, and only if it is larger than the threshold. The encoding is
+ * given in the {@code Content-Encoding} header, and the {@code Content-Length} refers to the compressed content.
+ * Peers that do not support compression ignore the additional header and never receive compressed content.</p>
+ *
+ * <p>Incoming compressed content is only decompressed if compression is enabled for the connection, and the
+ * decompressed content is limited by {@link #getMaxDecompressedSize()} in addition to the maximal message size.</p>
+ */
+public class MessageCompression {
+
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+
+	/**
+	 * Content below this size is not compressed by default.
+	 */
+	public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+	/**
+	 * Incoming content that decompresses to more than this size is rejected by default.
+	 */
+	public static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 64 << 20;
+
+	private static final List<String> SUPPORTED_ENCODINGS = Arrays.asList(GZIP, DEFLATE);
+
+	private final int threshold;
+	private final int maxDecompressedSize;
+	private final List<String> encodings;
+	private final String acceptEncoding;
+
+	private volatile String negotiatedEncoding;
+	private volatile boolean peerAnnounced;
+	private volatile boolean announced;
+
+	public MessageCompression() {
+		this(DEFAULT_THRESHOLD, GZIP, DEFLATE);
+	}
+
+	/**
+	 * @param threshold - the minimal content length of outgoing messages that are compressed
+	 * @param encodings - the accepted encodings in order of preference, {@link #GZIP} or {@link #DEFLATE}
+	 */
+	public MessageCompression(int threshold, String... encodings) {
+		this(threshold, DEFAULT_MAX_DECOMPRESSED_SIZE, encodings);
+	}
+
+	/**
+	 * @param threshold - the minimal content length of outgoing messages that are compressed
+	 * @param maxDecompressedSize - the maximal size of decompressed incoming content
+	 * @param encodings - the accepted encodings in order of preference, {@link #GZIP} or {@link #DEFLATE}
+	 */
+	public MessageCompression(int threshold, int maxDecompressedSize, String... encodings) {
+		if (threshold < 0)
+			throw new IllegalArgumentException("threshold must not be negative");
+		if (maxDecompressedSize <= 0)
+			throw new IllegalArgumentException("maxDecompressedSize must be positive");
+		if (encodings.length == 0)
+			throw new IllegalArgumentException("At least one encoding must be given.");
+		for (String encoding : encodings) {
+			if (!SUPPORTED_ENCODINGS.contains(encoding))
+				throw new IllegalArgumentException("Unsupported content encoding: " + encoding);
+		}
+		this.threshold = threshold;
+		this.maxDecompressedSize = maxDecompressedSize;
+		this.encodings = Collections.unmodifiableList(Arrays.asList(encodings.clone()));
+		this.acceptEncoding = String.join(", ", encodings);
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	public int getMaxDecompressedSize() {
+		return maxDecompressedSize;
+	}
+
+	public List<String> getEncodings() {
+		return encodings;
+	}
+
+	/**
+	 * The encoding used for outgoing messages, or {@code null} if the peer has not announced that it
+	 * accepts any of the supported encodings.
+	 */
+	public String getNegotiatedEncoding() {
+		return negotiatedEncoding;
+	}
+
+	/**
+	 * Process the {@code Accept-Encoding} header received from the peer. The first of the own encodings
+	 * that is accepted by the peer is used for outgoing messages.
+	 */
+	public void peerAccepts(String acceptEncodingHeader) {
+		String selected = null;
+		List<String> accepted = parseAcceptEncoding(acceptEncodingHeader);
+		for (String encoding : encodings) {
+			if (accepted.contains(encoding)) {
+				selected = encoding;
+				break;
+			}
+		}
+		negotiatedEncoding = selected;
+		peerAnnounced = true;
+	}
+
+	/**
+	 * The value of the {@code Accept-Encoding} header to attach to the next outgoing message, or {@code null}
+	 * if the peer already knows the accepted encodings. The header is sent at least once, and then until the
+	 * peer has announced its own encodings.
+	 */
+	String getAcceptEncodingHeader() {
+		if (announced && peerAnnounced)
+			return null;
+		announced = true;
+		return acceptEncoding;
+	}
+
+	/**
+	 * The encoding to use for an outgoing message with the given content length, or {@code null} if the
+	 * content is sent uncompressed.
+	 */
+	String selectEncoding(int contentLength) {
+		if (contentLength < threshold)
+			return null;
+		return negotiatedEncoding;
+	}
+
+	private static List<String> parseAcceptEncoding(String header) {
+		String[] parts = header.split(",");
+		String[] result = new String[parts.length];
+		int count = 0;
+		for (String part : parts) {
+			int paramIndex = part.indexOf(';');
+			String encoding = (paramIndex >= 0 ? part.substring(0, paramIndex) : part).trim();
+			// An encoding with quality value 0 is not acceptable
+			if (paramIndex >= 0 && part.substring(paramIndex + 1).trim().matches("q\\s*=\\s*0(\\.0*)?"))
+				continue;
+			result[count++] = encoding;
+		}
+		return Arrays.asList(result).subList(0, count);
+	}
+
+	/**
+	 * Whether the content of an incoming message with the given headers is compressed.
+	 */
+	static boolean isCompressed(Headers headers) {
+		return headers.contentEncoding != null && !"identity".equalsIgnoreCase(headers.contentEncoding.trim());
+	}
+
+	/**
+	 * The issue of a compressed incoming message on a connection without compression.
+	 */
+	static MessageIssueException createNotEnabledIssue(Headers headers) {
+		return new MessageIssueException(null, new MessageIssue("Compressed content is not accepted (Content-Encoding: "
+				+ headers.contentEncoding + ").", ResponseErrorCode.InvalidRequest.getValue()));
+	}
+
+	/**
+	 * Decompress the content of an incoming message into a buffer obtained from the given pool. The array
+	 * of the returned buffer must be released to the pool after use.
+	 *
+	 * @throws IOException if the encoding is not supported, the content is malformed, or the content is too
+	 *     large and not identifiable as a message
+	 * @throws MessageIssueException if the decompressed content exceeds the maximal message size or the maximal
+	 *     decompressed size
+	 */
+	ByteBuffer decompress(ByteBuffer content, Headers headers, int maxMessageSize, BufferPool bufferPool)
+			throws IOException {
+		int maxSize = Math.min(maxMessageSize, maxDecompressedSize);
+		String encoding = headers.contentEncoding.trim();
+		byte[] compressed;
+		int offset, length = content.remaining();
+		if (content.hasArray()) {
+			compressed = content.array();
+			offset = content.arrayOffset() + content.position();
+		} else {
+			compressed = new byte[length];
+			content.duplicate().get(compressed);
+			offset = 0;
+		}
+		InputStream input = new ByteArrayInputStream(compressed, offset, length);
+		if (GZIP.equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding))
+			input = new GZIPInputStream(input);
+		else if (DEFLATE.equalsIgnoreCase(encoding))
+			input = new InflaterInputStream(input);
+		else
+			throw new IOException("Unsupported content encoding: " + encoding);
+
+		try {
+			byte[] buffer = bufferPool.acquire((int) Math.min(maxSize, Math.max(8192, 4L * length)));
+			int size = 0;
+			try {
+				while (true) {
+					int limit = Math.min(buffer.length, maxSize);
+					if (size == limit) {
+						if (size == maxSize) {
+							if (input.read() < 0)
+								break;
+							Message message = parseIdentity(buffer, size, headers);
+							MessageIssue issue = createSizeExceededIssue(maxSize);
+							if (message == null)
+								throw new IOException(issue.getText());
+							throw new MessageIssueException(message, issue);
+						}
+						byte[] larger = bufferPool.acquire((int) Math.min(maxSize, 2L * size));
+						System.arraycopy(buffer, 0, larger, 0, size);
+						bufferPool.release(buffer);
+						buffer = larger;
+						continue;
+					}
+					int count = input.read(buffer, size, limit - size);
+					if (count < 0)
+						break;
+					size += count;
+				}
+				return ByteBuffer.wrap(buffer, 0, size);
+			} catch (IOException | RuntimeException exception) {
+				bufferPool.release(buffer);
+				throw exception;
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	private static Message parseIdentity(byte[] buffer, int size, Headers headers) {
+		return MessageFraming.parseMessageIdentity(Arrays.copyOf(buffer, Math.min(size, MessageFraming.IDENTITY_PREFIX_LENGTH)), headers);
+	}
+
+	private static MessageIssue createSizeExceededIssue(int maxMessageSize) {
+		return new MessageIssue("Decompressed message exceeds the maximal size of " + maxMessageSize + " bytes.",
+				ResponseErrorCode.InvalidRequest.getValue());
+	}
+
+}
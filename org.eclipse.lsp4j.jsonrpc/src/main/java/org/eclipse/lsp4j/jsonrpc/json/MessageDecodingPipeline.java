@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer.Headers;
+
+/**
+ * A bounded single-producer/single-consumer ring of raw message frames that separates reading from JSON decoding
+ * in a {@link StreamMessageProducer}. The reading thread puts the content of each message into the ring, and a
+ * decoding task running on an executor parses the messages and passes them to the message consumer in the same
+ * order. When the ring is full, the reading thread waits for the decoding task.
+ *
+ * <p>The buffers of decoded frames are returned to the {@link BufferPool} by the reading thread, which has acquired
+ * them, so thread-confined pools such as {@link SizeClassBufferPool} get their buffers back. This happens when the
+ * next frame is put into the ring and when the pipeline is finished.</p>
+ *
+ * <p>The ring also provides statistics about the queue depth. An instance must not be shared between multiple
+ * producers.</p>
+ */
+public class MessageDecodingPipeline {
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * Decodes a frame taken from the ring. The handler must not keep or release the buffer.
+	 */
+	interface FrameHandler {
+		void handle(byte[] buffer, int length, Headers headers);
+	}
+
+	private static class Frame {
+		byte[] buffer;
+		int length;
+		final Headers headers = new Headers();
+	}
+
+	private final Frame[] frames;
+	private final int mask;
+
+	/** The index of the next frame to decode, only advanced by the decoding task. */
+	private final AtomicLong head = new AtomicLong();
+	/** The index of the next free slot, only advanced by the reading thread. */
+	private final AtomicLong tail = new AtomicLong();
+	/** The index of the next frame whose buffer is to be released, only accessed by the reading thread. */
+	private long recycled;
+	private BufferPool bufferPool;
+
+	private volatile boolean finished;
+	private volatile CountDownLatch decoderDone;
+	private volatile Thread decoderThread;
+	private volatile boolean decoderWaiting;
+	private volatile Thread readerThread;
+	private volatile boolean readerWaiting;
+
+	private volatile int maxQueueDepth;
+	private volatile long readerWaitCount;
+
+	public MessageDecodingPipeline() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity - the maximal number of frames waiting to be decoded, rounded up to a power of two
+	 */
+	public MessageDecodingPipeline(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 20)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.frames = new Frame[size];
+		for (int i = 0; i < size; i++) {
+			frames[i] = new Frame();
+		}
+		this.mask = size - 1;
+	}
+
+	public int getCapacity() {
+		return frames.length;
+	}
+
+	/**
+	 * The number of frames currently waiting to be decoded.
+	 */
+	public int getQueueDepth() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * The largest number of frames that have been waiting to be decoded at the same time.
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * The number of frames put into the ring so far.
+	 */
+	public long getFrameCount() {
+		return tail.get();
+	}
+
+	/**
+	 * The number of frames for which the reading thread had to wait because the ring was full.
+	 */
+	public long getReaderWaitCount() {
+		return readerWaitCount;
+	}
+
+	/**
+	 * Start the decoding task, which runs until {@link #finish()} is called. The buffers of decoded frames are
+	 * released to the given pool on the thread that puts the frames into the ring.
+	 */
+	void start(Executor executor, FrameHandler handler, BufferPool bufferPool) {
+		if (decoderDone != null && decoderDone.getCount() > 0)
+			throw new IllegalStateException("The decoding pipeline is already running.");
+		finished = false;
+		this.bufferPool = bufferPool;
+		CountDownLatch done = new CountDownLatch(1);
+		decoderDone = done;
+		executor.execute(() -> decode(handler, done));
+	}
+
+	/**
+	 * Put a frame into the ring, waiting while the ring is full. The buffer is released when it has been decoded.
+	 */
+	void put(byte[] buffer, int length, Headers headers) throws InterruptedException {
+		long t = tail.get();
+		if (t - head.get() == frames.length) {
+			readerWaitCount++;
+			readerThread = Thread.currentThread();
+			while (t - head.get() == frames.length) {
+				readerWaiting = true;
+				if (t - head.get() == frames.length)
+					LockSupport.park(this);
+				readerWaiting = false;
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		}
+		recycleBuffers();
+		Frame frame = frames[(int) t & mask];
+		frame.buffer = buffer;
+		frame.length = length;
+		frame.headers.contentLength = headers.contentLength;
+		frame.headers.charset = headers.charset;
+		frame.headers.contentEncoding = headers.contentEncoding;
+		frame.headers.acceptEncoding = headers.acceptEncoding;
+		tail.set(t + 1);
+
+		int depth = (int) (t + 1 - head.get());
+		if (depth > maxQueueDepth)
+			maxQueueDepth = depth;
+		if (decoderWaiting)
+			LockSupport.unpark(decoderThread);
+	}
+
+	/**
+	 * Signal that no more frames are put into the ring and wait until the decoding task has decoded the
+	 * remaining frames.
+	 */
+	void finish() {
+		finished = true;
+		if (decoderWaiting)
+			LockSupport.unpark(decoderThread);
+		CountDownLatch done = decoderDone;
+		if (done != null) {
+			try {
+				done.await();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		recycleBuffers();
+	}
+
+	/**
+	 * Release the buffers of the frames that have been decoded, called by the reading thread.
+	 */
+	private void recycleBuffers() {
+		long h = head.get();
+		while (recycled < h) {
+			Frame frame = frames[(int) recycled & mask];
+			byte[] buffer = frame.buffer;
+			frame.buffer = null;
+			if (buffer != null && bufferPool != null)
+				bufferPool.release(buffer);
+			recycled++;
+		}
+	}
+
+	private void decode(FrameHandler handler, CountDownLatch done) {
+		decoderThread = Thread.currentThread();
+		try {
+			while (true) {
+				long h = head.get();
+				if (h == tail.get()) {
+					if (finished) {
+						// A frame may have been put into the ring right before finishing
+						if (h == tail.get())
+							break;
+						continue;
+					}
+					decoderWaiting = true;
+					if (h == tail.get() && !finished)
+						LockSupport.park(this);
+					decoderWaiting = false;
+					continue;
+				}
+				Frame frame = frames[(int) h & mask];
+				try {
+					handler.handle(frame.buffer, frame.length, frame.headers);
+				} finally {
+					head.set(h + 1);
+					if (readerWaiting)
+						LockSupport.unpark(readerThread);
+				}
+			}
+		} finally {
+			decoderThread = null;
+			done.countDown();
+		}
+	}
+
+}
@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.MessageIssueException;
+import org.eclipse.lsp4j.jsonrpc.MessageIssueHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer.Headers;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
+
+/**
+ * A push-based decoder for the base protocol: chunks of bytes are passed to {@link #feed(ByteBuffer)} as they
+ * arrive, e.g. from a non-blocking channel, and every completed message is passed to the callback. Headers
+ * and content may be split arbitrarily across chunks, and a chunk may contain any number of messages.
+ * The decoder keeps the state of the current message between calls, so it must not be fed concurrently.
+ */
+public class MessageFrameDecoder implements MessageConstants {
+
+	private static final Logger LOG = Logger.getLogger(MessageFrameDecoder.class.getName());
+
+	private enum State {
+		HEADER, CONTENT, SKIP
+	}
+
+	private final MessageJsonHandler jsonHandler;
+	private final MessageConsumer callback;
+	private final MessageIssueHandler issueHandler;
+
+	private BufferPool bufferPool = StreamMessageProducer.DEFAULT_BUFFER_POOL;
+	private int maxMessageSize = Integer.MAX_VALUE;
+	private MessageCompression compression;
+
+	private State state = State.HEADER;
+	private final Headers headers = new Headers();
+
+	/**
+	 * The header section of the current message.
+	 */
+	private byte[] headerBuffer = new byte[256];
+	private int headerLength;
+	private int lineStart;
+	private boolean newLine;
+
+	/**
+	 * The content of the current message if it is split across chunks. In {@link State#SKIP}, the beginning
+	 * of the content that is used to identify the skipped message.
+	 */
+	private byte[] content;
+	private int contentPosition;
+	private int contentLimit;
+	private long skipRemaining;
+
+	public MessageFrameDecoder(MessageJsonHandler jsonHandler, MessageConsumer callback) {
+		this(jsonHandler, callback, null);
+	}
+
+	public MessageFrameDecoder(MessageJsonHandler jsonHandler, MessageConsumer callback, MessageIssueHandler issueHandler) {
+		this.jsonHandler = jsonHandler;
+		this.callback = callback;
+		this.issueHandler = issueHandler;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Set the pool from which the buffers for message content are obtained.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		if (bufferPool == null)
+			throw new NullPointerException("bufferPool");
+		this.bufferPool = bufferPool;
+	}
+
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/**
+	 * Set the maximal content length of incoming messages. Larger messages are skipped without allocating
+	 * a buffer for them, and reported to the issue handler.
+	 */
+	public void setMaxMessageSize(int maxMessageSize) {
+		if (maxMessageSize <= 0)
+			throw new IllegalArgumentException("maxMessageSize must be positive");
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	public MessageCompression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Enable compression: the {@code Accept-Encoding} header of incoming messages is passed to the given
+	 * instance, which must be shared with the message consumer of the same connection. Compressed content
+	 * is only accepted if compression is enabled, otherwise such messages are reported as errors.
+	 */
+	public void setCompression(MessageCompression compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Whether the decoder is between messages, i.e. all bytes fed so far belong to completed messages.
+	 */
+	public boolean isIdle() {
+		return state == State.HEADER && headerLength == 0;
+	}
+
+	/**
+	 * Discard the partially decoded message, if any.
+	 */
+	public void reset() {
+		if (state == State.CONTENT)
+			bufferPool.release(content);
+		content = null;
+		state = State.HEADER;
+		resetHeaders();
+	}
+
+	/**
+	 * Decode the given bytes.
+	 */
+	public void feed(byte[] bytes, int offset, int length) {
+		feed(ByteBuffer.wrap(bytes, offset, length));
+	}
+
+	/**
+	 * Decode all remaining bytes of the given buffer. The buffer is not retained, so it may be reused
+	 * by the caller after this method returns.
+	 */
+	public void feed(ByteBuffer chunk) {
+		while (chunk.hasRemaining()) {
+			switch (state) {
+			case HEADER:
+				readHeader(chunk);
+				break;
+			case CONTENT:
+				readContent(chunk);
+				break;
+			case SKIP:
+				skipContent(chunk);
+				break;
+			}
+		}
+	}
+
+	private void readHeader(ByteBuffer chunk) {
+		while (chunk.hasRemaining()) {
+			byte c = chunk.get();
+			if (c == '\n') {
+				if (newLine) {
+					// Two consecutive newlines have been read, which signals the start of the message content
+					if (headers.contentLength < 0) {
+						fireError(new IllegalStateException("Missing header " + CONTENT_LENGTH_HEADER
+								+ " in input \"" + new String(headerBuffer, 0, headerLength, StandardCharsets.US_ASCII) + "\""));
+						resetHeaders();
+					} else {
+						startContent(chunk);
+					}
+					return;
+				} else if (headerLength > lineStart) {
+					// A single newline ends a header line
+					try {
+						MessageFraming.parseHeader(headerBuffer, lineStart, headerLength, headers);
+					} catch (NumberFormatException e) {
+						fireError(e);
+					}
+					appendHeaderByte(c);
+				}
+				lineStart = headerLength;
+				newLine = true;
+			} else if (c != '\r') {
+				// Add the input to the current header line
+				appendHeaderByte(c);
+				newLine = false;
+			}
+		}
+	}
+
+	private void appendHeaderByte(byte c) {
+		if (headerLength == headerBuffer.length)
+			headerBuffer = Arrays.copyOf(headerBuffer, 2 * headerLength);
+		headerBuffer[headerLength++] = c;
+	}
+
+	private void resetHeaders() {
+		headerLength = 0;
+		lineStart = 0;
+		newLine = false;
+		headers.contentLength = -1;
+		headers.charset = StandardCharsets.UTF_8.name();
+		headers.contentEncoding = null;
+		headers.acceptEncoding = null;
+	}
+
+	private void startContent(ByteBuffer chunk) {
+		if (headers.acceptEncoding != null && compression != null)
+			compression.peerAccepts(headers.acceptEncoding);
+		int contentLength = headers.contentLength;
+		if (contentLength > maxMessageSize) {
+			content = new byte[Math.min(contentLength, MessageFraming.IDENTITY_PREFIX_LENGTH)];
+			contentPosition = 0;
+			skipRemaining = contentLength;
+			state = State.SKIP;
+		} else if (chunk.remaining() >= contentLength) {
+			// The whole content is available, so parse it without copying
+			ByteBuffer slice = chunk.slice();
+			slice.limit(contentLength);
+			chunk.position(chunk.position() + contentLength);
+			handleContent(slice);
+			resetHeaders();
+		} else {
+			content = bufferPool.acquire(contentLength);
+			contentPosition = 0;
+			contentLimit = contentLength;
+			state = State.CONTENT;
+		}
+	}
+
+	private void readContent(ByteBuffer chunk) {
+		int count = Math.min(chunk.remaining(), contentLimit - contentPosition);
+		chunk.get(content, contentPosition, count);
+		contentPosition += count;
+		if (contentPosition == contentLimit) {
+			byte[] buffer = content;
+			content = null;
+			state = State.HEADER;
+			try {
+				handleContent(ByteBuffer.wrap(buffer, 0, contentLimit));
+			} finally {
+				bufferPool.release(buffer);
+				resetHeaders();
+			}
+		}
+	}
+
+	private void skipContent(ByteBuffer chunk) {
+		if (contentPosition < content.length) {
+			int count = Math.min(chunk.remaining(), content.length - contentPosition);
+			chunk.get(content, contentPosition, count);
+			contentPosition += count;
+			skipRemaining -= count;
+		}
+		int count = (int) Math.min(chunk.remaining(), skipRemaining);
+		chunk.position(chunk.position() + count);
+		skipRemaining -= count;
+		if (skipRemaining == 0) {
+			Message message = MessageFraming.parseMessageIdentity(content, headers);
+			MessageIssue issue = MessageFraming.createSizeExceededIssue(maxMessageSize, headers.contentLength);
+			content = null;
+			state = State.HEADER;
+			resetHeaders();
+			if (issueHandler != null && message != null)
+				issueHandler.handle(message, Collections.singletonList(issue));
+			else
+				fireError(new MessageIssueException(message, issue));
+		}
+	}
+
+	/**
+	 * Parse the content of a message and notify the callback.
+	 */
+	private void handleContent(ByteBuffer content) {
+		byte[] decompressed = null;
+		try {
+			if (MessageCompression.isCompressed(headers)) {
+				if (compression == null) {
+					fireError(MessageCompression.createNotEnabledIssue(headers));
+					return;
+				}
+				content = compression.decompress(content, headers, maxMessageSize, bufferPool);
+				decompressed = content.array();
+			}
+			Message message = jsonHandler.parseMessage(content, MessageFraming.getCharset(headers));
+			callback.consume(message);
+		} catch (MessageIssueException exception) {
+			// An issue was found while parsing or validating the message
+			if (issueHandler != null)
+				issueHandler.handle(exception.getRpcMessage(), exception.getIssues());
+			else
+				fireError(exception);
+		} catch (Exception exception) {
+			// UnsupportedCharsetException can be thrown by Charset.forName
+			// JsonParseException can be thrown by jsonHandler
+			// We also catch arbitrary exceptions that are thrown by message consumers in order to keep decoding
+			fireError(exception);
+		} finally {
+			if (decompressed != null)
+				bufferPool.release(decompressed);
+		}
+	}
+
+	/**
+	 * Log an error.
+	 */
+	protected void fireError(Throwable error) {
+		String message = error.getMessage() != null ? error.getMessage() : "An error occurred while processing an incoming message.";
+		LOG.log(Level.SEVERE, message, error);
+	}
+
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer.Headers;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Helper methods for reading the header section and the content of incoming messages, shared by
+ * {@link StreamMessageProducer} and {@link MessageFrameDecoder}.
+ */
+final class MessageFraming {
+
+	/**
+	 * The number of content bytes examined to identify a message that exceeds the maximal size.
+	 */
+	static final int IDENTITY_PREFIX_LENGTH = 1024;
+
+	private static final String CHARSET_PREFIX = "charset=";
+
+	private MessageFraming() {}
+
+	/**
+	 * Parse a header attribute from the given bytes and set the corresponding data in the {@link Headers} fields.
+	 * Only the {@code Content-Length}, {@code Content-Type}, {@code Content-Encoding} and {@code Accept-Encoding}
+	 * headers are considered.
+	 * 
+	 * @throws NumberFormatException if the content length is not a valid number
+	 */
+	static void parseHeader(byte[] line, int start, int end, Headers headers) throws NumberFormatException {
+		int sepIndex = indexOf(line, start, end, ':');
+		if (sepIndex >= 0) {
+			if (equalsTrimmed(line, start, sepIndex, MessageConstants.CONTENT_LENGTH_HEADER)) {
+				headers.contentLength = parseInt(line, sepIndex + 1, end);
+			} else if (equalsTrimmed(line, start, sepIndex, MessageConstants.CONTENT_TYPE_HEADER)) {
+				int charsetIndex = indexOf(line, start, end, CHARSET_PREFIX);
+				if (charsetIndex >= 0) {
+					int valueStart = charsetIndex + CHARSET_PREFIX.length();
+					if (equalsTrimmedIgnoreCase(line, valueStart, end, StandardCharsets.UTF_8.name()))
+						headers.charset = StandardCharsets.UTF_8.name();
+					else
+						headers.charset = new String(line, valueStart, end - valueStart, StandardCharsets.US_ASCII).trim();
+				}
+			} else if (equalsTrimmed(line, start, sepIndex, MessageConstants.CONTENT_ENCODING_HEADER)) {
+				headers.contentEncoding = new String(line, sepIndex + 1, end - sepIndex - 1, StandardCharsets.US_ASCII).trim();
+			} else if (equalsTrimmed(line, start, sepIndex, MessageConstants.ACCEPT_ENCODING_HEADER)) {
+				headers.acceptEncoding = new String(line, sepIndex + 1, end - sepIndex - 1, StandardCharsets.US_ASCII).trim();
+			}
+		}
+	}
+
+	private static int indexOf(byte[] bytes, int start, int end, char c) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == c)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] bytes, int start, int end, String s) {
+		int last = end - s.length();
+		outer: for (int i = start; i <= last; i++) {
+			for (int j = 0; j < s.length(); j++) {
+				if (bytes[i + j] != s.charAt(j))
+					continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	private static boolean equalsTrimmed(byte[] bytes, int start, int end, String s) {
+		while (start < end && bytes[start] <= ' ') start++;
+		while (end > start && bytes[end - 1] <= ' ') end--;
+		if (end - start != s.length())
+			return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (bytes[start + i] != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean equalsTrimmedIgnoreCase(byte[] bytes, int start, int end, String s) {
+		while (start < end && bytes[start] <= ' ') start++;
+		while (end > start && bytes[end - 1] <= ' ') end--;
+		if (end - start != s.length())
+			return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.toLowerCase((char) bytes[start + i]) != Character.toLowerCase(s.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parse a decimal integer with the same rules as {@link Integer#parseInt(String)}, ignoring leading and
+	 * trailing whitespace.
+	 */
+	private static int parseInt(byte[] bytes, int start, int end) throws NumberFormatException {
+		while (start < end && bytes[start] <= ' ') start++;
+		while (end > start && bytes[end - 1] <= ' ') end--;
+		int i = start;
+		boolean negative = false;
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+		if (i == end)
+			throw numberFormatException(bytes, start, end);
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9)
+				throw numberFormatException(bytes, start, end);
+			result = 10 * result + digit;
+			if (result > (long) Integer.MAX_VALUE + 1)
+				throw numberFormatException(bytes, start, end);
+		}
+		if (negative)
+			result = -result;
+		if (result > Integer.MAX_VALUE)
+			throw numberFormatException(bytes, start, end);
+		return (int) result;
+	}
+
+	private static NumberFormatException numberFormatException(byte[] bytes, int start, int end) {
+		return new NumberFormatException("For input string: \"" + new String(bytes, start, end - start, StandardCharsets.US_ASCII) + "\"");
+	}
+
+	/**
+	 * Read the {@code id} and {@code method} properties from a possibly truncated JSON-RPC message.
+	 */
+	static Message parseMessageIdentity(byte[] content, Headers headers) {
+		Either<String, Number> id = null;
+		String method = null;
+		try {
+			JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(content), getCharset(headers)));
+			reader.beginObject();
+			while (reader.hasNext() && (id == null || method == null)) {
+				String name = reader.nextName();
+				if ("id".equals(name) && reader.peek() == JsonToken.NUMBER)
+					id = Either.forRight(reader.nextInt());
+				else if ("id".equals(name) && reader.peek() == JsonToken.STRING)
+					id = Either.forLeft(reader.nextString());
+				else if ("method".equals(name) && reader.peek() == JsonToken.STRING)
+					method = reader.nextString();
+				else
+					reader.skipValue();
+			}
+		} catch (IOException | RuntimeException exception) {
+			// The content is truncated or malformed, so use what we have found so far
+		}
+		if (id != null && method != null) {
+			RequestMessage message = new RequestMessage();
+			message.setRawId(id);
+			message.setMethod(method);
+			return message;
+		} else if (method != null) {
+			NotificationMessage message = new NotificationMessage();
+			message.setMethod(method);
+			return message;
+		} else if (id != null) {
+			ResponseMessage message = new ResponseMessage();
+			message.setRawId(id);
+			return message;
+		}
+		return null;
+	}
+
+	/**
+	 * Resolve the charset given in the headers, avoiding the lookup for the default UTF-8 encoding.
+	 */
+	static Charset getCharset(Headers headers) {
+		if (StandardCharsets.UTF_8.name().equals(headers.charset))
+			return StandardCharsets.UTF_8;
+		return Charset.forName(headers.charset);
+	}
+
+	/**
+	 * Create the issue reported for a message that exceeds the maximal size.
+	 */
+	static MessageIssue createSizeExceededIssue(int maxMessageSize, int contentLength) {
+		return new MessageIssue("Message exceeds the maximal size of " + maxMessageSize + " bytes ("
+				+ MessageConstants.CONTENT_LENGTH_HEADER + ": " + contentLength + ").", ResponseErrorCode.InvalidRequest.getValue());
+	}
+
+}
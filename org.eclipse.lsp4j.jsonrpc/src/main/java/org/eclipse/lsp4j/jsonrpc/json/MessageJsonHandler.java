@@ -7,21 +7,23 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.json;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Map;
 import java.util.function.Consumer;
 
 import org.eclipse.lsp4j.jsonrpc.MessageIssueException;
-import org.eclipse.lsp4j.jsonrpc.json.adapters.CollectionTypeAdapter;
-import org.eclipse.lsp4j.jsonrpc.json.adapters.EitherTypeAdapter;
-import org.eclipse.lsp4j.jsonrpc.json.adapters.EnumTypeAdapter;
 import org.eclipse.lsp4j.jsonrpc.json.adapters.MessageTypeAdapter;
-import org.eclipse.lsp4j.jsonrpc.json.adapters.ThrowableTypeAdapter;
 import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
@@ -67,15 +69,30 @@ public class MessageJsonHandler {
 		this.gson = gsonBuilder.create();
 	}
 	
+	/**
+	 * @param supportedMethods - a map used to resolve RPC methods in {@link #getJsonRpcMethod(String)}
+	 * @param registry - the adapters of the protocol types, which are shared with the handlers of other connections
+	 */
+	public MessageJsonHandler(Map<String, JsonRpcMethod> supportedMethods, TypeAdapterRegistry registry) {
+		this.supportedMethods = supportedMethods;
+		this.gson = getGsonBuilder(registry).create();
+	}
+	
 	/**
 	 * Create a {@link GsonBuilder} with default settings for parsing JSON-RPC messages.
 	 */
 	public GsonBuilder getDefaultGsonBuilder() {
+		return TypeAdapterRegistry.createGsonBuilder()
+			.registerTypeAdapterFactory(new MessageTypeAdapter.Factory(this));
+	}
+	
+	/**
+	 * Create a {@link GsonBuilder} that takes the adapters of all types except messages from the given registry.
+	 * Only the adapter of messages, which depends on the methods of this handler, is created per handler.
+	 */
+	public GsonBuilder getGsonBuilder(TypeAdapterRegistry registry) {
 		return new GsonBuilder()
-			.registerTypeAdapterFactory(new CollectionTypeAdapter.Factory())
-			.registerTypeAdapterFactory(new ThrowableTypeAdapter.Factory())
-			.registerTypeAdapterFactory(new EitherTypeAdapter.Factory())
-			.registerTypeAdapterFactory(new EnumTypeAdapter.Factory())
+			.registerTypeAdapterFactory(registry)
 			.registerTypeAdapterFactory(new MessageTypeAdapter.Factory(this));
 	}
 	
@@ -108,6 +125,34 @@ public class MessageJsonHandler {
 		return parseMessage(reader);
 	}
 	
+	/**
+	 * Parse a message from the remaining bytes of the given buffer, which are decoded with UTF-8.
+	 */
+	public Message parseMessage(ByteBuffer input) throws JsonParseException {
+		return parseMessage(input, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Parse a message from the remaining bytes of the given buffer. The bytes are decoded incrementally
+	 * while the JSON content is read, so no intermediate string is created for the whole message.
+	 */
+	public Message parseMessage(ByteBuffer input, Charset charset) throws JsonParseException {
+		InputStream stream;
+		if (input.hasArray())
+			stream = new ByteArrayInputStream(input.array(), input.arrayOffset() + input.position(), input.remaining());
+		else
+			stream = new ByteBufferInputStream(input.slice());
+		return parseMessage(stream, charset);
+	}
+	
+	/**
+	 * Parse a message from the given input stream, which must contain exactly one JSON document. The bytes are
+	 * decoded incrementally while the JSON content is read.
+	 */
+	public Message parseMessage(InputStream input, Charset charset) throws JsonParseException {
+		return parseMessage(new InputStreamReader(input, charset));
+	}
+	
 	public Message parseMessage(Reader input) throws JsonParseException {
 		JsonReader jsonReader = new JsonReader(input);
 		Message message = gson.fromJson(jsonReader, Message.class);
@@ -155,4 +200,40 @@ public class MessageJsonHandler {
 		return toStringInstance.gson.toJson(object);
 	}
 	
+	/**
+	 * Input stream view of a byte buffer without a backing array.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		
+		private final ByteBuffer buffer;
+		
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public int read() {
+			if (!buffer.hasRemaining())
+				return -1;
+			return buffer.get() & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining())
+				return -1;
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+		
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+		
+	}
+	
 }
@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A growable byte buffer into which the content of an outgoing message is serialized. Space is reserved
+ * in front of the content so the header can be prepended without copying the content.
+ */
+class MessageOutputBuffer extends OutputStream {
+
+	/**
+	 * Enough for {@code Content-Length} and {@code Content-Type} headers with a charset, or for
+	 * {@code Content-Length} and the compression headers.
+	 */
+	static final int HEADER_SPACE = 128;
+
+	private static final int INITIAL_SIZE = 8192;
+	private static final int MAX_RETAINED_SIZE = 1 << 20;
+
+	/**
+	 * Magic number, deflate method, no flags, no modification time, no extra flags, unknown OS.
+	 */
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+	private static final int GZIP_TRAILER_LENGTH = 8;
+
+	private static final ThreadLocal<MessageOutputBuffer> THREAD_BUFFER = new ThreadLocal<MessageOutputBuffer>() {
+		@Override
+		protected MessageOutputBuffer initialValue() {
+			return new MessageOutputBuffer();
+		}
+	};
+
+	/**
+	 * Obtain the buffer of the current thread. If that buffer is already in use, e.g. because a message is
+	 * serialized while serializing another one, a new buffer is returned. The buffer must be released with
+	 * {@link #release()} after use.
+	 */
+	static MessageOutputBuffer acquire() {
+		MessageOutputBuffer buffer = THREAD_BUFFER.get();
+		if (buffer.inUse) {
+			buffer = new MessageOutputBuffer();
+			buffer.temporary = true;
+		}
+		buffer.inUse = true;
+		buffer.reset();
+		return buffer;
+	}
+
+	private byte[] bytes = new byte[INITIAL_SIZE];
+	private int start;
+	private int end;
+	private boolean inUse;
+	private boolean temporary;
+
+	/**
+	 * The array that receives the compressed content. It is swapped with {@link #bytes} after compression,
+	 * so both arrays are reused for subsequent messages.
+	 */
+	private byte[] spare;
+	private Deflater deflater;
+	private boolean deflaterNowrap;
+	private final CRC32 crc = new CRC32();
+
+	private final Utf8Writer utf8Writer = new Utf8Writer();
+
+	/**
+	 * Discard the content and allow the buffer to be used for the next message. Buffers that have
+	 * grown very large are not retained.
+	 */
+	void release() {
+		inUse = false;
+		if (bytes.length > MAX_RETAINED_SIZE)
+			bytes = new byte[INITIAL_SIZE];
+		if (spare != null && spare.length > MAX_RETAINED_SIZE)
+			spare = null;
+		if (temporary && deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+	}
+
+	void reset() {
+		start = HEADER_SPACE;
+		end = HEADER_SPACE;
+		utf8Writer.highSurrogate = 0;
+	}
+
+	/**
+	 * Return a writer that encodes characters into this buffer with the given encoding.
+	 */
+	Writer getWriter(String encoding) throws UnsupportedEncodingException {
+		if (StandardCharsets.UTF_8.name().equals(encoding))
+			return utf8Writer;
+		return new OutputStreamWriter(this, encoding);
+	}
+
+	/**
+	 * The number of content bytes written since the last reset.
+	 */
+	int getContentLength() {
+		return end - HEADER_SPACE;
+	}
+
+	/**
+	 * Put the given ASCII header in front of the content.
+	 *
+	 * @return {@code false} if the header does not fit into the reserved space
+	 */
+	boolean prependHeader(String header) {
+		int length = header.length();
+		if (length > HEADER_SPACE)
+			return false;
+		start = HEADER_SPACE - length;
+		for (int i = 0; i < length; i++) {
+			bytes[start + i] = (byte) header.charAt(i);
+		}
+		return true;
+	}
+
+	/**
+	 * Replace the content with its compressed form in the given encoding, {@link MessageCompression#GZIP}
+	 * or {@link MessageCompression#DEFLATE}. The deflater writes directly into a second array of this
+	 * buffer, which then becomes the content array, so the content is not copied between buffers.
+	 */
+	void compress(String encoding) {
+		boolean gzip = MessageCompression.GZIP.equals(encoding);
+		Deflater deflater = getDeflater(gzip);
+		int length = end - HEADER_SPACE;
+		byte[] target = spare;
+		int minLength = HEADER_SPACE + GZIP_HEADER.length + length / 4 + GZIP_TRAILER_LENGTH;
+		if (target == null || target.length < minLength)
+			target = new byte[Math.max(minLength, INITIAL_SIZE)];
+		int position = HEADER_SPACE;
+		if (gzip) {
+			System.arraycopy(GZIP_HEADER, 0, target, position, GZIP_HEADER.length);
+			position += GZIP_HEADER.length;
+			crc.reset();
+			crc.update(bytes, HEADER_SPACE, length);
+		}
+		deflater.setInput(bytes, HEADER_SPACE, length);
+		deflater.finish();
+		while (!deflater.finished()) {
+			if (position == target.length)
+				target = Arrays.copyOf(target, target.length << 1);
+			position += deflater.deflate(target, position, target.length - position);
+		}
+		deflater.reset();
+		if (gzip) {
+			if (position + GZIP_TRAILER_LENGTH > target.length)
+				target = Arrays.copyOf(target, position + GZIP_TRAILER_LENGTH);
+			position = writeIntLE(target, position, (int) crc.getValue());
+			position = writeIntLE(target, position, length);
+		}
+		spare = bytes;
+		bytes = target;
+		start = HEADER_SPACE;
+		end = position;
+	}
+
+	private Deflater getDeflater(boolean nowrap) {
+		if (deflater != null && deflaterNowrap != nowrap) {
+			deflater.end();
+			deflater = null;
+		}
+		if (deflater == null) {
+			// The gzip header and trailer are written separately, so the deflater produces raw data for gzip
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+			deflaterNowrap = nowrap;
+		}
+		return deflater;
+	}
+
+	private static int writeIntLE(byte[] target, int position, int value) {
+		target[position++] = (byte) value;
+		target[position++] = (byte) (value >> 8);
+		target[position++] = (byte) (value >> 16);
+		target[position++] = (byte) (value >> 24);
+		return position;
+	}
+
+	/**
+	 * Write the prepended header and the content to the given stream.
+	 */
+	void writeTo(OutputStream output) throws IOException {
+		output.write(bytes, start, end - start);
+	}
+
+	/**
+	 * Copy the header and the content into a new array.
+	 * 
+	 * @param separateHeader - a header that could not be prepended, or {@code null}
+	 */
+	byte[] toByteArray(String separateHeader) {
+		int headerLength = separateHeader != null ? separateHeader.length() : 0;
+		byte[] result = new byte[headerLength + end - start];
+		for (int i = 0; i < headerLength; i++) {
+			result[i] = (byte) separateHeader.charAt(i);
+		}
+		System.arraycopy(bytes, start, result, headerLength, end - start);
+		return result;
+	}
+
+	/**
+	 * Wrap the prepended header and the content in a byte buffer.
+	 */
+	ByteBuffer toByteBuffer() {
+		return ByteBuffer.wrap(bytes, start, end - start);
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(1);
+		bytes[end++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(len);
+		System.arraycopy(b, off, bytes, end, len);
+		end += len;
+	}
+
+	private void ensureCapacity(int count) {
+		if (end + count > bytes.length) {
+			int newLength = Math.max(bytes.length << 1, end + count);
+			if (newLength < 0)
+				throw new OutOfMemoryError("Message too large");
+			bytes = Arrays.copyOf(bytes, newLength);
+		}
+	}
+
+	/**
+	 * Encodes characters as UTF-8 directly into the enclosing buffer. Unpaired surrogates are replaced
+	 * with {@code '?'}, like {@link String#getBytes(java.nio.charset.Charset)} does.
+	 */
+	private class Utf8Writer extends Writer {
+
+		char highSurrogate;
+
+		@Override
+		public void write(int c) {
+			encode((char) c);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			ensureCapacity(len);
+			for (int i = off; i < off + len; i++) {
+				char c = cbuf[i];
+				if (c < 0x80 && highSurrogate == 0 && end < bytes.length)
+					bytes[end++] = (byte) c;
+				else
+					encode(c);
+			}
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			ensureCapacity(len);
+			for (int i = off; i < off + len; i++) {
+				char c = str.charAt(i);
+				if (c < 0x80 && highSurrogate == 0 && end < bytes.length)
+					bytes[end++] = (byte) c;
+				else
+					encode(c);
+			}
+		}
+
+		private void encode(char c) {
+			if (highSurrogate != 0) {
+				char high = highSurrogate;
+				highSurrogate = 0;
+				if (Character.isLowSurrogate(c)) {
+					int codePoint = Character.toCodePoint(high, c);
+					ensureCapacity(4);
+					bytes[end++] = (byte) (0xf0 | (codePoint >> 18));
+					bytes[end++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+					bytes[end++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+					bytes[end++] = (byte) (0x80 | (codePoint & 0x3f));
+					return;
+				}
+				MessageOutputBuffer.this.write('?');
+			}
+			if (c < 0x80) {
+				MessageOutputBuffer.this.write(c);
+			} else if (c < 0x800) {
+				ensureCapacity(2);
+				bytes[end++] = (byte) (0xc0 | (c >> 6));
+				bytes[end++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c)) {
+				highSurrogate = c;
+			} else if (Character.isLowSurrogate(c)) {
+				MessageOutputBuffer.this.write('?');
+			} else {
+				ensureCapacity(3);
+				bytes[end++] = (byte) (0xe0 | (c >> 12));
+				bytes[end++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				bytes[end++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+
+		@Override
+		public void flush() {
+			if (highSurrogate != 0) {
+				highSurrogate = 0;
+				MessageOutputBuffer.this.write('?');
+			}
+		}
+
+		@Override
+		public void close() {
+			flush();
+		}
+
+	}
+
+}
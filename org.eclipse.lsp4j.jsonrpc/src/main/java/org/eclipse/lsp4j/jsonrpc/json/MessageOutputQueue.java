@@ -0,0 +1,461 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue of serialized messages waiting to be written by an {@link AsyncStreamMessageConsumer}.
+ * The queue is limited both in the number of messages and in the number of bytes. What happens when
+ * a message does not fit is determined by the {@link OverflowPolicy}; every such situation is reported
+ * to the saturation listener. The queue also collects statistics about the batches written so far.
+ * An instance must not be shared between multiple consumers.
+ */
+public class MessageOutputQueue {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final long DEFAULT_BYTE_CAPACITY = 64L << 20;
+
+	/**
+	 * Notifications that are dropped or coalesced by default when the queue is full.
+	 */
+	public static final Set<String> DEFAULT_LOW_PRIORITY_METHODS = Collections.unmodifiableSet(
+			new HashSet<>(Arrays.asList("window/logMessage", "telemetry/event")));
+
+	/**
+	 * The behavior when a message does not fit into the queue.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Wait until the writer has made enough room.
+		 */
+		BLOCK,
+		/**
+		 * Reject the message immediately with an {@link OutputQueueFullException}.
+		 */
+		FAIL,
+		/**
+		 * Drop low-priority notifications. Other messages evict queued low-priority notifications and
+		 * wait if that does not make enough room.
+		 */
+		DROP_LOW_PRIORITY,
+		/**
+		 * Like {@link #DROP_LOW_PRIORITY}, but a low-priority notification replaces queued notifications
+		 * of the same method instead of being dropped, so the latest one is still sent. If that does not make
+		 * enough room, older low-priority notifications of other methods are evicted first, and the new
+		 * notification is only dropped if the queue is still full.
+		 */
+		COALESCE_LOW_PRIORITY
+	}
+
+	/**
+	 * Describes a situation in which a message did not fit into the queue.
+	 */
+	public static class SaturationEvent {
+
+		public enum Kind {
+			/** The sender had to wait for the writer. */
+			BLOCKED,
+			/** The message was rejected. */
+			REJECTED,
+			/** The message was dropped, either when it was sent or while it was queued. */
+			DROPPED,
+			/** Queued notifications were replaced by a newer notification of the same method. */
+			COALESCED
+		}
+
+		private final Kind kind;
+		private final String method;
+		private final int queueDepth;
+		private final long queuedBytes;
+
+		public SaturationEvent(Kind kind, String method, int queueDepth, long queuedBytes) {
+			this.kind = kind;
+			this.method = method;
+			this.queueDepth = queueDepth;
+			this.queuedBytes = queuedBytes;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * The method of the affected notification, or {@code null} for requests and responses.
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * The number of queued messages at the time of the event.
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * The number of queued bytes at the time of the event.
+		 */
+		public long getQueuedBytes() {
+			return queuedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return kind + " " + (method != null ? method : "message") + " (" + queueDepth + " messages, "
+					+ queuedBytes + " bytes queued)";
+		}
+
+	}
+
+	private static class Frame {
+		final byte[] bytes;
+		final String method;
+		final boolean lowPriority;
+
+		Frame(byte[] bytes, String method, boolean lowPriority) {
+			this.bytes = bytes;
+			this.method = method;
+			this.lowPriority = lowPriority;
+		}
+	}
+
+	private final int capacity;
+	private final long byteCapacity;
+	private final OverflowPolicy overflowPolicy;
+	private Set<String> lowPriorityMethods = DEFAULT_LOW_PRIORITY_METHODS;
+	private volatile Consumer<SaturationEvent> saturationListener;
+
+	private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+	private long queuedBytes;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong messageCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private volatile int maxBatchSize;
+
+	public MessageOutputQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity - the maximal number of messages waiting to be written
+	 */
+	public MessageOutputQueue(int capacity) {
+		this(capacity, DEFAULT_BYTE_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * @param capacity - the maximal number of messages waiting to be written
+	 * @param byteCapacity - the maximal number of bytes waiting to be written; a single larger message
+	 *            is accepted when the queue is empty
+	 * @param overflowPolicy - the behavior when a message does not fit into the queue
+	 */
+	public MessageOutputQueue(int capacity, long byteCapacity, OverflowPolicy overflowPolicy) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("The capacity must be positive.");
+		if (byteCapacity <= 0)
+			throw new IllegalArgumentException("The byte capacity must be positive.");
+		if (overflowPolicy == null)
+			throw new NullPointerException("overflowPolicy");
+		this.capacity = capacity;
+		this.byteCapacity = byteCapacity;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getByteCapacity() {
+		return byteCapacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public Set<String> getLowPriorityMethods() {
+		return lowPriorityMethods;
+	}
+
+	/**
+	 * Set the notification methods that may be dropped or coalesced when the queue is full.
+	 */
+	public void setLowPriorityMethods(Set<String> lowPriorityMethods) {
+		this.lowPriorityMethods = new HashSet<>(lowPriorityMethods);
+	}
+
+	/**
+	 * Set a listener that is notified whenever a message does not fit into the queue. The listener is
+	 * called on the sending thread and must not send messages itself.
+	 */
+	public void setSaturationListener(Consumer<SaturationEvent> saturationListener) {
+		this.saturationListener = saturationListener;
+	}
+
+	/**
+	 * The number of messages currently waiting to be written.
+	 */
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return frames.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The number of bytes currently waiting to be written.
+	 */
+	public long getQueuedBytes() {
+		lock.lock();
+		try {
+			return queuedBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The number of batches written so far. All messages of a batch are written back to back
+	 * and flushed once.
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/**
+	 * The number of messages written so far.
+	 */
+	public long getMessageCount() {
+		return messageCount.get();
+	}
+
+	/**
+	 * The largest number of messages written in a single batch.
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * The average number of messages written in a single batch.
+	 */
+	public double getAverageBatchSize() {
+		long batches = batchCount.get();
+		return batches == 0 ? 0 : (double) messageCount.get() / batches;
+	}
+
+	/**
+	 * The number of messages that have been dropped or replaced because the queue was full.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * The number of messages that have been rejected because the queue was full.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Append a frame to the queue, applying the overflow policy if it does not fit.
+	 * 
+	 * @param frame - the serialized message including its header
+	 * @param notificationMethod - the method if the message is a notification, otherwise {@code null}
+	 * @throws OutputQueueFullException if the message is rejected
+	 */
+	void put(byte[] frame, String notificationMethod) throws InterruptedException, OutputQueueFullException {
+		boolean lowPriority = notificationMethod != null && overflowPolicy != OverflowPolicy.BLOCK
+				&& overflowPolicy != OverflowPolicy.FAIL && lowPriorityMethods.contains(notificationMethod);
+		List<SaturationEvent> events = null;
+		lock.lockInterruptibly();
+		try {
+			if (!fits(frame.length)) {
+				events = new ArrayList<>(1);
+				if (!makeRoom(frame.length, notificationMethod, lowPriority, events))
+					return;
+			}
+			frames.addLast(new Frame(frame, notificationMethod, lowPriority));
+			queuedBytes += frame.length;
+		} finally {
+			lock.unlock();
+			if (events != null)
+				fireEvents(events);
+		}
+	}
+
+	/**
+	 * Apply the overflow policy to a frame of the given length that does not fit into the queue. Must be called
+	 * while holding the lock.
+	 * 
+	 * @return {@code true} if the frame fits now, {@code false} if it is dropped
+	 */
+	private boolean makeRoom(int length, String notificationMethod, boolean lowPriority, List<SaturationEvent> events)
+			throws InterruptedException, OutputQueueFullException {
+		if (overflowPolicy == OverflowPolicy.FAIL) {
+			rejectedCount.incrementAndGet();
+			events.add(event(SaturationEvent.Kind.REJECTED, notificationMethod));
+			throw new OutputQueueFullException("The outgoing message queue is full (" + frames.size()
+					+ " messages, " + queuedBytes + " bytes).");
+		}
+		if (lowPriority && overflowPolicy == OverflowPolicy.COALESCE_LOW_PRIORITY) {
+			if (removeFrames(notificationMethod) > 0) {
+				events.add(event(SaturationEvent.Kind.COALESCED, notificationMethod));
+				if (fits(length))
+					return true;
+			}
+			// The newest notification is only dropped if no older low-priority notification can make room for it
+			evictLowPriorityFrames(length, events);
+			if (fits(length))
+				return true;
+		}
+		if (lowPriority) {
+			droppedCount.incrementAndGet();
+			events.add(event(SaturationEvent.Kind.DROPPED, notificationMethod));
+			return false;
+		}
+		if (overflowPolicy != OverflowPolicy.BLOCK) {
+			evictLowPriorityFrames(length, events);
+			if (fits(length))
+				return true;
+		}
+		events.add(event(SaturationEvent.Kind.BLOCKED, notificationMethod));
+		while (!fits(length)) {
+			notFull.await();
+		}
+		return true;
+	}
+
+	private boolean fits(int length) {
+		if (frames.isEmpty())
+			return true;
+		return frames.size() < capacity && queuedBytes + length <= byteCapacity;
+	}
+
+	private SaturationEvent event(SaturationEvent.Kind kind, String method) {
+		return new SaturationEvent(kind, method, frames.size(), queuedBytes);
+	}
+
+	private void fireEvents(List<SaturationEvent> events) {
+		Consumer<SaturationEvent> listener = saturationListener;
+		if (listener != null) {
+			for (SaturationEvent event : events) {
+				listener.accept(event);
+			}
+		}
+	}
+
+	/**
+	 * Remove queued notifications of the given method. Every removed notification is counted as dropped.
+	 */
+	private int removeFrames(String method) {
+		int removed = 0;
+		Iterator<Frame> iterator = frames.iterator();
+		while (iterator.hasNext()) {
+			Frame queued = iterator.next();
+			if (queued.lowPriority && method.equals(queued.method)) {
+				iterator.remove();
+				queuedBytes -= queued.bytes.length;
+				removed++;
+			}
+		}
+		droppedCount.addAndGet(removed);
+		return removed;
+	}
+
+	/**
+	 * Remove queued low-priority notifications, oldest first, until a frame of the given length fits.
+	 */
+	private void evictLowPriorityFrames(int length, List<SaturationEvent> events) {
+		Iterator<Frame> iterator = frames.iterator();
+		while (iterator.hasNext() && !fits(length)) {
+			Frame queued = iterator.next();
+			if (queued.lowPriority) {
+				iterator.remove();
+				queuedBytes -= queued.bytes.length;
+				droppedCount.incrementAndGet();
+				events.add(event(SaturationEvent.Kind.DROPPED, queued.method));
+			}
+		}
+	}
+
+	/**
+	 * Remove all queued frames and add them to the given collection.
+	 * 
+	 * @return the number of frames removed
+	 */
+	int drainTo(Collection<byte[]> batch) {
+		lock.lock();
+		try {
+			int size = frames.size();
+			if (size > 0) {
+				for (Frame frame : frames) {
+					batch.add(frame.bytes);
+				}
+				frames.clear();
+				queuedBytes = 0;
+				notFull.signalAll();
+			}
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean isEmpty() {
+		lock.lock();
+		try {
+			return frames.isEmpty();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Discard all queued frames, e.g. after the output has failed.
+	 */
+	void clear() {
+		lock.lock();
+		try {
+			frames.clear();
+			queuedBytes = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void recordBatch(int size) {
+		batchCount.incrementAndGet();
+		messageCount.addAndGet(size);
+		if (size > maxBatchSize)
+			maxBatchSize = size;
+	}
+
+}
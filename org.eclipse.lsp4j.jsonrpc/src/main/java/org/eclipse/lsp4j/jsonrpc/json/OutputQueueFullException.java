@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an outgoing message is rejected because the {@link MessageOutputQueue} is full.
+ * It is reported to the sender wrapped in a {@link org.eclipse.lsp4j.jsonrpc.JsonRpcException}.
+ */
+public class OutputQueueFullException extends IOException {
+
+	private static final long serialVersionUID = 2916407467262150375L;
+
+	public OutputQueueFullException(String message) {
+		super(message);
+	}
+
+}
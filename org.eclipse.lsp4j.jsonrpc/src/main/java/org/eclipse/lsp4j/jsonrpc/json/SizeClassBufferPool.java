@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A buffer pool that rounds requested lengths up to powers of two and retains a few released buffers
+ * of each size class. Buffers are cached per thread, so a buffer is only reused by the thread that released
+ * it and the cache lock is uncontended. The cache of a thread is cleared by a shared daemon thread when the
+ * thread has not used the pool for a given idle time, so idle threads do not keep their buffers. Requests that
+ * exceed the maximal pooled length are served with fresh arrays.
+ */
+public class SizeClassBufferPool implements BufferPool {
+	
+	private static final int MIN_SIZE_SHIFT = 10;
+	
+	public static final int DEFAULT_MAX_POOLED_LENGTH = 1 << 20;
+	public static final int DEFAULT_BUFFERS_PER_CLASS = 2;
+	public static final long DEFAULT_IDLE_TIMEOUT = 60;
+	
+	private final int maxPooledLength;
+	private final int buffersPerClass;
+	private final long idleTimeoutNanos;
+	
+	private final ThreadLocal<Cache> caches = new ThreadLocal<Cache>() {
+		@Override
+		protected Cache initialValue() {
+			return new Cache(sizeClass(maxPooledLength) + 1, buffersPerClass, idleTimeoutNanos);
+		}
+	};
+	
+	/**
+	 * Buffers retained for a single thread, one stack per size class. The cache is accessed by its thread and
+	 * by the sweeper, so all access is synchronized on the cache.
+	 */
+	private static class Cache {
+		final byte[][][] buffers;
+		final int[] counts;
+		final long idleTimeoutNanos;
+		long lastUse;
+		/** Whether a sweep of this cache is scheduled, which is the case while it retains buffers. */
+		boolean sweepScheduled;
+		
+		Cache(int sizeClasses, int buffersPerClass, long idleTimeoutNanos) {
+			buffers = new byte[sizeClasses][buffersPerClass][];
+			counts = new int[sizeClasses];
+			this.idleTimeoutNanos = idleTimeoutNanos;
+		}
+		
+		void clear() {
+			for (int i = 0; i < buffers.length; i++) {
+				for (int j = 0; j < counts[i]; j++) {
+					buffers[i][j] = null;
+				}
+				counts[i] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Clears caches that have not been used for their idle time. The cache is only weakly referenced, so the
+	 * cache of a terminated thread can be collected before it is swept.
+	 */
+	private static class Sweep implements Runnable {
+		final WeakReference<Cache> cacheReference;
+		
+		Sweep(Cache cache) {
+			this.cacheReference = new WeakReference<>(cache);
+		}
+		
+		@Override
+		public void run() {
+			Cache cache = cacheReference.get();
+			if (cache == null)
+				return;
+			synchronized (cache) {
+				long idle = System.nanoTime() - cache.lastUse;
+				if (idle >= cache.idleTimeoutNanos) {
+					cache.clear();
+					cache.sweepScheduled = false;
+				} else {
+					Sweeper.INSTANCE.schedule(this, cache.idleTimeoutNanos - idle, TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+	}
+	
+	private static class Sweeper {
+		static final ScheduledThreadPoolExecutor INSTANCE;
+		static {
+			INSTANCE = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, "lsp4j-buffer-pool-sweeper");
+				thread.setDaemon(true);
+				return thread;
+			});
+			// The thread terminates while no cache retains buffers
+			INSTANCE.setKeepAliveTime(10, TimeUnit.SECONDS);
+			INSTANCE.allowCoreThreadTimeOut(true);
+		}
+	}
+	
+	public SizeClassBufferPool() {
+		this(DEFAULT_MAX_POOLED_LENGTH, DEFAULT_BUFFERS_PER_CLASS, DEFAULT_IDLE_TIMEOUT, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * @param maxPooledLength - buffers longer than this are not retained; rounded down to a power of two
+	 * @param buffersPerClass - the maximal number of retained buffers per size class and thread
+	 * @param idleTimeout - the time after which the buffers retained for an inactive thread are dropped, must be
+	 *     positive
+	 * @param unit - the time unit of {@code idleTimeout}
+	 */
+	public SizeClassBufferPool(int maxPooledLength, int buffersPerClass, long idleTimeout, TimeUnit unit) {
+		if (maxPooledLength < 1 << MIN_SIZE_SHIFT)
+			throw new IllegalArgumentException("maxPooledLength must be at least " + (1 << MIN_SIZE_SHIFT));
+		if (buffersPerClass < 0)
+			throw new IllegalArgumentException("buffersPerClass must not be negative");
+		if (idleTimeout <= 0)
+			throw new IllegalArgumentException("idleTimeout must be positive");
+		this.maxPooledLength = Integer.highestOneBit(maxPooledLength);
+		this.buffersPerClass = buffersPerClass;
+		this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+	}
+	
+	@Override
+	public byte[] acquire(int minLength) {
+		if (minLength > maxPooledLength)
+			return new byte[minLength];
+		int sizeClass = sizeClass(minLength);
+		Cache cache = caches.get();
+		synchronized (cache) {
+			cache.lastUse = System.nanoTime();
+			int count = cache.counts[sizeClass];
+			if (count > 0) {
+				byte[] result = cache.buffers[sizeClass][--count];
+				cache.buffers[sizeClass][count] = null;
+				cache.counts[sizeClass] = count;
+				return result;
+			}
+		}
+		return new byte[1 << (sizeClass + MIN_SIZE_SHIFT)];
+	}
+	
+	@Override
+	public void release(byte[] buffer) {
+		int length = buffer.length;
+		if (length > maxPooledLength || length < 1 << MIN_SIZE_SHIFT || Integer.bitCount(length) != 1)
+			// The buffer was not created by this pool
+			return;
+		int sizeClass = sizeClass(length);
+		Cache cache = caches.get();
+		synchronized (cache) {
+			cache.lastUse = System.nanoTime();
+			int count = cache.counts[sizeClass];
+			if (count < buffersPerClass) {
+				cache.buffers[sizeClass][count] = buffer;
+				cache.counts[sizeClass] = count + 1;
+				if (!cache.sweepScheduled) {
+					cache.sweepScheduled = true;
+					Sweeper.INSTANCE.schedule(new Sweep(cache), idleTimeoutNanos, TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void trim() {
+		Cache cache = caches.get();
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+	
+	private static int sizeClass(int length) {
+		if (length <= 1 << MIN_SIZE_SHIFT)
+			return 0;
+		return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SIZE_SHIFT;
+	}
+
+}
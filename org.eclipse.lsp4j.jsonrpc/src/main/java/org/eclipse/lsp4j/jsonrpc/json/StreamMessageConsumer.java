@@ -9,6 +9,10 @@ package org.eclipse.lsp4j.jsonrpc.json;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 
 import org.eclipse.lsp4j.jsonrpc.JsonRpcException;
@@ -16,7 +20,9 @@ import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 
 /**
- * A message consumer that serializes messages to JSON and sends them to an output stream.
+ * A message consumer that serializes messages to JSON and sends them to an output stream or a blocking
+ * byte channel. Messages are serialized into a reusable buffer of the calling thread, and header and
+ * content are sent with a single write operation.
  */
 public class StreamMessageConsumer implements MessageConsumer, MessageConstants {
 
@@ -26,9 +32,11 @@ public class StreamMessageConsumer implements MessageConsumer, MessageConstants
 	private final Object outputLock = new Object();
 
 	private OutputStream output;
+	private WritableByteChannel channel;
+	private MessageCompression compression;
 
 	public StreamMessageConsumer(MessageJsonHandler jsonHandler) {
-		this(null, StandardCharsets.UTF_8.name(), jsonHandler);
+		this((OutputStream) null, StandardCharsets.UTF_8.name(), jsonHandler);
 	}
 
 	public StreamMessageConsumer(OutputStream output, MessageJsonHandler jsonHandler) {
@@ -41,6 +49,16 @@ public class StreamMessageConsumer implements MessageConsumer, MessageConstants
 		this.jsonHandler = jsonHandler;
 	}
 
+	public StreamMessageConsumer(WritableByteChannel channel, MessageJsonHandler jsonHandler) {
+		this(channel, StandardCharsets.UTF_8.name(), jsonHandler);
+	}
+
+	public StreamMessageConsumer(WritableByteChannel channel, String encoding, MessageJsonHandler jsonHandler) {
+		this.channel = channel;
+		this.encoding = encoding;
+		this.jsonHandler = jsonHandler;
+	}
+
 	public OutputStream getOutput() {
 		return output;
 	}
@@ -49,23 +67,101 @@ public class StreamMessageConsumer implements MessageConsumer, MessageConstants
 		this.output = output;
 	}
 
+	public WritableByteChannel getChannel() {
+		return channel;
+	}
+
+	public void setChannel(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	public MessageCompression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Enable compression of large messages. The given instance must be shared with the message producer of
+	 * the same connection, which negotiates the encoding with the peer.
+	 */
+	public void setCompression(MessageCompression compression) {
+		this.compression = compression;
+	}
+
 	@Override
 	public void consume(Message message) {
+		MessageOutputBuffer buffer = MessageOutputBuffer.acquire();
 		try {
-			String content = jsonHandler.serialize(message);
-			byte[] contentBytes = content.getBytes(encoding);
-			int contentLength = contentBytes.length;
-
-			String header = getHeader(contentLength);
-			byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
-
+			String separateHeader = serialize(message, buffer);
 			synchronized (outputLock) {
-				output.write(headerBytes);
-				output.write(contentBytes);
-				output.flush();
+				if (channel != null)
+					write(channel, buffer, separateHeader);
+				else
+					write(output, buffer, separateHeader);
 			}
 		} catch (IOException exception) {
 			throw new JsonRpcException(exception);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	/**
+	 * Serialize the given message into the buffer and put the header in front of the content.
+	 * 
+	 * @return the header if it does not fit in front of the content and must be written separately,
+	 *         otherwise {@code null}
+	 */
+	String serialize(Message message, MessageOutputBuffer buffer) throws IOException {
+		Writer writer = buffer.getWriter(encoding);
+		jsonHandler.serialize(message, writer);
+		writer.flush();
+		String header;
+		if (compression == null) {
+			header = getHeader(buffer.getContentLength());
+		} else {
+			String contentEncoding = compression.selectEncoding(buffer.getContentLength());
+			if (contentEncoding != null)
+				buffer.compress(contentEncoding);
+			header = getHeader(buffer.getContentLength(), contentEncoding, compression.getAcceptEncodingHeader());
+		}
+		if (buffer.prependHeader(header))
+			return null;
+		return header;
+	}
+
+	Object getOutputLock() {
+		return outputLock;
+	}
+
+	private void write(OutputStream output, MessageOutputBuffer buffer, String separateHeader) throws IOException {
+		if (separateHeader != null)
+			output.write(separateHeader.getBytes(StandardCharsets.US_ASCII));
+		buffer.writeTo(output);
+		output.flush();
+	}
+
+	private void write(WritableByteChannel channel, MessageOutputBuffer buffer, String separateHeader) throws IOException {
+		if (separateHeader == null) {
+			ByteBuffer bytes = buffer.toByteBuffer();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		} else {
+			ByteBuffer headerBytes = ByteBuffer.wrap(separateHeader.getBytes(StandardCharsets.US_ASCII));
+			ByteBuffer contentBytes = buffer.toByteBuffer();
+			if (channel instanceof GatheringByteChannel) {
+				ByteBuffer[] buffers = { headerBytes, contentBytes };
+				while (contentBytes.hasRemaining()) {
+					((GatheringByteChannel) channel).write(buffers);
+				}
+			} else {
+				while (headerBytes.hasRemaining()) {
+					channel.write(headerBytes);
+				}
+				while (contentBytes.hasRemaining()) {
+					channel.write(contentBytes);
+				}
+			}
 		}
 	}
 
@@ -74,12 +170,25 @@ public class StreamMessageConsumer implements MessageConsumer, MessageConstants
 	 * {@code Content-Length} and {@code Content-Type} attributes according to the LSP specification.
 	 */
 	protected String getHeader(int contentLength) {
+		return getHeader(contentLength, null, null);
+	}
+
+	/**
+	 * Construct a header to be prepended to the actual content when compression is enabled. In addition
+	 * to the attributes written by {@link #getHeader(int)}, this includes the {@code Content-Encoding}
+	 * and {@code Accept-Encoding} attributes if they are not {@code null}.
+	 */
+	protected String getHeader(int contentLength, String contentEncoding, String acceptEncoding) {
 		StringBuilder headerBuilder = new StringBuilder();
 		appendHeader(headerBuilder, CONTENT_LENGTH_HEADER, contentLength).append(CRLF);
 		if (!StandardCharsets.UTF_8.name().equals(encoding)) {
 			appendHeader(headerBuilder, CONTENT_TYPE_HEADER, JSON_MIME_TYPE);
 			headerBuilder.append("; charset=").append(encoding).append(CRLF);
 		}
+		if (contentEncoding != null)
+			appendHeader(headerBuilder, CONTENT_ENCODING_HEADER, contentEncoding).append(CRLF);
+		if (acceptEncoding != null)
+			appendHeader(headerBuilder, ACCEPT_ENCODING_HEADER, acceptEncoding).append(CRLF);
 		headerBuilder.append(CRLF);
 		return headerBuilder.toString();
 	}
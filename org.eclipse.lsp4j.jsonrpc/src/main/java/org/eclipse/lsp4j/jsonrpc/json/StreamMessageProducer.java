@@ -10,7 +10,12 @@ package org.eclipse.lsp4j.jsonrpc.json;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,6 +25,7 @@ import org.eclipse.lsp4j.jsonrpc.MessageIssueException;
 import org.eclipse.lsp4j.jsonrpc.MessageIssueHandler;
 import org.eclipse.lsp4j.jsonrpc.MessageProducer;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
 
 /**
  * A message producer that reads from an input stream and parses messages from JSON.
@@ -28,14 +34,43 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 
 	private static final Logger LOG = Logger.getLogger(StreamMessageProducer.class.getName());
 
+	private static final int READ_BUFFER_SIZE = 8192;
+	static final BufferPool DEFAULT_BUFFER_POOL = new SizeClassBufferPool();
+
 	private final MessageJsonHandler jsonHandler;
 	private final MessageIssueHandler issueHandler;
 
 	private InputStream input;
 
+	private BufferPool bufferPool = DEFAULT_BUFFER_POOL;
+	private int maxMessageSize = Integer.MAX_VALUE;
+	private MessageCompression compression;
+	private MessageDecodingPipeline decodingPipeline;
+	private Executor decodingExecutor;
+
 	private MessageConsumer callback;
 	private boolean keepRunning;
 
+	/**
+	 * Bytes that have been read from the input stream, but not consumed yet, are in the range
+	 * from {@code readPos} to {@code readLimit}.
+	 */
+	private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+	private int readPos;
+	private int readLimit;
+	private final InputStream bufferedInput = new BufferedInput();
+
+	/**
+	 * The header section of the message that is currently read, reused for all messages.
+	 */
+	private byte[] headerBuffer = new byte[256];
+	private int headerLength;
+
+	/**
+	 * Subclasses that override {@link #parseHeader(String, Headers)} receive all header lines as strings.
+	 */
+	private final boolean parseHeaderOverridden = overridesParseHeader(getClass());
+
 	public StreamMessageProducer(InputStream input, MessageJsonHandler jsonHandler) {
 		this(input, jsonHandler, null);
 	}
@@ -46,17 +81,89 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 		this.issueHandler = issueHandler;
 	}
 
+	public StreamMessageProducer(ReadableByteChannel channel, MessageJsonHandler jsonHandler) {
+		this(channel, jsonHandler, null);
+	}
+
+	/**
+	 * Read messages from a blocking channel, e.g. a socket channel that is also used by a
+	 * {@link StreamMessageConsumer} for outgoing messages.
+	 */
+	public StreamMessageProducer(ReadableByteChannel channel, MessageJsonHandler jsonHandler, MessageIssueHandler issueHandler) {
+		this(new ChannelInputStream(channel), jsonHandler, issueHandler);
+	}
+
 	public InputStream getInput() {
 		return input;
 	}
 
 	public void setInput(InputStream input) {
 		this.input = input;
+		this.readPos = 0;
+		this.readLimit = 0;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Set the pool from which the buffers for message content are obtained.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		if (bufferPool == null)
+			throw new NullPointerException("bufferPool");
+		this.bufferPool = bufferPool;
+	}
+
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/**
+	 * Set the maximal content length of incoming messages. Larger messages are skipped without allocating
+	 * a buffer for them, and reported to the issue handler.
+	 */
+	public void setMaxMessageSize(int maxMessageSize) {
+		if (maxMessageSize <= 0)
+			throw new IllegalArgumentException("maxMessageSize must be positive");
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	public MessageCompression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Enable compression: the {@code Accept-Encoding} header of incoming messages is passed to the given
+	 * instance, which must be shared with the message consumer of the same connection. Compressed content
+	 * is only accepted if compression is enabled, otherwise such messages are reported as errors.
+	 */
+	public void setCompression(MessageCompression compression) {
+		this.compression = compression;
+	}
+
+	public MessageDecodingPipeline getDecodingPipeline() {
+		return decodingPipeline;
+	}
+
+	/**
+	 * Decode messages in a separate task on the given executor, so reading the next messages overlaps with
+	 * decoding. The content of each message is passed to the decoding task through the given pipeline.
+	 * Messages are still passed to the callback one after another in the order they have been read.
+	 */
+	public void setDecodingPipeline(MessageDecodingPipeline decodingPipeline, Executor executor) {
+		if (decodingPipeline != null && executor == null)
+			throw new NullPointerException("executor");
+		this.decodingPipeline = decodingPipeline;
+		this.decodingExecutor = executor;
 	}
 
 	protected static class Headers {
 		public int contentLength = -1;
 		public String charset = StandardCharsets.UTF_8.name();
+		public String contentEncoding;
+		public String acceptEncoding;
 	}
 
 	@Override
@@ -66,45 +173,52 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 		}
 		this.keepRunning = true;
 		this.callback = callback;
+		MessageDecodingPipeline pipeline = decodingPipeline;
+		if (pipeline != null)
+			pipeline.start(decodingExecutor, this::decodeMessage, bufferPool);
 		try {
-			StringBuilder headerBuilder = null;
-			StringBuilder debugBuilder = null;
 			boolean newLine = false;
+			int lineStart = 0;
+			headerLength = 0;
 			Headers headers = new Headers();
 			while (keepRunning) {
-				int c = input.read();
-				if (c == -1) {
+				if (readPos == readLimit && !fillReadBuffer()) {
 					// End of input stream has been reached
 					keepRunning = false;
 				} else {
-					if (debugBuilder == null)
-						debugBuilder = new StringBuilder();
-					debugBuilder.append((char) c);
+					byte c = readBuffer[readPos++];
 					if (c == '\n') {
 						if (newLine) {
 							// Two consecutive newlines have been read, which signals the start of the message content
 							if (headers.contentLength < 0) {
 								fireError(new IllegalStateException("Missing header " + CONTENT_LENGTH_HEADER
-										+ " in input \"" + debugBuilder + "\""));
+										+ " in input \"" + new String(headerBuffer, 0, headerLength, StandardCharsets.US_ASCII) + "\""));
 							} else {
-								boolean result = handleMessage(input, headers);
+								if (headers.acceptEncoding != null && compression != null)
+									compression.peerAccepts(headers.acceptEncoding);
+								boolean result = handleMessage(bufferedInput, headers);
 								if (!result)
 									keepRunning = false;
 								newLine = false;
 							}
-							headers = new Headers();
-							debugBuilder = null;
-						} else if (headerBuilder != null) {
+							headers.contentLength = -1;
+							headers.charset = StandardCharsets.UTF_8.name();
+							headers.contentEncoding = null;
+							headers.acceptEncoding = null;
+							headerLength = 0;
+						} else if (headerLength > lineStart) {
 							// A single newline ends a header line
-							parseHeader(headerBuilder.toString(), headers);
-							headerBuilder = null;
+							if (parseHeaderOverridden)
+								parseHeader(new String(headerBuffer, lineStart, headerLength - lineStart, StandardCharsets.US_ASCII), headers);
+							else
+								parseHeader(headerBuffer, lineStart, headerLength, headers);
+							appendHeaderByte(c);
 						}
+						lineStart = headerLength;
 						newLine = true;
 					} else if (c != '\r') {
 						// Add the input to the current header line
-						if (headerBuilder == null)
-							headerBuilder = new StringBuilder();
-						headerBuilder.append((char) c);
+						appendHeaderByte(c);
 						newLine = false;
 					}
 				}
@@ -115,11 +229,36 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 			else
 				throw new JsonRpcException(exception);
 		} finally {
+			if (pipeline != null)
+				pipeline.finish();
 			this.callback = null;
 			this.keepRunning = false;
 		}
 	}
 
+	/**
+	 * Read the next chunk of input into the internal buffer.
+	 * 
+	 * @return {@code false} if the end of the input stream has been reached
+	 */
+	private boolean fillReadBuffer() throws IOException {
+		int count;
+		do {
+			count = input.read(readBuffer, 0, readBuffer.length);
+		} while (count == 0);
+		if (count < 0)
+			return false;
+		readPos = 0;
+		readLimit = count;
+		return true;
+	}
+
+	private void appendHeaderByte(byte c) {
+		if (headerLength == headerBuffer.length)
+			headerBuffer = Arrays.copyOf(headerBuffer, 2 * headerLength);
+		headerBuffer[headerLength++] = c;
+	}
+
 	/**
 	 * Log an error.
 	 */
@@ -157,8 +296,38 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 					headers.charset = line.substring(charsetIndex + 8).trim();
 				break;
 			}
+			case CONTENT_ENCODING_HEADER:
+				headers.contentEncoding = line.substring(sepIndex + 1).trim();
+				break;
+			case ACCEPT_ENCODING_HEADER:
+				headers.acceptEncoding = line.substring(sepIndex + 1).trim();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Parse a header attribute directly from the internal header buffer. Only the headers known by
+	 * {@link #parseHeader(String, Headers)} are considered, so no string needs to be created for the common case.
+	 */
+	private void parseHeader(byte[] line, int start, int end, Headers headers) {
+		try {
+			MessageFraming.parseHeader(line, start, end, headers);
+		} catch (NumberFormatException e) {
+			fireError(e);
+		}
+	}
+
+	private static boolean overridesParseHeader(Class<?> clazz) {
+		for (Class<?> c = clazz; c != StreamMessageProducer.class && c != null; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("parseHeader", String.class, Headers.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// Continue with the superclass
 			}
 		}
+		return false;
 	}
 
 	/**
@@ -170,11 +339,14 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 		if (callback == null)
 			callback = message -> LOG.log(Level.INFO, "Received message: " + message);
 		
+		int contentLength = headers.contentLength;
+		if (contentLength > maxMessageSize)
+			return skipMessage(input, headers);
+		
+		byte[] buffer = bufferPool.acquire(contentLength);
+		boolean passedOn = false;
 		try {
-			int contentLength = headers.contentLength;
-			byte[] buffer = new byte[contentLength];
 			int bytesRead = 0;
-
 			while (bytesRead < contentLength) {
 				int readResult = input.read(buffer, bytesRead, contentLength - bytesRead);
 				if (readResult == -1)
@@ -182,9 +354,41 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 				bytesRead += readResult;
 			}
 
-			String content = new String(buffer, headers.charset);
+			if (decodingPipeline != null) {
+				decodingPipeline.put(buffer, contentLength, headers);
+				passedOn = true;
+			} else {
+				decodeMessage(buffer, contentLength, headers);
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (Exception exception) {
+			fireError(exception);
+		} finally {
+			if (!passedOn)
+				bufferPool.release(buffer);
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the JSON content of a message and notify the callback. Errors are reported and do not escape.
+	 */
+	private void decodeMessage(byte[] buffer, int contentLength, Headers headers) {
+		byte[] decompressed = null;
+		try {
 			try {
-				Message message = jsonHandler.parseMessage(content);
+				ByteBuffer content = ByteBuffer.wrap(buffer, 0, contentLength);
+				if (MessageCompression.isCompressed(headers)) {
+					if (compression == null) {
+						fireError(MessageCompression.createNotEnabledIssue(headers));
+						return;
+					}
+					content = compression.decompress(content, headers, maxMessageSize, bufferPool);
+					decompressed = content.array();
+				}
+				Message message = jsonHandler.parseMessage(content, MessageFraming.getCharset(headers));
 				callback.consume(message);
 			} catch (MessageIssueException exception) {
 				// An issue was found while parsing or validating the message
@@ -194,11 +398,51 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 					fireError(exception);
 			}
 		} catch (Exception exception) {
-			// UnsupportedEncodingException can be thrown by String constructor
+			// UnsupportedCharsetException can be thrown by Charset.forName
 			// JsonParseException can be thrown by jsonHandler
 			// We also catch arbitrary exceptions that are thrown by message consumers in order to keep this thread alive
 			fireError(exception);
+		} finally {
+			if (decompressed != null)
+				bufferPool.release(decompressed);
 		}
+	}
+
+	/**
+	 * Skip the content of a message that exceeds the maximal message size. The {@code id} and {@code method}
+	 * properties are taken from the beginning of the content if possible, so the issue can be reported
+	 * for the right message.
+	 * 
+	 * @return {@code true} if we should continue reading from the input stream, {@code false} if we should stop
+	 */
+	private boolean skipMessage(InputStream input, Headers headers) throws IOException {
+		int contentLength = headers.contentLength;
+		byte[] prefix = new byte[Math.min(contentLength, MessageFraming.IDENTITY_PREFIX_LENGTH)];
+		int bytesRead = 0;
+		while (bytesRead < prefix.length) {
+			int readResult = input.read(prefix, bytesRead, prefix.length - bytesRead);
+			if (readResult == -1)
+				return false;
+			bytesRead += readResult;
+		}
+		long remaining = contentLength - bytesRead;
+		while (remaining > 0) {
+			long skipped = input.skip(remaining);
+			if (skipped <= 0) {
+				// The end of the stream is not signaled by skip, so check it with a single read
+				if (input.read() == -1)
+					return false;
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+		
+		Message message = MessageFraming.parseMessageIdentity(prefix, headers);
+		MessageIssue issue = MessageFraming.createSizeExceededIssue(maxMessageSize, contentLength);
+		if (issueHandler != null && message != null)
+			issueHandler.handle(message, Collections.singletonList(issue));
+		else
+			fireError(new MessageIssueException(message, issue));
 		return true;
 	}
 
@@ -207,4 +451,52 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 		keepRunning = false;
 	}
 
+	/**
+	 * The stream passed to {@link #handleMessage(InputStream, Headers)}: it first returns the bytes remaining in the
+	 * internal buffer and then continues with the actual input stream. Large reads bypass the internal buffer.
+	 */
+	private class BufferedInput extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			if (readPos == readLimit && !fillReadBuffer())
+				return -1;
+			return readBuffer[readPos++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (readPos == readLimit) {
+				if (len >= readBuffer.length)
+					return input.read(b, off, len);
+				if (!fillReadBuffer())
+					return -1;
+			}
+			int count = Math.min(len, readLimit - readPos);
+			System.arraycopy(readBuffer, readPos, b, off, count);
+			readPos += count;
+			return count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (n <= 0)
+				return 0;
+			if (readPos < readLimit) {
+				int count = (int) Math.min(n, readLimit - readPos);
+				readPos += count;
+				return count;
+			}
+			return input.skip(n);
+		}
+
+		@Override
+		public int available() throws IOException {
+			return readLimit - readPos + input.available();
+		}
+
+	}
+
 }
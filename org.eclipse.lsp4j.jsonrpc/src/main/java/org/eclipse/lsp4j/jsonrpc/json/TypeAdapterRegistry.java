@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import org.eclipse.lsp4j.jsonrpc.json.adapters.CollectionTypeAdapter;
+import org.eclipse.lsp4j.jsonrpc.json.adapters.EitherTypeAdapter;
+import org.eclipse.lsp4j.jsonrpc.json.adapters.EnumTypeAdapter;
+import org.eclipse.lsp4j.jsonrpc.json.adapters.ThrowableTypeAdapter;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * The type adapters of the protocol types, shared by the {@link MessageJsonHandler}s of many connections. The
+ * adapters are created by a single {@link Gson} instance, which is immutable and thread-safe, so each adapter is
+ * created once per registry instead of once per connection. Messages depend on the methods of a connection and are
+ * not handled by the registry; a handler uses the registry as {@link TypeAdapterFactory} for all other types.
+ *
+ * <p>The adapters of a registry are never evicted, so a registry keeps all types it has seen and their class loaders
+ * alive as long as it is reachable. Sharing a registry is therefore opt-in, see
+ * {@link org.eclipse.lsp4j.jsonrpc.Launcher.Builder#setTypeAdapterRegistry(TypeAdapterRegistry)}.</p>
+ */
+public class TypeAdapterRegistry implements TypeAdapterFactory {
+
+	private static class DefaultHolder {
+		static final TypeAdapterRegistry INSTANCE = new TypeAdapterRegistry(createGsonBuilder());
+	}
+
+	/**
+	 * A registry with the default configuration of JSON-RPC messages. Since it is never released, it must only
+	 * be used for types whose class loaders live as long as this library, e.g. the types of an application
+	 * without dynamically loaded plug-ins.
+	 */
+	public static TypeAdapterRegistry getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Create a {@link GsonBuilder} with the default settings for the protocol types of JSON-RPC messages.
+	 */
+	public static GsonBuilder createGsonBuilder() {
+		return new GsonBuilder()
+			.registerTypeAdapterFactory(new CollectionTypeAdapter.Factory())
+			.registerTypeAdapterFactory(new ThrowableTypeAdapter.Factory())
+			.registerTypeAdapterFactory(new EitherTypeAdapter.Factory())
+			.registerTypeAdapterFactory(new EnumTypeAdapter.Factory());
+	}
+
+	private final Gson gson;
+
+	/**
+	 * @param gsonBuilder - the configuration of the adapters, which must not depend on a connection
+	 */
+	public TypeAdapterRegistry(GsonBuilder gsonBuilder) {
+		this.gson = gsonBuilder.create();
+	}
+
+	public Gson getGson() {
+		return gson;
+	}
+
+	/**
+	 * The shared adapter for the given type.
+	 */
+	public <T> TypeAdapter<T> getAdapter(TypeToken<T> typeToken) {
+		return gson.getAdapter(typeToken);
+	}
+
+	@Override
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+		if (Message.class.isAssignableFrom(typeToken.getRawType()))
+			return null;
+		return this.gson.getAdapter(typeToken);
+	}
+
+}
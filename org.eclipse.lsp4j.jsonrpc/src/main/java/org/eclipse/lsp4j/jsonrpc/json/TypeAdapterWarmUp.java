@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Creates the type adapters for the parameter and return types of JSON-RPC methods before the first messages
+ * arrive, so the first request of a connection does not pay for the reflective construction of its adapters.
+ * Optionally, synthetic samples of the parameters and results are decoded a number of times, so the decoding
+ * code is compiled by the JIT. A warm-up is meant to run on a background thread while the connection is idle;
+ * failures are logged and do not affect the connection.
+ */
+public class TypeAdapterWarmUp implements Runnable {
+
+	private static final Logger LOG = Logger.getLogger(TypeAdapterWarmUp.class.getName());
+
+	/**
+	 * Start a warm-up for the given methods on a new daemon thread with minimal priority.
+	 */
+	public static Thread start(MessageJsonHandler jsonHandler, Map<String, JsonRpcMethod> supportedMethods, int sampleIterations) {
+		Thread thread = new Thread(new TypeAdapterWarmUp(jsonHandler, supportedMethods.values(), sampleIterations),
+				"lsp4j-warm-up");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return thread;
+	}
+
+	private final MessageJsonHandler jsonHandler;
+	private final Collection<JsonRpcMethod> methods;
+	private final int sampleIterations;
+
+	/**
+	 * @param jsonHandler - the handler whose adapters are created
+	 * @param methods - the methods whose parameter and return types are warmed up
+	 * @param sampleIterations - how often to decode synthetic samples, or 0 to only create the adapters
+	 */
+	public TypeAdapterWarmUp(MessageJsonHandler jsonHandler, Collection<JsonRpcMethod> methods, int sampleIterations) {
+		this.jsonHandler = jsonHandler;
+		this.methods = new ArrayList<>(methods);
+		this.sampleIterations = sampleIterations;
+	}
+
+	@Override
+	public void run() {
+		Gson gson = jsonHandler.getGson();
+		Set<Type> types = new LinkedHashSet<>();
+		types.add(Message.class);
+		for (JsonRpcMethod method : methods) {
+			for (Type parameterType : method.getParameterTypes()) {
+				types.add(parameterType);
+			}
+			if (method.getReturnType() != null)
+				types.add(method.getReturnType());
+		}
+		List<TypeAdapter<?>> adapters = new ArrayList<>(types.size());
+		List<String> samples = new ArrayList<>(types.size());
+		for (Type type : types) {
+			try {
+				adapters.add(gson.getAdapter(TypeToken.get(type)));
+				samples.add(getSample(type));
+			} catch (RuntimeException e) {
+				LOG.log(Level.FINE, "Could not create the type adapter for " + type, e);
+			}
+		}
+		if (sampleIterations <= 0)
+			return;
+		List<String> messages = new ArrayList<>(methods.size());
+		for (JsonRpcMethod method : methods) {
+			messages.add(getSampleMessage(method));
+		}
+		for (int i = 0; i < sampleIterations; i++) {
+			for (String message : messages) {
+				decode(() -> jsonHandler.parseMessage(message), message);
+			}
+			for (int j = 0; j < adapters.size(); j++) {
+				TypeAdapter<?> adapter = adapters.get(j);
+				String sample = samples.get(j);
+				if (sample != null)
+					decode(() -> adapter.fromJson(sample), sample);
+			}
+		}
+	}
+
+	private void decode(Callable<?> decoder, String json) {
+		try {
+			decoder.call();
+		} catch (Exception e) {
+			// Samples cannot be decoded for all types, e.g. for abstract types
+			LOG.log(Level.FINEST, "Could not decode the warm-up sample " + json, e);
+		}
+	}
+
+	/**
+	 * A synthetic request or notification message for the given method.
+	 */
+	protected String getSampleMessage(JsonRpcMethod method) {
+		StringBuilder result = new StringBuilder("{\"jsonrpc\":\"2.0\",");
+		if (!method.isNotification())
+			result.append("\"id\":\"warm-up\",");
+		result.append("\"method\":\"").append(method.getMethodName()).append('"');
+		Type[] parameterTypes = method.getParameterTypes();
+		if (parameterTypes.length == 1) {
+			result.append(",\"params\":").append(getSampleOrNull(parameterTypes[0]));
+		} else if (parameterTypes.length > 1) {
+			result.append(",\"params\":[");
+			for (int i = 0; i < parameterTypes.length; i++) {
+				if (i > 0)
+					result.append(',');
+				result.append(getSampleOrNull(parameterTypes[i]));
+			}
+			result.append(']');
+		}
+		return result.append('}').toString();
+	}
+
+	private String getSampleOrNull(Type type) {
+		String sample = getSample(type);
+		return sample != null ? sample : "null";
+	}
+
+	/**
+	 * A synthetic JSON value of the given type, or {@code null} if no sample is known for the type.
+	 */
+	protected String getSample(Type type) {
+		Class<?> rawType = TypeToken.get(type).getRawType();
+		if (rawType == String.class)
+			return "\"\"";
+		if (rawType == Boolean.class || rawType == boolean.class)
+			return "false";
+		if (Number.class.isAssignableFrom(rawType) || rawType.isPrimitive() && rawType != void.class)
+			return "0";
+		if (rawType.isArray() || Collection.class.isAssignableFrom(rawType))
+			return "[]";
+		if (rawType == Object.class || rawType == Void.class || rawType == void.class || rawType.isEnum()
+				|| Either.class.isAssignableFrom(rawType) || rawType.isInterface())
+			return null;
+		return "{}";
+	}
+
+}
@@ -30,7 +30,12 @@ public enum ResponseErrorCode {
 	
 	UnknownErrorCode(-32001),
 	
-	RequestCancelled(-32800);
+	RequestCancelled(-32800),
+	
+	/**
+	 * The server could not accept the request, e.g. because it is overloaded. The client may retry it later.
+	 */
+	ServerCancelled(-32802);
 	
 	private final int value;
 	
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import org.eclipse.lsp4j.jsonrpc.processor.ServiceModel.UnsupportedTypeException;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+
+/**
+ * An annotation processor that generates a {@link org.eclipse.lsp4j.jsonrpc.services.GeneratedService} for each
+ * class and interface that declares or inherits {@link JsonRequest},
+ * {@link org.eclipse.lsp4j.jsonrpc.services.JsonNotification} or
+ * {@link org.eclipse.lsp4j.jsonrpc.services.JsonDelegate} methods. With the generated classes, launchers are
+ * created without scanning the service types with reflection and without {@link java.lang.reflect.Proxy}.
+ *
+ * <p>The processor is not registered as a service, so it does not run in every compilation that has this library on
+ * the class path. Projects opt in by passing {@code -processor org.eclipse.lsp4j.jsonrpc.processor.JsonRpcProcessor}
+ * to the Java compiler. Implementation classes of service interfaces are processed, too, since the endpoint of a local
+ * service is created for its class. Types for which no code can be generated, e.g. generic types or types with
+ * private JSON-RPC methods, are skipped and handled by reflection at runtime.</p>
+ */
+@SupportedAnnotationTypes("*")
+public class JsonRpcProcessor extends AbstractProcessor {
+
+	private final Set<String> processedTypes = new HashSet<>();
+	/** Types that refer to types which are not available yet, to be processed again in the next round. */
+	private final Set<String> deferredTypes = new LinkedHashSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Elements elements = processingEnv.getElementUtils();
+		if (roundEnv.processingOver() || elements.getTypeElement(JsonRequest.class.getName()) == null)
+			return false;
+		List<TypeElement> types = new ArrayList<>();
+		for (String name : deferredTypes) {
+			TypeElement type = elements.getTypeElement(name);
+			if (type != null)
+				types.add(type);
+		}
+		deferredTypes.clear();
+		collectTypes(roundEnv.getRootElements(), types);
+		for (TypeElement type : types) {
+			process(type);
+		}
+		return false;
+	}
+
+	private void collectTypes(Collection<? extends Element> elements, List<TypeElement> result) {
+		for (TypeElement type : ElementFilter.typesIn(elements)) {
+			result.add(type);
+			collectTypes(type.getEnclosedElements(), result);
+		}
+	}
+
+	private void process(TypeElement type) {
+		String name = type.getQualifiedName().toString();
+		if (processedTypes.contains(name))
+			return;
+		ServiceModel model;
+		try {
+			model = ServiceModel.create(type, processingEnv);
+		} catch (UnsupportedTypeException e) {
+			if (e.isIncomplete())
+				deferredTypes.add(name);
+			else
+				processedTypes.add(name);
+			return;
+		}
+		processedTypes.add(name);
+		if (model == null)
+			return;
+		String source = new ServiceGenerator(model, processingEnv.getElementUtils()).generate();
+		try {
+			JavaFileObject file = processingEnv.getFiler().createSourceFile(model.getQualifiedGeneratedName(), type);
+			try (Writer writer = file.openWriter()) {
+				writer.write(source);
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.WARNING,
+					"Could not generate the JSON-RPC methods of " + name + ": " + e.getMessage(), type);
+		}
+	}
+
+}
@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.processor;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+
+import org.eclipse.lsp4j.jsonrpc.processor.ServiceModel.RpcMethod;
+
+/**
+ * Writes the source code of the {@link org.eclipse.lsp4j.jsonrpc.services.GeneratedService} subclass for a
+ * {@link ServiceModel}. All types are referenced with qualified names, so the generated code does not depend on
+ * imports.
+ */
+final class ServiceGenerator {
+
+	private static final String GENERATED_SERVICE = "org.eclipse.lsp4j.jsonrpc.services.GeneratedService";
+	private static final String ENDPOINT = "org.eclipse.lsp4j.jsonrpc.Endpoint";
+	private static final String JSON_RPC_METHOD = "org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod";
+	private static final String FUTURE = "java.util.concurrent.CompletableFuture";
+	private static final String GSON_TYPES = "com.google.gson.internal.$Gson$Types";
+
+	private final ServiceModel model;
+	private final Elements elements;
+	private final String typeName;
+	private final StringBuilder out = new StringBuilder();
+
+	ServiceGenerator(ServiceModel model, Elements elements) {
+		this.model = model;
+		this.elements = elements;
+		this.typeName = model.type.getQualifiedName().toString();
+	}
+
+	String generate() {
+		if (!model.packageName.isEmpty())
+			line(0, "package " + model.packageName + ";").line(0, "");
+		line(0, "/**");
+		line(0, " * JSON-RPC methods of {@link " + typeName + "}, generated by {@link org.eclipse.lsp4j.jsonrpc.processor.JsonRpcProcessor}.");
+		line(0, " */");
+		line(0, "@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+		line(0, "public final class " + model.generatedName + " extends " + GENERATED_SERVICE + "<" + typeName + "> {");
+		line(0, "");
+		generateConstructor();
+		generateSupportedMethods();
+		generateInvoke();
+		generateDelegates();
+		if (model.isInterface)
+			generateProxy();
+		line(0, "}");
+		return out.toString();
+	}
+
+	private void generateConstructor() {
+		line(1, "public " + model.generatedName + "() {");
+		line(2, "super(" + typeName + ".class,");
+		StringBuilder names = new StringBuilder();
+		for (RpcMethod method : model.methods) {
+			names.append(names.length() == 0 ? " " : ", ").append(literal(method.name));
+		}
+		line(4, "new java.lang.String[] {" + names + " },");
+		line(4, "new java.lang.Class<?>[] {" + classLiterals(model.methodTypes) + " },");
+		line(4, "new java.lang.Class<?>[] {" + classLiterals(model.delegateTypes) + " });");
+		line(1, "}").line(0, "");
+	}
+
+	private void generateSupportedMethods() {
+		String mapType = "java.util.Map<java.lang.String, " + JSON_RPC_METHOD + ">";
+		line(1, "@java.lang.Override");
+		line(1, "public " + mapType + " getSupportedMethods() {");
+		line(2, mapType + " result = new java.util.LinkedHashMap<>();");
+		for (RpcMethod method : model.supportedMethods.values()) {
+			StringBuilder arguments = new StringBuilder(literal(method.name));
+			if (!method.notification) {
+				TypeMirror resultType = ((DeclaredType) method.method.getReturnType()).getTypeArguments().get(0);
+				arguments.append(", ").append(typeExpression(resultType));
+			}
+			for (VariableElement parameter : method.method.getParameters()) {
+				arguments.append(", ").append(typeExpression(parameter.asType()));
+			}
+			String factory = method.notification ? "notification" : "request";
+			line(2, "result.put(" + literal(method.name) + ", " + JSON_RPC_METHOD + "." + factory + "(" + arguments + "));");
+		}
+		line(2, "return result;");
+		line(1, "}").line(0, "");
+	}
+
+	private void generateInvoke() {
+		line(1, "@java.lang.Override");
+		line(1, "protected java.lang.Object invoke(" + typeName + " service, java.lang.String method, java.lang.Object arg) {");
+		line(2, "switch (method) {");
+		for (RpcMethod method : model.methods) {
+			List<? extends VariableElement> parameters = method.method.getParameters();
+			StringBuilder call = new StringBuilder("service.").append(method.method.getSimpleName()).append('(');
+			line(2, "case " + literal(method.name) + ": {");
+			if (parameters.size() == 1) {
+				call.append(cast(parameters.get(0).asType(), "getArgument(method, arg)"));
+			} else {
+				line(3, "java.lang.Object[] arguments = getArguments(method, arg, " + parameters.size() + ");");
+				for (int i = 0; i < parameters.size(); i++) {
+					call.append(i > 0 ? ", " : "").append(cast(parameters.get(i).asType(), "arguments[" + i + "]"));
+				}
+			}
+			call.append(')');
+			if (method.notification) {
+				line(3, call + ";");
+				line(3, "return null;");
+			} else {
+				line(3, "return " + call + ";");
+			}
+			line(2, "}");
+		}
+		line(2, "default:");
+		line(3, "throw new java.lang.IllegalArgumentException(\"Unknown method: \" + method);");
+		line(2, "}");
+		line(1, "}").line(0, "");
+	}
+
+	private void generateDelegates() {
+		line(1, "@java.lang.Override");
+		line(1, "protected void getDelegates(" + typeName + " service, java.util.function.BiConsumer<java.lang.String, java.lang.Object> acceptor) {");
+		for (ExecutableElement method : model.delegates) {
+			String name = method.getSimpleName().toString();
+			line(2, "acceptor.accept(" + literal(name) + ", service." + name + "());");
+		}
+		line(1, "}").line(0, "");
+	}
+
+	private void generateProxy() {
+		line(1, "@java.lang.Override");
+		line(1, "public " + typeName + " createProxy(" + ENDPOINT + " endpoint) {");
+		line(2, "return new ServiceProxy(endpoint);");
+		line(1, "}").line(0, "");
+
+		line(1, "private static final class ServiceProxy implements " + typeName + ", " + ENDPOINT + " {");
+		line(0, "");
+		line(2, "private final " + ENDPOINT + " endpoint;");
+		for (int i = 0; i < model.delegates.size(); i++) {
+			line(2, "private final " + sourceName(model.delegates.get(i).getReturnType()) + " delegate" + i + ";");
+		}
+		line(0, "");
+		line(2, "ServiceProxy(" + ENDPOINT + " endpoint) {");
+		line(3, "this.endpoint = endpoint;");
+		for (int i = 0; i < model.delegates.size(); i++) {
+			TypeMirror delegateType = model.delegates.get(i).getReturnType();
+			line(3, "this.delegate" + i + " = org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints.toServiceObject(endpoint, "
+					+ erasedName(delegateType) + ".class);");
+		}
+		line(2, "}");
+		for (RpcMethod method : model.methods) {
+			line(0, "");
+			line(2, "@java.lang.Override");
+			line(2, "public " + signature(method.method) + " {");
+			List<? extends VariableElement> parameters = method.method.getParameters();
+			String params;
+			if (parameters.isEmpty())
+				params = "null";
+			else if (parameters.size() == 1)
+				params = "arg0";
+			else
+				params = "java.util.Arrays.asList(" + argumentNames(parameters.size()) + ")";
+			if (method.notification) {
+				line(3, "endpoint.notify(" + literal(method.name) + ", " + params + ");");
+			} else {
+				line(3, "return (" + sourceName(method.method.getReturnType()) + ") endpoint.request(" + literal(method.name)
+						+ ", " + params + ");");
+			}
+			line(2, "}");
+		}
+		for (int i = 0; i < model.delegates.size(); i++) {
+			line(0, "");
+			line(2, "@java.lang.Override");
+			line(2, "public " + signature(model.delegates.get(i)) + " {");
+			line(3, "return delegate" + i + ";");
+			line(2, "}");
+		}
+		for (ExecutableElement method : model.unsupportedMethods) {
+			line(0, "");
+			line(2, "@java.lang.Override");
+			line(2, "public " + signature(method) + " {");
+			line(3, "throw new java.lang.UnsupportedOperationException(" + literal(method.getSimpleName() + " is not a JSON-RPC method") + ");");
+			line(2, "}");
+		}
+		line(0, "");
+		line(2, "@java.lang.Override");
+		line(2, "public " + FUTURE + "<?> request(java.lang.String method, java.lang.Object parameter) {");
+		line(3, "return endpoint.request(method, parameter);");
+		line(2, "}");
+		line(0, "");
+		line(2, "@java.lang.Override");
+		line(2, "public void notify(java.lang.String method, java.lang.Object parameter) {");
+		line(3, "endpoint.notify(method, parameter);");
+		line(2, "}");
+		line(0, "");
+		line(2, "@java.lang.Override");
+		line(2, "public java.lang.String toString() {");
+		line(3, "return getClass().getSimpleName() + \" for \" + endpoint;");
+		line(2, "}");
+		line(0, "");
+		line(1, "}").line(0, "");
+	}
+
+	/**
+	 * The signature of a method that overrides the given method, with parameters named {@code arg0}, {@code arg1}...
+	 */
+	private String signature(ExecutableElement method) {
+		StringBuilder result = new StringBuilder(sourceName(method.getReturnType()));
+		result.append(' ').append(method.getSimpleName()).append('(');
+		List<? extends VariableElement> parameters = method.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			TypeMirror parameterType = parameters.get(i).asType();
+			if (i > 0)
+				result.append(", ");
+			if (method.isVarArgs() && i == parameters.size() - 1)
+				result.append(sourceName(((ArrayType) parameterType).getComponentType())).append("...");
+			else
+				result.append(sourceName(parameterType));
+			result.append(" arg").append(i);
+		}
+		return result.append(')').toString();
+	}
+
+	private String argumentNames(int count) {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			result.append(i > 0 ? ", " : "").append("arg").append(i);
+		}
+		return result.toString();
+	}
+
+	private String cast(TypeMirror type, String expression) {
+		return "(" + sourceName(type) + ") " + expression;
+	}
+
+	private String classLiterals(Collection<TypeElement> types) {
+		StringBuilder result = new StringBuilder();
+		for (TypeElement type : types) {
+			result.append(result.length() == 0 ? " " : ", ").append(type.getQualifiedName()).append(".class");
+		}
+		return result.toString();
+	}
+
+	/**
+	 * The given type as written in source code, without type annotations.
+	 */
+	private String sourceName(TypeMirror type) {
+		switch (type.getKind()) {
+		case ARRAY:
+			return sourceName(((ArrayType) type).getComponentType()) + "[]";
+		case DECLARED:
+			DeclaredType declaredType = (DeclaredType) type;
+			String name = ((TypeElement) declaredType.asElement()).getQualifiedName().toString();
+			List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+			if (typeArguments.isEmpty())
+				return name;
+			StringBuilder result = new StringBuilder(name).append('<');
+			for (int i = 0; i < typeArguments.size(); i++) {
+				result.append(i > 0 ? ", " : "").append(sourceName(typeArguments.get(i)));
+			}
+			return result.append('>').toString();
+		case WILDCARD:
+			WildcardType wildcardType = (WildcardType) type;
+			if (wildcardType.getExtendsBound() != null)
+				return "? extends " + sourceName(wildcardType.getExtendsBound());
+			if (wildcardType.getSuperBound() != null)
+				return "? super " + sourceName(wildcardType.getSuperBound());
+			return "?";
+		default:
+			// Primitive types and void
+			return type.getKind().name().toLowerCase();
+		}
+	}
+
+	private String erasedName(TypeMirror type) {
+		switch (type.getKind()) {
+		case ARRAY:
+			return erasedName(((ArrayType) type).getComponentType()) + "[]";
+		case DECLARED:
+			return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+		default:
+			return type.getKind().name().toLowerCase();
+		}
+	}
+
+	/**
+	 * An expression that creates the {@code java.lang.reflect.Type} that reflection returns for the given type.
+	 */
+	private String typeExpression(TypeMirror type) {
+		switch (type.getKind()) {
+		case ARRAY:
+			TypeMirror componentType = ((ArrayType) type).getComponentType();
+			if (isParameterized(componentType))
+				return GSON_TYPES + ".arrayOf(" + typeExpression(componentType) + ")";
+			return erasedName(type) + ".class";
+		case DECLARED:
+			DeclaredType declaredType = (DeclaredType) type;
+			if (declaredType.getTypeArguments().isEmpty())
+				return erasedName(type) + ".class";
+			Element enclosingElement = declaredType.asElement().getEnclosingElement();
+			String ownerType = enclosingElement instanceof TypeElement
+					? ((TypeElement) enclosingElement).getQualifiedName() + ".class" : "null";
+			StringBuilder result = new StringBuilder(GSON_TYPES).append(".newParameterizedTypeWithOwner(")
+					.append(ownerType).append(", ").append(erasedName(type)).append(".class");
+			for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+				result.append(", ").append(typeExpression(typeArgument));
+			}
+			return result.append(')').toString();
+		case WILDCARD:
+			WildcardType wildcardType = (WildcardType) type;
+			if (wildcardType.getSuperBound() != null)
+				return GSON_TYPES + ".supertypeOf(" + typeExpression(wildcardType.getSuperBound()) + ")";
+			if (wildcardType.getExtendsBound() != null)
+				return GSON_TYPES + ".subtypeOf(" + typeExpression(wildcardType.getExtendsBound()) + ")";
+			return GSON_TYPES + ".subtypeOf(java.lang.Object.class)";
+		default:
+			return type.getKind().name().toLowerCase() + ".class";
+		}
+	}
+
+	private boolean isParameterized(TypeMirror type) {
+		if (type.getKind() == TypeKind.ARRAY)
+			return isParameterized(((ArrayType) type).getComponentType());
+		return type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+	}
+
+	private String literal(String value) {
+		return elements.getConstantExpression(value);
+	}
+
+	private ServiceGenerator line(int indent, String text) {
+		for (int i = 0; i < indent; i++) {
+			out.append('\t');
+		}
+		out.append(text).append('\n');
+		return this;
+	}
+
+}
@@ -0,0 +1,422 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.processor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.services.GeneratedService;
+import org.eclipse.lsp4j.jsonrpc.services.JsonDelegate;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.eclipse.lsp4j.jsonrpc.services.JsonSegment;
+
+/**
+ * The JSON-RPC methods of a class or interface, collected at compile time from its type hierarchy in the same order
+ * and with the same rules as {@link org.eclipse.lsp4j.jsonrpc.services.AnnotationUtil} collects them at runtime.
+ */
+final class ServiceModel {
+
+	private static final String REQUEST_SIGNATURE = "request(java.lang.String,java.lang.Object)";
+	private static final String NOTIFY_SIGNATURE = "notify(java.lang.String,java.lang.Object)";
+
+	/**
+	 * Thrown if no code can be generated for a type, so it is left to reflection at runtime.
+	 */
+	static class UnsupportedTypeException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final boolean incomplete;
+
+		UnsupportedTypeException(String message, boolean incomplete) {
+			super(message);
+			this.incomplete = incomplete;
+		}
+
+		/**
+		 * Whether the type refers to types that are not available yet, e.g. because they are generated in a later
+		 * processing round.
+		 */
+		boolean isIncomplete() {
+			return incomplete;
+		}
+	}
+
+	static class RpcMethod {
+		final String name;
+		final boolean notification;
+		final ExecutableElement method;
+		final TypeElement declaringType;
+
+		RpcMethod(String name, boolean notification, ExecutableElement method, TypeElement declaringType) {
+			this.name = name;
+			this.notification = notification;
+			this.method = method;
+			this.declaringType = declaringType;
+		}
+	}
+
+	/**
+	 * Analyze the given type.
+	 *
+	 * @return the model, or {@code null} if the type has no JSON-RPC methods
+	 * @throws UnsupportedTypeException if no code can be generated for the type
+	 */
+	static ServiceModel create(TypeElement type, ProcessingEnvironment processingEnv) {
+		ServiceModel model = new ServiceModel(type, processingEnv);
+		if (!model.isCandidate())
+			return null;
+		model.analyze();
+		if (model.methods.isEmpty() && model.delegates.isEmpty())
+			return null;
+		return model;
+	}
+
+	final TypeElement type;
+	final String packageName;
+	final String generatedName;
+	final boolean isInterface;
+
+	/** The request and notification methods of the type hierarchy, as registered by a {@code GenericEndpoint}. */
+	final List<RpcMethod> methods = new ArrayList<>();
+	/** The delegate methods of the type hierarchy. */
+	final List<ExecutableElement> delegates = new ArrayList<>();
+	final Set<TypeElement> methodTypes = new LinkedHashSet<>();
+	final Set<TypeElement> delegateTypes = new LinkedHashSet<>();
+	/** The methods of the type and its delegates, as returned by {@code ServiceEndpoints.getSupportedMethods}. */
+	final Map<String, RpcMethod> supportedMethods = new LinkedHashMap<>();
+	/** The abstract methods of an interface that are not JSON-RPC methods, so the proxy cannot forward them. */
+	final List<ExecutableElement> unsupportedMethods = new ArrayList<>();
+
+	private final Elements elements;
+	private final Types types;
+	private final Set<TypeElement> delegateStack = new HashSet<>();
+
+	private ServiceModel(TypeElement type, ProcessingEnvironment processingEnv) {
+		this.type = type;
+		this.elements = processingEnv.getElementUtils();
+		this.types = processingEnv.getTypeUtils();
+		this.packageName = elements.getPackageOf(type).getQualifiedName().toString();
+		String binaryName = elements.getBinaryName(type).toString();
+		this.generatedName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+				+ GeneratedService.CLASS_NAME_SUFFIX;
+		this.isInterface = type.getKind() == ElementKind.INTERFACE;
+	}
+
+	String getQualifiedGeneratedName() {
+		return packageName.isEmpty() ? generatedName : packageName + '.' + generatedName;
+	}
+
+	/**
+	 * Whether the type could get a generated class: a non-generic interface or concrete class that is accessible from
+	 * its package and is not part of a generated class.
+	 */
+	private boolean isCandidate() {
+		if (type.getKind() != ElementKind.INTERFACE && type.getKind() != ElementKind.CLASS)
+			return false;
+		if (type.getNestingKind() != NestingKind.TOP_LEVEL && type.getNestingKind() != NestingKind.MEMBER)
+			return false;
+		if (!isInterface && type.getModifiers().contains(Modifier.ABSTRACT))
+			return false;
+		if (!type.getTypeParameters().isEmpty() || !isAccessible(type))
+			return false;
+		TypeElement outermost = type;
+		while (outermost.getEnclosingElement() instanceof TypeElement) {
+			outermost = (TypeElement) outermost.getEnclosingElement();
+			if (!outermost.getTypeParameters().isEmpty())
+				return false;
+		}
+		TypeElement generatedService = elements.getTypeElement(GeneratedService.class.getName());
+		return generatedService == null
+				|| !types.isSubtype(types.erasure(outermost.asType()), types.erasure(generatedService.asType()));
+	}
+
+	private void analyze() {
+		Set<String> names = new HashSet<>();
+		findRpcMethods(type, new HashSet<>(), (method) -> {
+			if (!names.add(method.name))
+				throw new UnsupportedTypeException("Multiple methods for name " + method.name, false);
+			checkInvocable(method.method, method.declaringType);
+			methods.add(method);
+			methodTypes.add(method.declaringType);
+		});
+		findDelegates(type, new HashSet<>(), (method) -> {
+			checkInvocable(method, (TypeElement) method.getEnclosingElement());
+			delegates.add(method);
+			delegateTypes.add((TypeElement) method.getEnclosingElement());
+		});
+		supportedMethods.putAll(getSupportedMethods(type, new HashSet<>()));
+		if (isInterface)
+			analyzeProxy();
+	}
+
+	/**
+	 * Depth first search for annotated methods in the hierarchy, see
+	 * {@link org.eclipse.lsp4j.jsonrpc.services.AnnotationUtil#findRpcMethods}.
+	 */
+	private void findRpcMethods(TypeElement current, Set<TypeElement> visited, Consumer<RpcMethod> acceptor) {
+		if (current == null || !visited.add(current))
+			return;
+		findRpcMethods(getSuperclass(current), visited, acceptor);
+		for (TypeMirror interface_ : current.getInterfaces()) {
+			findRpcMethods(asTypeElement(interface_), visited, acceptor);
+		}
+		JsonSegment jsonSegment = current.getAnnotation(JsonSegment.class);
+		String segment = jsonSegment == null ? "" : jsonSegment.value() + "/";
+		for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+			JsonRequest jsonRequest = method.getAnnotation(JsonRequest.class);
+			if (jsonRequest != null) {
+				acceptor.accept(createRpcMethod(method, current, false, jsonRequest.useSegment(), segment, jsonRequest.value()));
+				continue;
+			}
+			JsonNotification jsonNotification = method.getAnnotation(JsonNotification.class);
+			if (jsonNotification != null) {
+				acceptor.accept(createRpcMethod(method, current, true, jsonNotification.useSegment(), segment, jsonNotification.value()));
+			}
+		}
+	}
+
+	private RpcMethod createRpcMethod(ExecutableElement method, TypeElement declaringType, boolean notification,
+			boolean useSegment, String segment, String value) {
+		String name = value != null && value.length() > 0 ? value : method.getSimpleName().toString();
+		RpcMethod rpcMethod = new RpcMethod(useSegment ? segment + name : name, notification, method, declaringType);
+		if (method.getModifiers().contains(Modifier.STATIC) || !method.getTypeParameters().isEmpty())
+			throw new UnsupportedTypeException("Unsupported method " + method, false);
+		for (VariableElement parameter : method.getParameters()) {
+			checkType(parameter.asType());
+		}
+		if (notification) {
+			if (method.getReturnType().getKind() != TypeKind.VOID)
+				throw new UnsupportedTypeException("Notification method does not return void: " + method, false);
+		} else {
+			TypeMirror returnType = method.getReturnType();
+			checkType(returnType);
+			TypeElement future = elements.getTypeElement(CompletableFuture.class.getName());
+			if (returnType.getKind() != TypeKind.DECLARED || ((DeclaredType) returnType).getTypeArguments().size() != 1
+					|| !types.isSameType(types.erasure(returnType), types.erasure(future.asType())))
+				throw new UnsupportedTypeException("Request method does not return a CompletableFuture: " + method, false);
+		}
+		return rpcMethod;
+	}
+
+	/**
+	 * Depth first search for delegate methods in the hierarchy, see
+	 * {@link org.eclipse.lsp4j.jsonrpc.services.AnnotationUtil#findDelegateSegments}.
+	 */
+	private void findDelegates(TypeElement current, Set<TypeElement> visited, Consumer<ExecutableElement> acceptor) {
+		if (current == null || !visited.add(current))
+			return;
+		findDelegates(getSuperclass(current), visited, acceptor);
+		for (TypeMirror interface_ : current.getInterfaces()) {
+			findDelegates(asTypeElement(interface_), visited, acceptor);
+		}
+		for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+			if (method.getAnnotation(JsonDelegate.class) != null) {
+				TypeMirror returnType = method.getReturnType();
+				if (!method.getParameters().isEmpty() || returnType.getKind() != TypeKind.DECLARED
+						|| asTypeElement(returnType).getKind() != ElementKind.INTERFACE
+						|| method.getModifiers().contains(Modifier.STATIC) || !method.getTypeParameters().isEmpty())
+					throw new UnsupportedTypeException("Not a proper @JsonDelegate method: " + method, false);
+				checkType(returnType);
+				acceptor.accept(method);
+			}
+		}
+	}
+
+	/**
+	 * The methods of the given type and its delegates, see
+	 * {@link org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints#getSupportedMethods(Class)}.
+	 */
+	private Map<String, RpcMethod> getSupportedMethods(TypeElement current, Set<TypeElement> visitedTypes) {
+		if (!delegateStack.add(current))
+			throw new UnsupportedTypeException("Cyclic delegates in " + current, false);
+		Map<String, RpcMethod> result = new LinkedHashMap<>();
+		findRpcMethods(current, visitedTypes, (method) -> {
+			if (result.put(method.name, method) != null)
+				throw new UnsupportedTypeException("Duplicate RPC method " + method.name, false);
+		});
+		findDelegates(current, new HashSet<>(), (method) -> {
+			TypeElement delegateType = asTypeElement(types.erasure(method.getReturnType()));
+			for (RpcMethod delegateMethod : getSupportedMethods(delegateType, visitedTypes).values()) {
+				if (result.put(delegateMethod.name, delegateMethod) != null)
+					throw new UnsupportedTypeException("Duplicate RPC method " + delegateMethod.name, false);
+			}
+		});
+		delegateStack.remove(current);
+		return result;
+	}
+
+	/**
+	 * Check that the proxy class can implement the interface: the JSON-RPC methods must have distinct names, and all
+	 * other abstract methods must have signatures that can be implemented.
+	 */
+	private void analyzeProxy() {
+		Set<String> names = new HashSet<>();
+		Set<String> signatures = new HashSet<>();
+		// The methods of Endpoint and Object are implemented by the proxy
+		signatures.add(REQUEST_SIGNATURE);
+		signatures.add(NOTIFY_SIGNATURE);
+		signatures.add("equals(java.lang.Object)");
+		signatures.add("hashCode()");
+		signatures.add("toString()");
+		for (RpcMethod method : methods) {
+			if (!names.add(method.method.getSimpleName().toString()) || !signatures.add(getSignature(method.method)))
+				throw new UnsupportedTypeException("Method overload not allowed: " + method.method, false);
+		}
+		for (ExecutableElement method : delegates) {
+			if (!names.add(method.getSimpleName().toString()) || !signatures.add(getSignature(method)))
+				throw new UnsupportedTypeException("Method overload not allowed: " + method, false);
+		}
+		TypeElement endpoint = elements.getTypeElement(Endpoint.class.getName());
+		boolean isEndpoint = endpoint != null && types.isAssignable(type.asType(), endpoint.asType());
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+			String signature = getSignature(method);
+			if (!isEndpoint && (signature.equals(REQUEST_SIGNATURE) || signature.equals(NOTIFY_SIGNATURE)))
+				throw new UnsupportedTypeException("Method clashes with Endpoint: " + method, false);
+			if (method.getModifiers().contains(Modifier.ABSTRACT) && signatures.add(signature)) {
+				if (!method.getTypeParameters().isEmpty())
+					throw new UnsupportedTypeException("Unsupported method " + method, false);
+				checkType(method.getReturnType());
+				for (VariableElement parameter : method.getParameters()) {
+					checkType(parameter.asType());
+				}
+				unsupportedMethods.add(method);
+			}
+		}
+	}
+
+	private String getSignature(ExecutableElement method) {
+		StringBuilder result = new StringBuilder(method.getSimpleName()).append('(');
+		List<? extends VariableElement> parameters = method.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i > 0)
+				result.append(',');
+			result.append(types.erasure(parameters.get(i).asType()));
+		}
+		return result.append(')').toString();
+	}
+
+	/**
+	 * Check that the generated class can refer to the given method of a service object.
+	 */
+	private void checkInvocable(ExecutableElement method, TypeElement declaringType) {
+		checkAccessible(declaringType);
+		Set<Modifier> modifiers = method.getModifiers();
+		if (modifiers.contains(Modifier.PRIVATE)
+				|| !modifiers.contains(Modifier.PUBLIC) && !getPackageName(declaringType).equals(packageName))
+			throw new UnsupportedTypeException("Method is not accessible: " + method, false);
+	}
+
+	/**
+	 * Check that the given type can be written in the source code and as {@code java.lang.reflect.Type} of the
+	 * generated class.
+	 */
+	private void checkType(TypeMirror typeMirror) {
+		switch (typeMirror.getKind()) {
+		case BOOLEAN:
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+		case CHAR:
+		case FLOAT:
+		case DOUBLE:
+		case VOID:
+			return;
+		case ARRAY:
+			checkType(((ArrayType) typeMirror).getComponentType());
+			return;
+		case DECLARED:
+			DeclaredType declaredType = (DeclaredType) typeMirror;
+			checkAccessible(asTypeElement(declaredType));
+			TypeMirror enclosingType = declaredType.getEnclosingType();
+			if (enclosingType.getKind() == TypeKind.DECLARED && !((DeclaredType) enclosingType).getTypeArguments().isEmpty())
+				throw new UnsupportedTypeException("Unsupported type " + typeMirror, false);
+			for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+				checkType(typeArgument);
+			}
+			return;
+		case WILDCARD:
+			WildcardType wildcardType = (WildcardType) typeMirror;
+			if (wildcardType.getExtendsBound() != null)
+				checkType(wildcardType.getExtendsBound());
+			if (wildcardType.getSuperBound() != null)
+				checkType(wildcardType.getSuperBound());
+			return;
+		case ERROR:
+			throw new UnsupportedTypeException("Unresolved type " + typeMirror, true);
+		default:
+			throw new UnsupportedTypeException("Unsupported type " + typeMirror, false);
+		}
+	}
+
+	private void checkAccessible(TypeElement typeElement) {
+		if (!isAccessible(typeElement))
+			throw new UnsupportedTypeException("Type is not accessible: " + typeElement, false);
+	}
+
+	/**
+	 * Whether the given type is accessible from the package of the generated class.
+	 */
+	private boolean isAccessible(TypeElement typeElement) {
+		Element current = typeElement;
+		while (current instanceof TypeElement) {
+			Set<Modifier> modifiers = current.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE))
+				return false;
+			if (!modifiers.contains(Modifier.PUBLIC) && !getPackageName(current).equals(packageName))
+				return false;
+			current = current.getEnclosingElement();
+		}
+		return current instanceof PackageElement;
+	}
+
+	private String getPackageName(Element element) {
+		return elements.getPackageOf(element).getQualifiedName().toString();
+	}
+
+	private TypeElement getSuperclass(TypeElement current) {
+		TypeMirror superclass = current.getSuperclass();
+		if (superclass.getKind() == TypeKind.NONE)
+			return null;
+		return asTypeElement(superclass);
+	}
+
+	private TypeElement asTypeElement(TypeMirror typeMirror) {
+		if (typeMirror.getKind() == TypeKind.ERROR)
+			throw new UnsupportedTypeException("Unresolved type " + typeMirror, true);
+		return (TypeElement) types.asElement(typeMirror);
+	}
+
+}
@@ -9,13 +9,52 @@ package org.eclipse.lsp4j.jsonrpc.services;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 
 public final class AnnotationUtil {
 	private AnnotationUtil() {}
 	
+	/**
+	 * The annotated methods declared by each class, computed once per class.
+	 *
+	 * <p>The caches of this library are {@link ClassValue}s rather than maps, since a class value is held by the
+	 * class it is attached to: the cache alone does not keep the class and its class loader alive. This only holds
+	 * as long as the cached value does not reference classes of another class loader that the class does not
+	 * already depend on. A value attached to a class of a parent loader and referencing classes of a child loader
+	 * keeps the child loader alive, and so does a value of this library attached to a class of the JDK. The values
+	 * here only reference the class and the types of its methods, and classes without annotated methods, e.g. the
+	 * classes of the JDK, get an empty list of the JDK.</p>
+	 */
+	private static final ClassValue<List<MethodInfo>> DECLARED_RPC_METHODS = new ClassValue<List<MethodInfo>>() {
+		@Override
+		protected List<MethodInfo> computeValue(Class<?> clazz) {
+			String segment = getSegment(clazz);
+			List<MethodInfo> result = new ArrayList<>();
+			for (Method method : clazz.getDeclaredMethods()) {
+				MethodInfo methodInfo = createMethodInfo(method, segment);
+				if (methodInfo != null) {
+					result.add(methodInfo);
+				}
+			}
+			return result.isEmpty() ? Collections.emptyList() : result;
+		}
+	};
+	
+	/**
+	 * The delegate methods declared by each class, computed once per class.
+	 */
+	private static final ClassValue<Method[]> DECLARED_DELEGATE_METHODS = new ClassValue<Method[]>() {
+		@Override
+		protected Method[] computeValue(Class<?> clazz) {
+			return Arrays.stream(clazz.getDeclaredMethods()).filter(AnnotationUtil::isDelegateMethod).toArray(Method[]::new);
+		}
+	};
+	
 	public static void findDelegateSegments(Class<?> clazz, Set<Class<?>> visited, Consumer<Method> acceptor) {
 		if (clazz == null || !visited.add(clazz))
 			return;
@@ -23,10 +62,8 @@ public final class AnnotationUtil {
 		for (Class<?> interf : clazz.getInterfaces()) {
 			findDelegateSegments(interf, visited, acceptor);
 		}
-		for (Method method : clazz.getDeclaredMethods()) {
-			if (isDelegateMethod(method)) {
-				acceptor.accept(method);
-			}
+		for (Method method : DECLARED_DELEGATE_METHODS.get(clazz)) {
+			acceptor.accept(method);
 		}
 	}
 
@@ -46,7 +83,8 @@ public final class AnnotationUtil {
 	
 
 	/**
-	 * Depth first search for annotated methods in hierarchy.
+	 * Depth first search for annotated methods in hierarchy. The method infos are shared, so the acceptor must not
+	 * modify them.
 	 */
 	public static void findRpcMethods(Class<?> clazz, Set<Class<?>> visited, Consumer<MethodInfo> acceptor) {
 		if (clazz == null || !visited.add(clazz))
@@ -55,12 +93,8 @@ public final class AnnotationUtil {
 		for (Class<?> interf : clazz.getInterfaces()) {
 			findRpcMethods(interf, visited, acceptor);
 		}
-		String segment = getSegment(clazz);
-		for (Method method : clazz.getDeclaredMethods()) {
-			MethodInfo methodInfo = createMethodInfo(method, segment);
-			if (methodInfo != null) {
-				acceptor.accept(methodInfo);
-			}
+		for (MethodInfo methodInfo : DECLARED_RPC_METHODS.get(clazz)) {
+			acceptor.accept(methodInfo);
 		}
 	}
 
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.services;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+
+/**
+ * Limits the number of concurrently executing invocations of a JSON-RPC method or a group of methods, so a client
+ * that floods the server with one kind of request cannot occupy all handler threads. A request counts as executing
+ * from the call of its handler until the returned future is completed.
+ *
+ * <p>Invocations that exceed the limit are queued up to a bound and started when a running invocation completes.
+ * Requests beyond that bound are rejected with a {@link ResponseErrorCode#ServerCancelled} error, and
+ * notifications are dropped. Queued notifications may be handled after later messages of other methods.</p>
+ *
+ * <p>A queued handler is called on the thread that completes a running invocation, i.e. the thread that completes
+ * the future returned by a request handler or the thread that has called a notification handler. If that thread
+ * starts several queued handlers in turn, e.g. because they return completed futures, it calls them one after
+ * another without nesting.</p>
+ *
+ * <p>Register a bulkhead for one or more methods with {@link GenericEndpoint#setBulkhead(String, Bulkhead)} or
+ * {@link org.eclipse.lsp4j.jsonrpc.Launcher.Builder#setBulkhead(Bulkhead, String...)}.</p>
+ */
+public class Bulkhead {
+
+	private static final Logger LOG = Logger.getLogger(Bulkhead.class.getName());
+
+	/**
+	 * Counters of the invocations of one method.
+	 */
+	public static class Counters {
+		private final AtomicLong started = new AtomicLong();
+		private final AtomicLong queued = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+
+		/** The number of invocations that have been started, including the ones that have been queued before. */
+		public long getStarted() {
+			return started.get();
+		}
+
+		/** The number of invocations that had to wait in the queue. */
+		public long getQueued() {
+			return queued.get();
+		}
+
+		/** The number of invocations that have been rejected because the queue was full. */
+		public long getRejected() {
+			return rejected.get();
+		}
+	}
+
+	private final String name;
+	private final int maxConcurrent;
+	private final int maxQueued;
+	private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+	private final Object lock = new Object();
+	private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+	private int activeCount;
+	/** The number of releases that the current thread has still to process, see {@link #release()}. */
+	private final ThreadLocal<int[]> pendingReleases = ThreadLocal.withInitial(() -> new int[1]);
+
+	/**
+	 * @param name - a name for log messages, e.g. the name of the method group
+	 * @param maxConcurrent - the maximal number of concurrently executing invocations
+	 * @param maxQueued - the maximal number of invocations that wait for one of the running invocations
+	 */
+	public Bulkhead(String name, int maxConcurrent, int maxQueued) {
+		if (maxConcurrent <= 0)
+			throw new IllegalArgumentException("maxConcurrent must be positive");
+		if (maxQueued < 0)
+			throw new IllegalArgumentException("maxQueued must not be negative");
+		this.name = name;
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueued = maxQueued;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	/**
+	 * The number of currently executing invocations.
+	 */
+	public int getActiveCount() {
+		synchronized (lock) {
+			return activeCount;
+		}
+	}
+
+	/**
+	 * The number of invocations waiting in the queue.
+	 */
+	public int getQueueSize() {
+		synchronized (lock) {
+			return queue.size();
+		}
+	}
+
+	/**
+	 * The counters of the given method, or {@code null} if it has not been invoked through this bulkhead.
+	 */
+	public Counters getCounters(String method) {
+		return counters.get(method);
+	}
+
+	/**
+	 * Invoke a request handler within the limits of this bulkhead.
+	 *
+	 * @param method - the name of the requested method
+	 * @param invocation - calls the handler and returns its result
+	 * @return the result of the handler, a future for a queued invocation, or an exceptionally completed future
+	 *     if the request has been rejected
+	 */
+	public CompletableFuture<?> request(String method, Supplier<? extends CompletableFuture<?>> invocation) {
+		Counters methodCounters = counters.computeIfAbsent(method, m -> new Counters());
+		QueuedRequest queued;
+		synchronized (lock) {
+			if (activeCount < maxConcurrent) {
+				activeCount++;
+				queued = null;
+			} else if (queue.size() < maxQueued) {
+				queued = new QueuedRequest(methodCounters, invocation);
+				queue.add(queued);
+			} else {
+				methodCounters.rejected.incrementAndGet();
+				String message = "The request '" + method + "' has been rejected since the server is busy ("
+						+ name + ": " + maxConcurrent + " running, " + maxQueued + " queued)";
+				CompletableFuture<Object> result = new CompletableFuture<>();
+				result.completeExceptionally(new ResponseErrorException(new ResponseError(ResponseErrorCode.ServerCancelled, message, null)));
+				return result;
+			}
+		}
+		if (queued != null) {
+			methodCounters.queued.incrementAndGet();
+			return queued.result;
+		}
+		methodCounters.started.incrementAndGet();
+		return start(invocation);
+	}
+
+	/**
+	 * Invoke a notification handler within the limits of this bulkhead. If the bulkhead is full, the notification
+	 * is dropped.
+	 *
+	 * @param method - the name of the notified method
+	 * @param invocation - calls the handler
+	 */
+	public void notify(String method, Runnable invocation) {
+		Counters methodCounters = counters.computeIfAbsent(method, m -> new Counters());
+		Runnable task = () -> {
+			methodCounters.started.incrementAndGet();
+			runNotification(invocation);
+		};
+		synchronized (lock) {
+			if (activeCount < maxConcurrent) {
+				activeCount++;
+			} else if (queue.size() < maxQueued) {
+				queue.add(task);
+				methodCounters.queued.incrementAndGet();
+				return;
+			} else {
+				methodCounters.rejected.incrementAndGet();
+				LOG.warning("The notification '" + method + "' has been dropped since the server is busy (" + name + ")");
+				return;
+			}
+		}
+		task.run();
+	}
+
+	private CompletableFuture<?> start(Supplier<? extends CompletableFuture<?>> invocation) {
+		CompletableFuture<?> future;
+		try {
+			future = invocation.get();
+		} catch (RuntimeException | Error throwable) {
+			release();
+			throw throwable;
+		}
+		if (future == null)
+			release();
+		else
+			future.whenComplete((result, throwable) -> release());
+		return future;
+	}
+
+	private void runNotification(Runnable invocation) {
+		try {
+			invocation.run();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Free the slot of a completed invocation and hand it to the next queued invocation, if any. The next
+	 * invocation may complete immediately and release its slot again; such nested releases are only counted and
+	 * processed by the outermost call in a loop, so draining a long queue does not overflow the stack.
+	 */
+	private void release() {
+		int[] pending = pendingReleases.get();
+		if (pending[0] > 0) {
+			pending[0]++;
+			return;
+		}
+		pending[0] = 1;
+		try {
+			while (pending[0] > 0) {
+				Runnable next;
+				synchronized (lock) {
+					next = queue.poll();
+					if (next == null)
+						activeCount--;
+				}
+				if (next != null) {
+					// The next invocation takes over the slot and releases it when it completes
+					try {
+						next.run();
+					} catch (RuntimeException | Error exception) {
+						LOG.log(Level.WARNING, "Queued invocation threw an exception: " + exception.getMessage(), exception);
+					}
+				}
+				pending[0]--;
+			}
+		} finally {
+			pending[0] = 0;
+		}
+	}
+
+	/**
+	 * A request that waits in the queue. Cancelling its result removes it from the queue or cancels the running
+	 * handler.
+	 */
+	private class QueuedRequest implements Runnable {
+		final Counters counters;
+		final Supplier<? extends CompletableFuture<?>> invocation;
+		volatile CompletableFuture<?> started;
+		final CompletableFuture<Object> result = new CompletableFuture<Object>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				synchronized (lock) {
+					queue.remove(QueuedRequest.this);
+				}
+				CompletableFuture<?> future = started;
+				if (future != null)
+					future.cancel(mayInterruptIfRunning);
+				return super.cancel(mayInterruptIfRunning);
+			}
+		};
+
+		QueuedRequest(Counters counters, Supplier<? extends CompletableFuture<?>> invocation) {
+			this.counters = counters;
+			this.invocation = invocation;
+		}
+
+		@Override
+		public void run() {
+			if (result.isDone()) {
+				release();
+				return;
+			}
+			counters.started.incrementAndGet();
+			CompletableFuture<?> future;
+			try {
+				future = start(invocation);
+			} catch (RuntimeException | Error throwable) {
+				result.completeExceptionally(throwable);
+				return;
+			}
+			if (future == null) {
+				result.complete(null);
+				return;
+			}
+			started = future;
+			future.whenComplete((value, throwable) -> {
+				if (throwable != null)
+					result.completeExceptionally(throwable);
+				else
+					result.complete(value);
+			});
+			if (result.isCancelled())
+				future.cancel(true);
+		}
+	}
+
+}
@@ -15,6 +15,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.lsp4j.jsonrpc.Endpoint;
 import org.eclipse.lsp4j.jsonrpc.services.AnnotationUtil.DelegateInfo;
@@ -26,6 +28,9 @@ import org.eclipse.lsp4j.jsonrpc.services.AnnotationUtil.MethodInfo;
  */
 public class EndpointProxy implements InvocationHandler {
 	
+	private static final Object[] NO_ARGUMENTS = {};
+	private static final Object NO_INFO = new Object();
+	
 	private final Method object_equals;
 	private final Method object_hashCode;
 	private final Method object_toString;
@@ -33,6 +38,8 @@ public class EndpointProxy implements InvocationHandler {
 	private final Endpoint delegate;
 	private final LinkedHashMap<String, MethodInfo> methodInfos;
 	private final LinkedHashMap<String, DelegateInfo> delegatedSegments;
+	/** The information for each invoked method, so the name lookup is done only once per method. */
+	private final Map<Method, Object> invocationCache = new ConcurrentHashMap<>();
 
 	public EndpointProxy(Endpoint delegate, Class<?> interface_) {
 		this(delegate, Collections.singletonList(interface_));
@@ -76,9 +83,18 @@ public class EndpointProxy implements InvocationHandler {
 
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		args = args == null ? new Object[0] : args;
-		MethodInfo methodInfo = this.methodInfos.get(method.getName());
-		if (methodInfo != null) {
+		args = args == null ? NO_ARGUMENTS : args;
+		Object info = invocationCache.get(method);
+		if (info == null) {
+			info = this.methodInfos.get(method.getName());
+			if (info == null)
+				info = this.delegatedSegments.get(method.getName());
+			if (info == null)
+				info = NO_INFO;
+			invocationCache.put(method, info);
+		}
+		if (info instanceof MethodInfo) {
+			MethodInfo methodInfo = (MethodInfo) info;
 			Object params = getParams(args, methodInfo);
 			if (methodInfo.isNotification) {
 				delegate.notify(methodInfo.name, params);
@@ -86,9 +102,8 @@ public class EndpointProxy implements InvocationHandler {
 			}
 			return delegate.request(methodInfo.name, params);
 		}
-		DelegateInfo delegateInfo = this.delegatedSegments.get(method.getName());
-		if (delegateInfo != null) {
-			return delegateInfo.delegate;
+		if (info instanceof DelegateInfo) {
+			return ((DelegateInfo) info).delegate;
 		}
 		if (object_equals.equals(method) && args.length == 1) {
 			try {
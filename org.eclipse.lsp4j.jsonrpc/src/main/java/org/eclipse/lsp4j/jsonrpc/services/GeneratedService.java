@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.services;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+
+/**
+ * Base class of the classes that the {@link org.eclipse.lsp4j.jsonrpc.processor.JsonRpcProcessor} generates at
+ * compile time for classes and interfaces with JSON-RPC methods. A generated class contains the table of supported
+ * methods, a dispatcher that calls the methods of a service object in a switch statement, and for interfaces a
+ * proxy class that forwards to an {@link Endpoint}.
+ *
+ * <p>{@link ServiceEndpoints} and {@link GenericEndpoint} use the generated class of a type when it is present, so
+ * they need not scan the type hierarchy with reflection. For all other types they fall back to reflection. The
+ * generated class of a type has the binary name of the type followed by {@link #CLASS_NAME_SUFFIX}.</p>
+ */
+public abstract class GeneratedService<T> {
+
+	public static final String CLASS_NAME_SUFFIX = "_JsonRpc";
+
+	private static final Logger LOG = Logger.getLogger(GeneratedService.class.getName());
+
+	/**
+	 * The generated class of each type, looked up once per type since a failing lookup is expensive.
+	 */
+	private static final ClassValue<Optional<GeneratedService<?>>> GENERATED = new ClassValue<Optional<GeneratedService<?>>>() {
+		@Override
+		protected Optional<GeneratedService<?>> computeValue(Class<?> type) {
+			return Optional.ofNullable(load(type));
+		}
+	};
+
+	/**
+	 * The generated class of the given type, or {@code null} if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> GeneratedService<T> find(Class<T> type) {
+		return (GeneratedService<T>) GENERATED.get(type).orElse(null);
+	}
+
+	private static GeneratedService<?> load(Class<?> type) {
+		try {
+			// Inspecting the nesting of a class can fail with a LinkageError if its outer class is inconsistent
+			if (type.isArray() || type.isPrimitive() || type.isSynthetic() || type.isAnonymousClass() || type.isLocalClass())
+				return null;
+			ClassLoader classLoader = type.getClassLoader();
+			if (classLoader == null)
+				return null;
+			Class<?> generatedClass = Class.forName(type.getName() + CLASS_NAME_SUFFIX, true, classLoader);
+			if (GeneratedService.class.isAssignableFrom(generatedClass)) {
+				GeneratedService<?> generated = (GeneratedService<?>) generatedClass.getConstructor().newInstance();
+				if (generated.getServiceType() == type)
+					return generated;
+			}
+		} catch (ClassNotFoundException e) {
+			// The type has not been processed
+		} catch (LinkageError e) {
+			LOG.log(Level.FINE, "No generated class for " + type.getName(), e);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.log(Level.WARNING, "Could not load the generated class of " + type.getName(), e);
+		}
+		return null;
+	}
+
+	private final Class<T> serviceType;
+	private final List<String> methodNames;
+	private final List<Class<?>> methodTypes;
+	private final List<Class<?>> delegateTypes;
+
+	/**
+	 * @param serviceType - the type for which the subclass has been generated
+	 * @param methodNames - the names of the request and notification methods of the type hierarchy
+	 * @param methodTypes - the types of the hierarchy that declare request or notification methods
+	 * @param delegateTypes - the types of the hierarchy that declare delegate methods
+	 */
+	protected GeneratedService(Class<T> serviceType, String[] methodNames, Class<?>[] methodTypes, Class<?>[] delegateTypes) {
+		this.serviceType = serviceType;
+		this.methodNames = Collections.unmodifiableList(Arrays.asList(methodNames));
+		this.methodTypes = Collections.unmodifiableList(Arrays.asList(methodTypes));
+		this.delegateTypes = Collections.unmodifiableList(Arrays.asList(delegateTypes));
+	}
+
+	public Class<T> getServiceType() {
+		return serviceType;
+	}
+
+	/**
+	 * The names of the {@link JsonRequest} and {@link JsonNotification} methods declared in the hierarchy of the
+	 * service type, not including the methods of delegates.
+	 */
+	public List<String> getMethodNames() {
+		return methodNames;
+	}
+
+	/**
+	 * The types in the hierarchy of the service type that declare {@link JsonRequest} or {@link JsonNotification}
+	 * methods.
+	 */
+	public List<Class<?>> getMethodTypes() {
+		return methodTypes;
+	}
+
+	/**
+	 * The types in the hierarchy of the service type that declare {@link JsonDelegate} methods.
+	 */
+	public List<Class<?>> getDelegateTypes() {
+		return delegateTypes;
+	}
+
+	/**
+	 * The JSON-RPC methods of the service type and its delegates, as returned by
+	 * {@link ServiceEndpoints#getSupportedMethods(Class)}.
+	 */
+	public abstract Map<String, JsonRpcMethod> getSupportedMethods();
+
+	/**
+	 * Create a proxy that implements the service interface and {@link Endpoint} by forwarding to the given
+	 * endpoint, or return {@code null} if the service type is not an interface.
+	 */
+	public T createProxy(Endpoint endpoint) {
+		return null;
+	}
+
+	/**
+	 * Invoke the request or notification method with the given name on the given service object.
+	 *
+	 * @return the result of a request method, or {@code null} for a notification method
+	 */
+	protected abstract Object invoke(T service, String method, Object arg);
+
+	/**
+	 * Pass the results of the {@link JsonDelegate} methods of the given service object to the acceptor, together
+	 * with the names of the methods.
+	 */
+	protected abstract void getDelegates(T service, BiConsumer<String, Object> acceptor);
+
+	/**
+	 * The arguments for a method with the given number of parameters, see
+	 * {@link GenericEndpoint#getArguments(java.lang.reflect.Method, Object)}.
+	 */
+	protected Object[] getArguments(String method, Object arg, int parameterCount) {
+		return GenericEndpoint.getArguments(method, arg, parameterCount);
+	}
+
+	/**
+	 * The argument for a method with a single parameter.
+	 */
+	protected Object getArgument(String method, Object arg) {
+		return arg instanceof List<?> ? getArguments(method, arg, 1)[0] : arg;
+	}
+
+}
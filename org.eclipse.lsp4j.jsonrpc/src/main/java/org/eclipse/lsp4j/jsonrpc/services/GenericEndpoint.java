@@ -7,16 +7,27 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.services;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,15 +40,21 @@ import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
 
 /**
  * An endpoint that reflectively delegates to {@link JsonNotification} and
- * {@link JsonRequest} methods of one or more given delegate objects.
+ * {@link JsonRequest} methods of one or more given delegate objects. If the
+ * {@link org.eclipse.lsp4j.jsonrpc.processor.JsonRpcProcessor} has generated a
+ * {@link GeneratedService} for the type of a delegate object, the methods are
+ * found and invoked through the generated class instead.
  */
 public class GenericEndpoint implements Endpoint {
 	
 	private static final Logger LOG = Logger.getLogger(GenericEndpoint.class.getName());
 	private static final Object[] NO_ARGUMENTS = {};
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
 
 	private final LinkedHashMap<String, Function<Object, CompletableFuture<Object>>> methodHandlers = new LinkedHashMap<>();
 	private final List<Object> delegates;
+	private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+	private final boolean hasCustomArguments = CUSTOM_ARGUMENTS.get(getClass());
 
 	public GenericEndpoint(Object delegate) {
 		this.delegates = Collections.singletonList(delegate);
@@ -51,18 +68,29 @@ public class GenericEndpoint implements Endpoint {
 		}
 	}
 
+	/**
+	 * Limit the concurrent invocations of the given method with a bulkhead. The same bulkhead can be set for
+	 * multiple methods to limit them as a group. Passing {@code null} removes the bulkhead of the method.
+	 */
+	public void setBulkhead(String method, Bulkhead bulkhead) {
+		if (bulkhead == null)
+			bulkheads.remove(method);
+		else
+			bulkheads.put(method, bulkhead);
+	}
+	
+	/**
+	 * The bulkhead that limits the invocations of the given method, or {@code null}.
+	 */
+	public Bulkhead getBulkhead(String method) {
+		return bulkheads.isEmpty() ? null : bulkheads.get(method);
+	}
+
 	protected void recursiveFindRpcMethods(Object current, Set<Class<?>> visited, Set<Class<?>> visitedForDelegate) {
+		if (registerGeneratedMethods(current, visited, visitedForDelegate))
+			return;
 		AnnotationUtil.findRpcMethods(current.getClass(), visited, (methodInfo) -> {
-			@SuppressWarnings("unchecked")
-			Function<Object, CompletableFuture<Object>> handler = (arg) -> {
-				try {
-					Method method = methodInfo.method;
-					Object[] arguments = this.getArguments(method, arg);
-					return (CompletableFuture<Object>) method.invoke(current, arguments);
-				} catch (InvocationTargetException | IllegalAccessException e) {
-					throw new RuntimeException(e);
-				}
-			};
+			Function<Object, CompletableFuture<Object>> handler = createHandler(methodInfo.method, current);
 			if (methodHandlers.put(methodInfo.name, handler) != null) {
 				throw new IllegalStateException("Multiple methods for name " + methodInfo.name);
 			}
@@ -81,8 +109,240 @@ public class GenericEndpoint implements Endpoint {
 		});
 	}
 	
-	protected Object[] getArguments(Method method, Object arg) {
+	/**
+	 * Register the methods of the given object through the class that the annotation processor has generated for
+	 * its type, if there is one. The generated class is not used if the scan of another object has already visited
+	 * a type of its hierarchy, since only the reflective scan skips exactly the methods of visited types.
+	 * 
+	 * @return {@code true} if the methods have been registered
+	 */
+	private boolean registerGeneratedMethods(Object current, Set<Class<?>> visited, Set<Class<?>> visitedForDelegate) {
+		if (hasCustomArguments)
+			return false;
+		@SuppressWarnings("unchecked")
+		GeneratedService<Object> generated = (GeneratedService<Object>) GeneratedService.find(current.getClass());
+		if (generated == null || !Collections.disjoint(visited, generated.getMethodTypes())
+				|| !Collections.disjoint(visitedForDelegate, generated.getDelegateTypes()))
+			return false;
+		visited.addAll(generated.getMethodTypes());
+		visitedForDelegate.addAll(generated.getDelegateTypes());
+		for (String name : generated.getMethodNames()) {
+			Function<Object, CompletableFuture<Object>> handler = (arg) -> invoke(generated, current, name, arg);
+			if (methodHandlers.put(name, handler) != null) {
+				throw new IllegalStateException("Multiple methods for name " + name);
+			}
+		}
+		generated.getDelegates(current, (methodName, delegate) -> {
+			if (delegate != null) {
+				recursiveFindRpcMethods(delegate, visited, visitedForDelegate);
+			} else {
+				LOG.log(Level.SEVERE, "A delegate object is null, jsonrpc methods of '" + methodName + "' are ignored");
+			}
+		});
+		return true;
+	}
+	
+	/**
+	 * Create a function that invokes the given method on the given object without going through reflection.
+	 * For methods with at most one parameter a class implementing a functional interface is generated with
+	 * {@link LambdaMetafactory}, so the argument is passed without creating an array and the JIT can inline the
+	 * call; other methods are invoked through a method handle. Both are created once per method and only bound
+	 * to the given object here.
+	 */
+	private Function<Object, CompletableFuture<Object>> createHandler(Method method, Object current) {
+		MethodInvoker methodInvoker = null;
+		if (!hasCustomArguments) {
+			methodInvoker = METHOD_INVOKERS.get(method.getDeclaringClass()).computeIfAbsent(method, MethodInvoker::new);
+		}
+		if (methodInvoker == null || methodInvoker.spreader == null) {
+			return (arg) -> {
+				try {
+					Object[] arguments = this.getArguments(method, arg);
+					return toFuture(method.invoke(current, arguments));
+				} catch (InvocationTargetException | IllegalAccessException e) {
+					throw new RuntimeException(e);
+				}
+			};
+		}
+		MethodHandle spreader = methodInvoker.spreader.bindTo(current);
+		Function<Object, Object> invoker = bindFunction(methodInvoker.function, current);
+		if (invoker == null) {
+			return (arg) -> invoke(spreader, getArguments(method, arg));
+		}
+		if (method.getParameterCount() == 0) {
+			return (arg) -> arg != null ? invoke(spreader, getArguments(method, arg)) : invoke(invoker, null);
+		}
+		return (arg) -> arg instanceof List<?> ? invoke(spreader, getArguments(method, arg)) : invoke(invoker, arg);
+	}
+	
+	/**
+	 * The method handle and the generated function of each method, cached at its declaring class.
+	 */
+	private static final ClassValue<Map<Method, MethodInvoker>> METHOD_INVOKERS = new ClassValue<Map<Method, MethodInvoker>>() {
+		@Override
+		protected Map<Method, MethodInvoker> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+	
+	/**
+	 * Invokers of a method that take the object on which the method is invoked as first argument.
+	 */
+	private static class MethodInvoker {
+		/** Takes the object and an array of arguments, or {@code null} if the method is not accessible. */
+		final MethodHandle spreader;
+		/** A {@link Consumer}, {@link Function}, {@link BiConsumer} or {@link BiFunction}, or {@code null}. */
+		final Object function;
+		
+		MethodInvoker(Method method) {
+			MethodHandle handle;
+			try {
+				handle = LOOKUP.unreflect(method);
+			} catch (IllegalAccessException e) {
+				// Fall back to reflection, which reports the problem when the method is invoked
+				spreader = null;
+				function = null;
+				return;
+			}
+			int parameterCount = method.getParameterCount();
+			spreader = handle.asType(MethodType.genericMethodType(parameterCount + 1))
+					.asSpreader(Object[].class, parameterCount);
+			function = createFunction(method, handle);
+		}
+	}
+	
+	/**
+	 * Create a function that takes the object and the argument of the given method with at most one parameter, or
+	 * {@code null} if no such function can be generated, e.g. because the method has a primitive parameter or
+	 * its types are not visible from the class loader of this class.
+	 */
+	private static Object createFunction(Method method, MethodHandle handle) {
 		int parameterCount = method.getParameterCount();
+		if (parameterCount > 1 || parameterCount == 1 && method.getParameterTypes()[0].isPrimitive()
+				|| method.getReturnType().isPrimitive() && method.getReturnType() != void.class)
+			return null;
+		// The generated class is defined in the class loader of this class, which must be able to resolve the
+		// types of the method, otherwise it fails with a NoClassDefFoundError when it is invoked
+		if (!isVisible(method.getDeclaringClass()) || !isVisible(method.getReturnType())
+				|| !Arrays.stream(method.getParameterTypes()).allMatch(GenericEndpoint::isVisible))
+			return null;
+		boolean isVoid = method.getReturnType() == void.class;
+		Class<?> functionType = parameterCount == 0
+				? (isVoid ? Consumer.class : Function.class)
+				: (isVoid ? BiConsumer.class : BiFunction.class);
+		String functionName = isVoid ? "accept" : "apply";
+		MethodType erasedType = MethodType.genericMethodType(parameterCount + 1);
+		if (isVoid)
+			erasedType = erasedType.changeReturnType(void.class);
+		try {
+			CallSite site = LambdaMetafactory.metafactory(LOOKUP, functionName, MethodType.methodType(functionType),
+					erasedType, handle, handle.type());
+			return site.getTarget().invoke();
+		} catch (Throwable t) {
+			LOG.log(Level.FINE, "Could not generate an invoker for " + method, t);
+			return null;
+		}
+	}
+	
+	private static boolean isVisible(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive())
+			return true;
+		try {
+			return Class.forName(type.getName(), false, GenericEndpoint.class.getClassLoader()) == type;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Bind a function created by {@link #createFunction(Method, MethodHandle)} to the given object.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Function<Object, Object> bindFunction(Object function, Object current) {
+		if (function instanceof Consumer<?>) {
+			Consumer<Object> consumer = (Consumer<Object>) function;
+			return (arg) -> {
+				consumer.accept(current);
+				return null;
+			};
+		} else if (function instanceof Function<?, ?>) {
+			Function<Object, Object> getter = (Function<Object, Object>) function;
+			return (arg) -> getter.apply(current);
+		} else if (function instanceof BiConsumer<?, ?>) {
+			BiConsumer<Object, Object> consumer = (BiConsumer<Object, Object>) function;
+			return (arg) -> {
+				consumer.accept(current, arg);
+				return null;
+			};
+		} else if (function instanceof BiFunction<?, ?, ?>) {
+			BiFunction<Object, Object, Object> function2 = (BiFunction<Object, Object, Object>) function;
+			return (arg) -> function2.apply(current, arg);
+		}
+		return null;
+	}
+	
+	private static CompletableFuture<Object> invoke(Function<Object, Object> invoker, Object arg) {
+		try {
+			return toFuture(invoker.apply(arg));
+		} catch (Throwable t) {
+			throw new RuntimeException(new InvocationTargetException(t));
+		}
+	}
+	
+	private static CompletableFuture<Object> invoke(GeneratedService<Object> generated, Object service, String method, Object arg) {
+		try {
+			return toFuture(generated.invoke(service, method, arg));
+		} catch (Throwable t) {
+			throw new RuntimeException(new InvocationTargetException(t));
+		}
+	}
+	
+	private static CompletableFuture<Object> invoke(MethodHandle spreader, Object[] arguments) {
+		try {
+			return toFuture((Object) spreader.invokeExact(arguments));
+		} catch (Throwable t) {
+			throw new RuntimeException(new InvocationTargetException(t));
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static CompletableFuture<Object> toFuture(Object result) {
+		return (CompletableFuture<Object>) result;
+	}
+	
+	/**
+	 * Whether a subclass overrides {@link #getArguments(Method, Object)}, which the method handles would bypass.
+	 */
+	private static final ClassValue<Boolean> CUSTOM_ARGUMENTS = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return overridesGetArguments(type);
+		}
+	};
+	
+	private static boolean overridesGetArguments(Class<?> type) {
+		for (Class<?> c = type; c != GenericEndpoint.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("getArguments", Method.class, Object.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// Check the superclass
+			}
+		}
+		return false;
+	}
+
+	protected Object[] getArguments(Method method, Object arg) {
+		return getArguments(method, arg, method.getParameterCount());
+	}
+	
+	/**
+	 * The arguments for a method with the given number of parameters; the method is only used for log messages.
+	 */
+	static Object[] getArguments(Object method, Object arg, int parameterCount) {
 		if (parameterCount == 0) {
 			if (arg != null) {
 				LOG.warning("Unexpected params '" + arg + "' for '" + method + "' is ignored");
@@ -110,6 +370,13 @@ public class GenericEndpoint implements Endpoint {
 
 	@Override
 	public CompletableFuture<?> request(String method, Object parameter) {
+		Bulkhead bulkhead = getBulkhead(method);
+		if (bulkhead != null)
+			return bulkhead.request(method, () -> handleRequest(method, parameter));
+		return handleRequest(method, parameter);
+	}
+	
+	private CompletableFuture<?> handleRequest(String method, Object parameter) {
 		// Check the registered method handlers
 		Function<Object, CompletableFuture<Object>> handler = methodHandlers.get(method);
 		if (handler != null) {
@@ -142,6 +409,14 @@ public class GenericEndpoint implements Endpoint {
 
 	@Override
 	public void notify(String method, Object parameter) {
+		Bulkhead bulkhead = getBulkhead(method);
+		if (bulkhead != null)
+			bulkhead.notify(method, () -> handleNotification(method, parameter));
+		else
+			handleNotification(method, parameter);
+	}
+	
+	private void handleNotification(String method, Object parameter) {
 		// Check the registered method handlers
 		Function<Object, CompletableFuture<Object>> handler = methodHandlers.get(method);
 		if (handler != null) {
@@ -22,6 +22,19 @@ import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
 public final class ServiceEndpoints {
 	private ServiceEndpoints() {}
 	
+	/**
+	 * The supported methods of each type, computed once per type, so launchers for the same services share them.
+	 */
+	private static final ClassValue<Map<String, JsonRpcMethod>> SUPPORTED_METHODS = new ClassValue<Map<String, JsonRpcMethod>>() {
+		@Override
+		protected Map<String, JsonRpcMethod> computeValue(Class<?> type) {
+			GeneratedService<?> generated = GeneratedService.find(type);
+			if (generated != null)
+				return generated.getSupportedMethods();
+			return getSupportedMethods(type, new HashSet<>());
+		}
+	};
+	
 	/**
 	 * Wraps a given {@link Endpoint} in the given service interface.
 	 * 
@@ -29,6 +42,12 @@ public final class ServiceEndpoints {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T toServiceObject(Endpoint endpoint, Class<T> interface_) {
+		GeneratedService<T> generated = GeneratedService.find(interface_);
+		if (generated != null) {
+			T proxy = generated.createProxy(endpoint);
+			if (proxy != null)
+				return proxy;
+		}
 		Class<?>[] interfArray = new Class[]{interface_, Endpoint.class};
 		EndpointProxy invocationHandler = new EndpointProxy(endpoint, interface_);
 		return (T) Proxy.newProxyInstance(interface_.getClassLoader(), interfArray, invocationHandler);
@@ -71,8 +90,7 @@ public final class ServiceEndpoints {
 	 * @return the supported JsonRpcMethods
 	 */
 	public static Map<String, JsonRpcMethod> getSupportedMethods(Class<?> type) {
-		Set<Class<?>> visitedTypes = new HashSet<>();
-		return getSupportedMethods(type, visitedTypes);
+		return new LinkedHashMap<>(SUPPORTED_METHODS.get(type));
 	}
 	
 	/**
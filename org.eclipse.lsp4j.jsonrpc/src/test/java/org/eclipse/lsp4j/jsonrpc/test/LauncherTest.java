@@ -13,19 +13,34 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.UnixDomainSockets;
+import org.eclipse.lsp4j.jsonrpc.VirtualThreads;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.MessageOutputQueue;
+import org.eclipse.lsp4j.jsonrpc.json.TypeAdapterRegistry;
 import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
 import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
@@ -119,6 +134,29 @@ public class LauncherTest {
 				out.toString());
 	}
 	
+	@Test public void testTypeAdapterRegistry() throws Exception {
+		class JsonHandlerBuilder extends Launcher.Builder<A> {
+			MessageJsonHandler jsonHandler;
+			
+			@Override
+			protected MessageJsonHandler createJsonHandler() {
+				return jsonHandler = super.createJsonHandler();
+			}
+		}
+		// By default the adapters are not shared, so they do not keep the types of a launcher alive
+		JsonHandlerBuilder builder = new JsonHandlerBuilder();
+		builder.setLocalService(new Object()).setRemoteInterface(A.class)
+			.setInput(new ByteArrayInputStream(new byte[0])).setOutput(new ByteArrayOutputStream()).create();
+		Assert.assertNotSame(TypeAdapterRegistry.getDefault().getAdapter(TypeToken.get(Param.class)),
+				builder.jsonHandler.getGson().getAdapter(Param.class));
+		
+		builder = new JsonHandlerBuilder();
+		builder.setLocalService(new Object()).setRemoteInterface(A.class).setTypeAdapterRegistry(TypeAdapterRegistry.getDefault())
+			.setInput(new ByteArrayInputStream(new byte[0])).setOutput(new ByteArrayOutputStream()).create();
+		Assert.assertSame(TypeAdapterRegistry.getDefault().getAdapter(TypeToken.get(Param.class)),
+				builder.jsonHandler.getGson().getAdapter(Param.class));
+	}
+	
 	@Test public void testMultipleServices() throws Exception {
 		final String[] paramA = new String[1];
 		A a = new A() {
@@ -162,4 +200,111 @@ public class LauncherTest {
 				out.toString());
 	}
 	
+	@Test public void testVirtualThreads() throws Exception {
+		Boolean[] virtual = new Boolean[1];
+		B b = new B() {
+			@Override
+			public CompletableFuture<String> ask(Param p) {
+				virtual[0] = VirtualThreads.isVirtual(Thread.currentThread());
+				return CompletableFutures.computeAsync(cancelChecker -> "echo " + p.message);
+			}
+		};
+		String inputMessages = "Content-Length: 69\r\n\r\n"
+			+ "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"ask\",\"params\":{\"message\":\"bar1\"}}";
+		ByteArrayInputStream in = new ByteArrayInputStream(inputMessages.getBytes());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Launcher<A> launcher = new Launcher.Builder<A>()
+				.setLocalService(b)
+				.setRemoteInterface(A.class)
+				.setInput(in)
+				.setOutput(out)
+				.setVirtualThreads(true)
+				.create();
+		
+		launcher.startListening().get(TIMEOUT, TimeUnit.MILLISECONDS);
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (out.size() == 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals(VirtualThreads.isSupported(), virtual[0]);
+		Assert.assertEquals("Content-Length: 47\r\n\r\n" 
+				+ "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":\"echo bar1\"}",
+				out.toString());
+	}
+	
+	@Test public void testOutputQueueWithSingleThreadExecutor() throws Exception {
+		B b = new B() {
+			@Override
+			public CompletableFuture<String> ask(Param p) {
+				return CompletableFuture.completedFuture("echo " + p.message);
+			}
+		};
+		PipedOutputStream inputWriter = new PipedOutputStream();
+		PipedInputStream in = new PipedInputStream(inputWriter);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// The reader occupies the only thread of the executor, so the writer must not depend on it
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Launcher<A> launcher = new Launcher.Builder<A>()
+					.setLocalService(b)
+					.setRemoteInterface(A.class)
+					.setInput(in)
+					.setOutput(out)
+					.setExecutorService(executor)
+					.setOutputQueue(new MessageOutputQueue(10))
+					.create();
+			launcher.startListening();
+			inputWriter.write(("Content-Length: 69\r\n\r\n"
+				+ "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"ask\",\"params\":{\"message\":\"bar1\"}}").getBytes());
+			inputWriter.flush();
+			long end = System.currentTimeMillis() + TIMEOUT;
+			while (out.size() == 0 && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals("Content-Length: 47\r\n\r\n" 
+					+ "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":\"echo bar1\"}",
+					out.toString());
+		} finally {
+			inputWriter.close();
+			executor.shutdown();
+		}
+	}
+	
+	@Test public void testUnixDomainSocket() throws Exception {
+		Assume.assumeTrue(UnixDomainSockets.isSupported());
+		A a = new A() {
+			@Override
+			public void say(Param p) {
+			}
+		};
+		B b = new B() {
+			@Override
+			public CompletableFuture<String> ask(Param p) {
+				return CompletableFuture.completedFuture("echo " + p.message);
+			}
+		};
+		Path directory = Files.createTempDirectory("lsp4j");
+		Path socketFile = directory.resolve("test.sock");
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try (ServerSocketChannel server = UnixDomainSockets.bind(socketFile)) {
+			Future<SocketChannel> accepted = executor.submit(() -> server.accept());
+			try (SocketChannel clientChannel = UnixDomainSockets.connect(socketFile);
+					SocketChannel serverChannel = accepted.get(TIMEOUT, TimeUnit.MILLISECONDS)) {
+				Launcher<A> serverLauncher = Launcher.createLauncher(b, A.class, serverChannel);
+				serverLauncher.startListening();
+				Launcher<B> clientLauncher = Launcher.createLauncher(a, B.class, clientChannel);
+				clientLauncher.startListening();
+
+				B remoteProxy = clientLauncher.getRemoteProxy();
+				for (int i = 0; i < 10; i++) {
+					assertEquals("echo " + i, remoteProxy.ask(new Param(String.valueOf(i))).get(TIMEOUT, TimeUnit.MILLISECONDS));
+				}
+			}
+		} finally {
+			executor.shutdown();
+			Files.deleteIfExists(socketFile);
+			Files.delete(directory);
+		}
+	}
+	
 }
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.AdmissionController;
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.MethodPriorities;
+import org.eclipse.lsp4j.jsonrpc.OrderedMessageDispatcher;
+import org.eclipse.lsp4j.jsonrpc.PriorityScheduler.Priority;
+import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+public class OrderedMessageDispatcherTest {
+
+	private static final long TIMEOUT = 2000;
+
+	private ExecutorService executor;
+	private List<String> consumed;
+	private CountDownLatch blocker;
+	private CountDownLatch done;
+
+	@Before
+	public void setup() {
+		executor = Executors.newCachedThreadPool();
+		consumed = new ArrayList<>();
+		blocker = new CountDownLatch(1);
+	}
+
+	@After
+	public void teardown() {
+		executor.shutdown();
+	}
+
+	private MessageConsumer recorder() {
+		return message -> {
+			String name = message instanceof NotificationMessage ? ((NotificationMessage) message).getMethod()
+					: ((RequestMessage) message).getMethod();
+			if (name.startsWith("block")) {
+				try {
+					blocker.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			if (message instanceof NotificationMessage && ((NotificationMessage) message).getParams() instanceof CancelParams)
+				name += ":" + ((CancelParams) ((NotificationMessage) message).getParams()).getId();
+			synchronized (consumed) {
+				consumed.add(name);
+			}
+			done.countDown();
+		};
+	}
+
+	private static Message notification(String method, String uri) {
+		NotificationMessage message = new NotificationMessage();
+		message.setJsonrpc("2.0");
+		message.setMethod(method);
+		if (uri != null) {
+			JsonObject textDocument = new JsonObject();
+			textDocument.addProperty("uri", uri);
+			JsonObject params = new JsonObject();
+			params.add("textDocument", textDocument);
+			message.setParams(params);
+		}
+		return message;
+	}
+
+	private static RequestMessage request(String id, String method, String uri) {
+		RequestMessage request = new RequestMessage();
+		request.setJsonrpc("2.0");
+		request.setId(id);
+		request.setMethod(method);
+		request.setParams(((NotificationMessage) notification(method, uri)).getParams());
+		return request;
+	}
+
+	private static Message cancel(String id) {
+		NotificationMessage message = new NotificationMessage();
+		message.setJsonrpc("2.0");
+		message.setMethod(MessageJsonHandler.CANCEL_METHOD.getMethodName());
+		CancelParams params = new CancelParams();
+		params.setId(id);
+		message.setParams(params);
+		return message;
+	}
+
+	private void awaitDone() throws InterruptedException {
+		assertTrue("Timeout", done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	private List<String> getConsumed() {
+		synchronized (consumed) {
+			return new ArrayList<>(consumed);
+		}
+	}
+
+	public static class TextDocument {
+		public String getUri() {
+			return "file:///typed";
+		}
+	}
+
+	public static class TypedParams {
+		public TextDocument getTextDocument() {
+			return new TextDocument();
+		}
+	}
+
+	@Test
+	public void testDefaultOrderingKey() {
+		assertEquals("file:///a", OrderedMessageDispatcher.TEXT_DOCUMENT_URI.apply(notification("change", "file:///a")));
+		assertEquals(null, OrderedMessageDispatcher.TEXT_DOCUMENT_URI.apply(notification("initialized", null)));
+		NotificationMessage message = new NotificationMessage();
+		message.setMethod("change");
+		message.setParams(new TypedParams());
+		assertEquals("file:///typed", OrderedMessageDispatcher.TEXT_DOCUMENT_URI.apply(message));
+		message.setParams("no document");
+		assertEquals(null, OrderedMessageDispatcher.TEXT_DOCUMENT_URI.apply(message));
+	}
+
+	@Test
+	public void testOrderPerDocument() throws Exception {
+		OrderedMessageDispatcher dispatcher = new OrderedMessageDispatcher(recorder(), executor);
+		done = new CountDownLatch(1);
+		dispatcher.consume(notification("block1", "file:///a"));
+		dispatcher.consume(notification("change2", "file:///a"));
+		dispatcher.consume(notification("change3", "file:///b"));
+		// The message for another document is not blocked
+		awaitDone();
+		assertEquals(Arrays.asList("change3"), getConsumed());
+
+		done = new CountDownLatch(2);
+		blocker.countDown();
+		awaitDone();
+		assertEquals(Arrays.asList("change3", "block1", "change2"), getConsumed());
+	}
+
+	@Test
+	public void testMessageWithoutKey() throws Exception {
+		OrderedMessageDispatcher dispatcher = new OrderedMessageDispatcher(recorder(), executor);
+		done = new CountDownLatch(4);
+		dispatcher.consume(notification("block1", "file:///a"));
+		dispatcher.consume(notification("initialized", null));
+		dispatcher.consume(notification("change2", "file:///b"));
+		Thread.sleep(100);
+		assertEquals(Arrays.asList(), getConsumed());
+
+		dispatcher.consume(notification("exit", null));
+		blocker.countDown();
+		awaitDone();
+		assertEquals(Arrays.asList("block1", "initialized", "change2", "exit"), getConsumed());
+	}
+
+	@Test
+	public void testHandlerError() throws Exception {
+		MessageConsumer recorder = recorder();
+		OrderedMessageDispatcher dispatcher = new OrderedMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage && ((NotificationMessage) message).getMethod().startsWith("error"))
+				throw new AssertionError("expected");
+			recorder.consume(message);
+		}, executor);
+		done = new CountDownLatch(2);
+		dispatcher.consume(notification("error1", "file:///a"));
+		dispatcher.consume(notification("change2", "file:///a"));
+		dispatcher.consume(notification("initialized", null));
+		// The lane and the barrier are released although the first handler has failed
+		awaitDone();
+		assertEquals(Arrays.asList("change2", "initialized"), getConsumed());
+	}
+
+	@Test
+	public void testCancelPendingRequest() throws Exception {
+		OrderedMessageDispatcher dispatcher = new OrderedMessageDispatcher(recorder(), executor);
+		done = new CountDownLatch(4);
+		dispatcher.consume(notification("block1", "file:///a"));
+		dispatcher.consume(request("2", "hover", "file:///a"));
+
+		dispatcher.consume(cancel("2"));
+		// A cancel notification for an unknown request is consumed immediately
+		dispatcher.consume(cancel("5"));
+		assertEquals(Arrays.asList("$/cancelRequest:5"), getConsumed());
+
+		blocker.countDown();
+		awaitDone();
+		assertEquals(Arrays.asList("$/cancelRequest:5", "block1", "hover", "$/cancelRequest:2"), getConsumed());
+	}
+
+	@Test
+	public void testCancelQueuedRequest() throws Exception {
+		List<Message> responses = Collections.synchronizedList(new ArrayList<>());
+		CompletableFuture<Object> slowResult = new CompletableFuture<>();
+		Endpoint local = new Endpoint() {
+			@Override
+			public void notify(String method, Object parameter) {
+				MessageConsumer blocking = recorder();
+				blocking.consume(notification(method, null));
+			}
+			@Override
+			public CompletableFuture<?> request(String method, Object parameter) {
+				synchronized (consumed) {
+					consumed.add(method);
+				}
+				return "slow".equals(method) ? slowResult : CompletableFuture.completedFuture(method);
+			}
+		};
+		RemoteEndpoint endpoint = new RemoteEndpoint(responses::add, local);
+		OrderedMessageDispatcher dispatcher = new OrderedMessageDispatcher(endpoint, executor);
+		done = new CountDownLatch(1);
+		dispatcher.consume(notification("block1", "file:///a"));
+		dispatcher.consume(request("2", "hover", "file:///a"));
+		dispatcher.consume(request("3", "slow", "file:///b"));
+		long start = System.currentTimeMillis();
+		while (!getConsumed().contains("slow") && System.currentTimeMillis() - start < TIMEOUT) {
+			Thread.sleep(10);
+		}
+
+		// The queued request is answered without being passed to the local endpoint
+		dispatcher.consume(cancel("2"));
+		dispatcher.consume(cancel("3"));
+		blocker.countDown();
+		awaitDone();
+		start = System.currentTimeMillis();
+		while (responses.size() < 2 && System.currentTimeMillis() - start < TIMEOUT) {
+			Thread.sleep(10);
+		}
+		assertEquals(Arrays.asList("slow", "block1"), getConsumed());
+		assertEquals(2, responses.size());
+		for (Message response : responses) {
+			assertEquals(ResponseErrorCode.RequestCancelled.getValue(), ((ResponseMessage) response).getError().getCode());
+		}
+		assertEquals(1, endpoint.getCancelledBeforeStartCount());
+		assertEquals(1, endpoint.getCancelledDuringExecutionCount());
+	}
+
+	@Test
+	public void testAdmissionControl() throws Exception {
+		List<Message> responses = Collections.synchronizedList(new ArrayList<>());
+		Endpoint local = new Endpoint() {
+			@Override
+			public void notify(String method, Object parameter) {
+				recorder().consume(notification(method, null));
+			}
+			@Override
+			public CompletableFuture<?> request(String method, Object parameter) {
+				return CompletableFuture.completedFuture(method);
+			}
+		};
+		RemoteEndpoint endpoint = new RemoteEndpoint(responses::add, local);
+		OrderedMessageDispatcher dispatcher = new OrderedMessageDispatcher(endpoint, executor);
+		AdmissionController controller = new AdmissionController(new MethodPriorities().set("hover", Priority.INTERACTIVE),
+				20, TimeUnit.MILLISECONDS);
+		dispatcher.setAdmissionController(controller);
+		done = new CountDownLatch(2);
+		dispatcher.consume(notification("block1", "file:///a"));
+		dispatcher.consume(request("1", "hover", "file:///a"));
+		Thread.sleep(50);
+		assertEquals(1, controller.getBacklog(Priority.INTERACTIVE));
+
+		// The interactive request waits longer than its target, so normal requests are rejected
+		dispatcher.consume(request("2", "symbol", null));
+		dispatcher.consume(notification("didChange", "file:///b"));
+		assertEquals(1, responses.size());
+		ResponseMessage rejected = (ResponseMessage) responses.get(0);
+		assertEquals("2", rejected.getId());
+		assertEquals(ResponseErrorCode.ServerCancelled.getValue(), rejected.getError().getCode());
+		assertEquals(1, controller.getShedCount());
+		assertEquals(1, controller.getShedCount("symbol"));
+
+		blocker.countDown();
+		awaitDone();
+		long start = System.currentTimeMillis();
+		while (responses.size() < 2 && System.currentTimeMillis() - start < TIMEOUT) {
+			Thread.sleep(10);
+		}
+		assertEquals("hover", ((ResponseMessage) responses.get(1)).getResult());
+		assertEquals(0, controller.getBacklog());
+		assertTrue(getConsumed().contains("didChange"));
+	}
+
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.MethodPriorities;
+import org.eclipse.lsp4j.jsonrpc.PriorityScheduler;
+import org.eclipse.lsp4j.jsonrpc.PriorityScheduler.Priority;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.junit.After;
+import org.junit.Test;
+
+public class PrioritySchedulerTest {
+
+	private static final long TIMEOUT = 2000;
+
+	private PriorityScheduler scheduler;
+
+	@After
+	public void teardown() {
+		if (scheduler != null)
+			scheduler.shutdown();
+	}
+
+	@Test
+	public void testReservedWorkers() throws Exception {
+		scheduler = new PriorityScheduler(2, 1, new MethodPriorities());
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		scheduler.execute(() -> {
+			started.countDown();
+			await(blocker);
+		}, Priority.BACKGROUND);
+		assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		// The second background task waits, but an interactive task runs on the reserved worker
+		CountDownLatch done = new CountDownLatch(2);
+		scheduler.execute(done::countDown, Priority.BACKGROUND);
+		CountDownLatch interactive = new CountDownLatch(1);
+		scheduler.execute(interactive::countDown, Priority.INTERACTIVE);
+		assertTrue(interactive.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Thread.sleep(50);
+		assertEquals(1, scheduler.getQueueDepth(Priority.BACKGROUND));
+
+		scheduler.execute(done::countDown, Priority.NORMAL);
+		blocker.countDown();
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testBackToBackTasks() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			scheduler = new PriorityScheduler(4, 1, new MethodPriorities());
+			// Let a single worker become idle
+			CountDownLatch warmUp = new CountDownLatch(1);
+			scheduler.execute(warmUp::countDown, Priority.URGENT);
+			assertTrue(warmUp.await(TIMEOUT, TimeUnit.MILLISECONDS));
+			Thread.sleep(20);
+
+			// The first task can only complete when the second one runs concurrently
+			CountDownLatch second = new CountDownLatch(1);
+			CountDownLatch done = new CountDownLatch(1);
+			scheduler.execute(() -> {
+				await(second);
+				done.countDown();
+			}, Priority.URGENT);
+			scheduler.execute(second::countDown, Priority.URGENT);
+			assertTrue(second.await(TIMEOUT / 2, TimeUnit.MILLISECONDS));
+			assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testWorkerSurvivesError() throws Exception {
+		scheduler = new PriorityScheduler(1, 0, new MethodPriorities());
+		scheduler.execute(() -> {
+			throw new AssertionError("expected");
+		}, Priority.NORMAL);
+		CountDownLatch done = new CountDownLatch(1);
+		scheduler.execute(done::countDown, Priority.NORMAL);
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testPriorityOrder() throws Exception {
+		scheduler = new PriorityScheduler(1, 0, new MethodPriorities());
+		CountDownLatch blocker = new CountDownLatch(1);
+		scheduler.execute(() -> await(blocker), Priority.URGENT);
+		List<String> order = new ArrayList<>();
+		CountDownLatch done = new CountDownLatch(4);
+		for (Priority priority : Arrays.asList(Priority.BACKGROUND, Priority.NORMAL, Priority.INTERACTIVE, Priority.URGENT)) {
+			scheduler.execute(() -> {
+				synchronized (order) {
+					order.add(priority.name());
+				}
+				done.countDown();
+			}, priority);
+		}
+		blocker.countDown();
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(Arrays.asList("URGENT", "INTERACTIVE", "NORMAL", "BACKGROUND"), order);
+	}
+
+	@Test
+	public void testMethodPriorities() {
+		Properties properties = new Properties();
+		properties.setProperty("textDocument/completion", "INTERACTIVE");
+		properties.setProperty("workspace/symbol", " BACKGROUND ");
+		MethodPriorities priorities = MethodPriorities.load(properties);
+
+		RequestMessage request = new RequestMessage();
+		request.setMethod("textDocument/completion");
+		assertEquals(Priority.INTERACTIVE, priorities.getPriority(request));
+		request.setMethod("workspace/symbol");
+		assertEquals(Priority.BACKGROUND, priorities.getPriority(request));
+		request.setMethod("textDocument/rename");
+		assertEquals(Priority.NORMAL, priorities.getPriority(request));
+
+		NotificationMessage notification = new NotificationMessage();
+		notification.setMethod("textDocument/didChange");
+		assertEquals(Priority.URGENT, priorities.getPriority(notification));
+		priorities.setNotificationPriority(Priority.NORMAL);
+		assertEquals(Priority.NORMAL, priorities.getPriority(notification));
+		notification.setMethod("$/cancelRequest");
+		assertEquals(Priority.URGENT, priorities.getPriority(notification));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
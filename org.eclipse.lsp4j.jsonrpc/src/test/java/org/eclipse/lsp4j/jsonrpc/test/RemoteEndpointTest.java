@@ -8,6 +8,7 @@
 package org.eclipse.lsp4j.jsonrpc.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -22,6 +23,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 
@@ -29,6 +31,9 @@ import org.eclipse.lsp4j.jsonrpc.Endpoint;
 import org.eclipse.lsp4j.jsonrpc.JsonRpcException;
 import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
 import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.jsonrpc.StaleRequestCanceller;
+import org.eclipse.lsp4j.jsonrpc.TimingWheel;
+import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
@@ -182,6 +187,68 @@ public class RemoteEndpointTest {
 		assertEquals(error.getMessage(), "The request (id: 1, method: 'foo') has been cancelled");
 	}
 	
+	@Test
+	public void testStaleRequestCancellation() {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		// Requests refer to a document given as parameter, changes have the form "document@version"
+		StaleRequestCanceller canceller = new StaleRequestCanceller() {
+			@Override
+			protected Object getResource(RequestMessage request) {
+				return "hover".equals(request.getMethod()) ? request.getParams() : null;
+			}
+			@Override
+			protected Object getChangedResource(NotificationMessage notification) {
+				return "change".equals(notification.getMethod()) ? notification.getParams().toString().split("@")[0] : null;
+			}
+			@Override
+			protected Integer getChangedVersion(NotificationMessage notification) {
+				return Integer.valueOf(notification.getParams().toString().split("@")[1]);
+			}
+		};
+		endpoint.setStaleRequestCanceller(canceller);
+		
+		endpoint.consume(init(new NotificationMessage(), it -> {
+			it.setMethod("change");
+			it.setParams("a@2");
+		}));
+		for (String[] request : new String[][] { { "1", "hover", "a" }, { "2", "hover", "b" }, { "3", "format", "a" } }) {
+			endpoint.consume(init(new RequestMessage(), it -> {
+				it.setId(request[0]);
+				it.setMethod(request[1]);
+				it.setParams(request[2]);
+			}));
+		}
+		
+		// An outdated version does not cancel anything
+		endpoint.consume(init(new NotificationMessage(), it -> {
+			it.setMethod("change");
+			it.setParams("a@1");
+		}));
+		assertTrue(consumer.messages.isEmpty());
+		
+		endpoint.consume(init(new NotificationMessage(), it -> {
+			it.setMethod("change");
+			it.setParams("a@3");
+		}));
+		assertEquals(1, consumer.messages.size());
+		ResponseMessage message = (ResponseMessage) consumer.messages.get(0);
+		assertEquals("1", message.getId());
+		assertEquals(ResponseErrorCode.RequestCancelled.getValue(), message.getError().getCode());
+		assertEquals(1, canceller.getCancelledCount());
+		assertEquals(3, endp.notifications.size());
+		
+		// Completed requests are no longer tracked
+		endp.requests.values().forEach(future -> future.complete("done"));
+		endpoint.consume(init(new NotificationMessage(), it -> {
+			it.setMethod("change");
+			it.setParams("b@1");
+		}));
+		assertEquals(3, consumer.messages.size());
+		assertEquals(1, canceller.getCancelledCount());
+	}
+	
 	@Test
 	public void testExceptionInEndpoint() {
 		LogMessageAccumulator logMessages = new LogMessageAccumulator();
@@ -259,6 +326,48 @@ public class RemoteEndpointTest {
 		}
 	}
 	
+	@Test
+	public void testRequestTimeout() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		List<Message> messages = Collections.synchronizedList(new ArrayList<>());
+		RemoteEndpoint endpoint = new RemoteEndpoint(messages::add, endp);
+		TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 64);
+		try {
+			endpoint.setTimingWheel(wheel);
+			endpoint.setRequestTimeout(50, TimeUnit.MILLISECONDS);
+			endpoint.setRequestTimeout("bar", 0, TimeUnit.MILLISECONDS);
+			
+			CompletableFuture<Object> answered = endpoint.request("foo", "myparam");
+			CompletableFuture<Object> unanswered = endpoint.request("foo", "myparam");
+			CompletableFuture<Object> withoutTimeout = endpoint.request("bar", "myparam");
+			endpoint.consume(init(new ResponseMessage(), it -> {
+				it.setId("1");
+				it.setResult("success");
+			}));
+			try {
+				unanswered.get(TIMEOUT, TimeUnit.MILLISECONDS);
+				Assert.fail("Expected an ExecutionException.");
+			} catch (ExecutionException exception) {
+				assertTrue(exception.getCause() instanceof TimeoutException);
+			}
+			assertEquals("success", answered.get());
+			assertFalse(withoutTimeout.isDone());
+			
+			// The remote endpoint is notified that the request is no longer needed
+			long start = System.currentTimeMillis();
+			while (messages.size() < 4 && System.currentTimeMillis() - start < TIMEOUT) {
+				Thread.sleep(10);
+			}
+			assertEquals(4, messages.size());
+			NotificationMessage cancel = (NotificationMessage) messages.get(3);
+			assertEquals("$/cancelRequest", cancel.getMethod());
+			assertEquals("2", ((CancelParams) cancel.getParams()).getId());
+			assertEquals(0, wheel.getPendingCount());
+		} finally {
+			wheel.stop();
+		}
+	}
+	
 	@Test
 	public void testExceptionInOutputStream() throws Exception {
 		LogMessageAccumulator logMessages = new LogMessageAccumulator();
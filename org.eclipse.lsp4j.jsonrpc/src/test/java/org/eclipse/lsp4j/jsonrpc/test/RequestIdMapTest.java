@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.RequestIdMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestIdMapTest {
+
+	@Test
+	public void testNumericIds() {
+		RequestIdMap<String> map = new RequestIdMap<>(4);
+		for (int i = 1; i <= 10; i++) {
+			map.put(String.valueOf(i), "value" + i);
+		}
+		// More ids than slots are pending, so some of them are stored in the overflow map
+		for (int i = 1; i <= 10; i++) {
+			Assert.assertEquals("value" + i, map.get(String.valueOf(i)));
+			Assert.assertEquals("value" + i, map.get(i));
+		}
+		Assert.assertEquals("value3", map.remove("3"));
+		Assert.assertNull(map.remove("3"));
+		Assert.assertNull(map.get(3));
+		Assert.assertEquals("value7", map.remove(7));
+		Assert.assertNull(map.get("7"));
+		Assert.assertNull(map.get("11"));
+	}
+
+	@Test
+	public void testStringIds() {
+		RequestIdMap<String> map = new RequestIdMap<>();
+		map.put("1", "one");
+		map.put("01", "zero-one");
+		map.put("-1", "minus-one");
+		map.put("abc", "abc");
+		map.put("99999999999", "large");
+		Assert.assertEquals("one", map.get("1"));
+		Assert.assertEquals("zero-one", map.get("01"));
+		Assert.assertEquals("minus-one", map.get("-1"));
+		Assert.assertEquals("abc", map.get("abc"));
+		Assert.assertEquals("large", map.get("99999999999"));
+		Assert.assertNull(map.get((String) null));
+		Assert.assertEquals("zero-one", map.remove("01"));
+		Assert.assertEquals("one", map.get("1"));
+		Assert.assertNull(map.get("01"));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		RequestIdMap<Integer> map = new RequestIdMap<>(64);
+		AtomicInteger nextId = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 10000; i++) {
+						int id = nextId.incrementAndGet();
+						String key = String.valueOf(id);
+						map.put(key, id);
+						Assert.assertEquals(Integer.valueOf(id), map.get(key));
+						Assert.assertEquals(Integer.valueOf(id), map.remove(key));
+						Assert.assertNull(map.get(key));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(10, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
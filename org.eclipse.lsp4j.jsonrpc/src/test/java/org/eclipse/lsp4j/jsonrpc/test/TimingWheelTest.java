@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.TimingWheel;
+import org.eclipse.lsp4j.jsonrpc.TimingWheel.Timeout;
+import org.junit.After;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+	private static final long TIMEOUT = 2000;
+
+	private final TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8);
+
+	@After
+	public void teardown() {
+		wheel.stop();
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		// The delays span several rotations of the wheel
+		long start = System.nanoTime();
+		CountDownLatch expired = new CountDownLatch(3);
+		long[] expiryTimes = new long[3];
+		long[] delays = { 10, 60, 130 };
+		for (int i = 0; i < delays.length; i++) {
+			int index = i;
+			wheel.schedule(() -> {
+				expiryTimes[index] = System.nanoTime();
+				expired.countDown();
+			}, delays[i], TimeUnit.MILLISECONDS);
+		}
+		assertTrue(expired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		for (int i = 0; i < delays.length; i++) {
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(expiryTimes[i] - start);
+			assertTrue("Expired after " + elapsed + " ms instead of " + delays[i], elapsed >= delays[i]);
+		}
+		assertTrue(expiryTimes[0] <= expiryTimes[1] && expiryTimes[1] <= expiryTimes[2]);
+		assertEquals(0, wheel.getPendingCount());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		AtomicInteger count = new AtomicInteger();
+		Timeout cancelled = wheel.schedule(count::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+		CountDownLatch expired = new CountDownLatch(1);
+		Timeout timeout = wheel.schedule(expired::countDown, 40, TimeUnit.MILLISECONDS);
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertTrue(expired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+		assertEquals(0, count.get());
+		assertEquals(0, wheel.getPendingCount());
+	}
+
+}
@@ -9,6 +9,7 @@ package org.eclipse.lsp4j.jsonrpc.test.annotations;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -214,6 +215,15 @@ public class EndpointsTest {
 		assertTrue(delegateMethod.isNotification());
 	}
 	
+	@Test public void testRpcMethodsCached() {
+		Map<String, JsonRpcMethod> methods = ServiceEndpoints.getSupportedMethods(Foo.class);
+		methods.remove("foo/doStuff");
+		
+		Map<String, JsonRpcMethod> cachedMethods = ServiceEndpoints.getSupportedMethods(Foo.class);
+		assertEquals(3, cachedMethods.size());
+		assertSame(methods.get("hubba"), cachedMethods.get("hubba"));
+	}
+	
 	@JsonSegment("consumer")
 	public static interface StringConsumer extends Consumer<String> {
 		@JsonNotification
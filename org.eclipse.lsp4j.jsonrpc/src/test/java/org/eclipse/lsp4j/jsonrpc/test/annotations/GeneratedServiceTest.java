@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.annotations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.services.GeneratedService;
+import org.eclipse.lsp4j.jsonrpc.services.JsonDelegate;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.eclipse.lsp4j.jsonrpc.services.JsonSegment;
+import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
+import org.junit.Test;
+
+/**
+ * Tests the classes that the annotation processor generates for the services of this test.
+ */
+public class GeneratedServiceTest {
+
+	private static final long TIMEOUT = 2000;
+
+	@JsonSegment("server")
+	public static interface Server {
+		@JsonRequest
+		CompletableFuture<List<? extends CharSequence>> split(String text, int[] positions);
+
+		@JsonRequest("sum")
+		CompletableFuture<Integer> add(List<Integer>[] values);
+
+		@JsonNotification
+		void log(String message);
+
+		@JsonDelegate
+		Documents getDocuments();
+	}
+
+	@JsonSegment("documents")
+	public static interface Documents {
+		@JsonNotification
+		void open(String uri);
+	}
+
+	public static class ServerImpl implements Server, Documents {
+		final List<String> messages = new ArrayList<>();
+
+		@Override
+		public CompletableFuture<List<? extends CharSequence>> split(String text, int[] positions) {
+			List<String> result = new ArrayList<>();
+			int start = 0;
+			for (int position : positions) {
+				result.add(text.substring(start, position));
+				start = position;
+			}
+			result.add(text.substring(start));
+			return CompletableFuture.completedFuture(result);
+		}
+
+		@Override
+		public CompletableFuture<Integer> add(List<Integer>[] values) {
+			return CompletableFuture.completedFuture(Arrays.stream(values).flatMap(List::stream).mapToInt(i -> i).sum());
+		}
+
+		@Override
+		public void log(String message) {
+			messages.add("log " + message);
+		}
+
+		@Override
+		public Documents getDocuments() {
+			return this;
+		}
+
+		@Override
+		public void open(String uri) {
+			messages.add("open " + uri);
+		}
+	}
+
+	/** A private type cannot be referenced by the generated code, so it is left to reflection. */
+	private static interface PrivateServer {
+		@JsonNotification
+		void log(String message);
+	}
+
+	@Test
+	public void testGeneratedClasses() {
+		assertNotNull(GeneratedService.find(Server.class));
+		assertNotNull(GeneratedService.find(ServerImpl.class));
+		assertNull(GeneratedService.find(PrivateServer.class));
+		assertNull(GeneratedService.find(String.class));
+	}
+
+	@Test
+	public void testSupportedMethods() throws Exception {
+		Map<String, JsonRpcMethod> methods = ServiceEndpoints.getSupportedMethods(Server.class);
+		assertEquals(Arrays.asList("server/split", "server/sum", "server/log", "documents/open"), new ArrayList<>(methods.keySet()));
+		// The types must be equal to the ones obtained through reflection
+		for (String name : new String[] { "split", "add" }) {
+			Method method = Arrays.stream(Server.class.getMethods()).filter(m -> m.getName().equals(name)).findFirst().get();
+			JsonRpcMethod rpcMethod = methods.get(name.equals("add") ? "server/sum" : "server/" + name);
+			assertArrayEquals(method.getGenericParameterTypes(), rpcMethod.getParameterTypes());
+			ParameterizedType returnType = (ParameterizedType) method.getGenericReturnType();
+			assertEquals(returnType.getActualTypeArguments()[0], rpcMethod.getReturnType());
+			assertFalse(rpcMethod.isNotification());
+		}
+		assertTrue(methods.get("documents/open").isNotification());
+		assertEquals(methods.keySet(), ServiceEndpoints.getSupportedMethods(ServerImpl.class).keySet());
+	}
+
+	@Test
+	public void testEndpoint() throws Exception {
+		ServerImpl server = new ServerImpl();
+		Endpoint endpoint = ServiceEndpoints.toEndpoint(server);
+		assertEquals(Arrays.asList("a", "bc", "d"), endpoint.request("server/split", Arrays.asList("abcd", new int[] { 1, 3 })).get(TIMEOUT, TimeUnit.MILLISECONDS));
+		List<?>[] values = { Arrays.asList(1, 2), Arrays.asList(3) };
+		assertEquals(6, endpoint.request("server/sum", values).get(TIMEOUT, TimeUnit.MILLISECONDS));
+		endpoint.notify("server/log", "message");
+		endpoint.notify("documents/open", Arrays.asList("file:///doc"));
+		assertEquals(Arrays.asList("log message", "open file:///doc"), server.messages);
+	}
+
+	@Test
+	public void testProxy() throws Exception {
+		List<String> messages = new ArrayList<>();
+		Endpoint endpoint = new Endpoint() {
+			@Override
+			public CompletableFuture<?> request(String method, Object parameter) {
+				messages.add(method + " " + parameter);
+				return CompletableFuture.completedFuture(6);
+			}
+
+			@Override
+			public void notify(String method, Object parameter) {
+				messages.add(method + " " + parameter);
+			}
+		};
+		Server server = ServiceEndpoints.toServiceObject(endpoint, Server.class);
+		assertFalse(Proxy.isProxyClass(server.getClass()));
+		assertTrue(server instanceof Endpoint);
+		assertEquals(6, server.add(null).get(TIMEOUT, TimeUnit.MILLISECONDS).intValue());
+		server.log("message");
+		server.getDocuments().open("file:///doc");
+		assertEquals(Arrays.asList("server/sum null", "server/log message", "documents/open file:///doc"), messages);
+
+		PrivateServer privateServer = ServiceEndpoints.toServiceObject(endpoint, PrivateServer.class);
+		assertTrue(Proxy.isProxyClass(privateServer.getClass()));
+		privateServer.log("private");
+		assertEquals("log private", messages.get(messages.size() - 1));
+	}
+
+}
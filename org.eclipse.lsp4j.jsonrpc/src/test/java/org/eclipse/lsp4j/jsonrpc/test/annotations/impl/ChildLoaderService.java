@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.annotations.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+
+/**
+ * A top-level service class, so it can be redefined by a child class loader without its outer class in
+ * {@link GenericEndpointTest#testChildClassLoader()}.
+ */
+public class ChildLoaderService {
+
+	public final List<String> messages = new ArrayList<>();
+
+	@JsonRequest
+	public CompletableFuture<String> hello(String name) {
+		return CompletableFuture.completedFuture("hi " + name);
+	}
+
+	@JsonNotification
+	public void log(String message) {
+		messages.add(message);
+	}
+
+}
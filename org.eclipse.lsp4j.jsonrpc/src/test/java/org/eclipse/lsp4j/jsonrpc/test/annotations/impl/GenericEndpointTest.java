@@ -7,11 +7,22 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.test.annotations.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.eclipse.lsp4j.jsonrpc.services.Bulkhead;
 import org.eclipse.lsp4j.jsonrpc.services.GenericEndpoint;
 import org.eclipse.lsp4j.jsonrpc.services.JsonDelegate;
 import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
@@ -209,6 +220,43 @@ public class GenericEndpointTest {
 		}
 	}
 
+	public static class Echo {
+		
+		@JsonRequest
+		public CompletableFuture<String> echo(String text) {
+			return CompletableFuture.completedFuture(text);
+		}
+		
+		@JsonRequest
+		public CompletableFuture<String> fail(String text) {
+			throw new IllegalStateException(text);
+		}
+		
+	}
+	
+	@Test
+	public void testSingleParameter() throws Exception {
+		GenericEndpoint endpoint = new GenericEndpoint(new Echo());
+		Assert.assertEquals("foo", endpoint.request("echo", "foo").get());
+		Assert.assertEquals("foo", endpoint.request("echo", Arrays.asList("foo")).get());
+		Assert.assertEquals(null, endpoint.request("echo", null).get());
+		try {
+			endpoint.request("fail", "bar");
+			Assert.fail("Expected a RuntimeException.");
+		} catch (RuntimeException exception) {
+			Assert.assertEquals("bar", exception.getCause().getCause().getMessage());
+		}
+		
+		// Arguments computed by a subclass are respected
+		GenericEndpoint customEndpoint = new GenericEndpoint(new Echo()) {
+			@Override
+			protected Object[] getArguments(Method method, Object arg) {
+				return new Object[] { "custom" };
+			}
+		};
+		Assert.assertEquals("custom", customEndpoint.request("echo", "foo").get());
+	}
+	
 	@Test
 	public void testMultiParams_01() throws Exception {
 		testMultiParams(Arrays.asList("foo", 1), "foo", 1);
@@ -278,4 +326,125 @@ public class GenericEndpointTest {
 		}
 	}
 
+	public static class Lenses {
+		
+		public List<CompletableFuture<String>> results = new ArrayList<>();
+		
+		@JsonRequest
+		public CompletableFuture<String> codeLens(String uri) {
+			CompletableFuture<String> result = new CompletableFuture<>();
+			results.add(result);
+			return result;
+		}
+		
+	}
+	
+	@Test
+	public void testBulkhead() throws Exception {
+		Lenses lenses = new Lenses();
+		GenericEndpoint endpoint = new GenericEndpoint(lenses);
+		Bulkhead bulkhead = new Bulkhead("lenses", 1, 1);
+		endpoint.setBulkhead("codeLens", bulkhead);
+		
+		CompletableFuture<?> first = endpoint.request("codeLens", "a");
+		CompletableFuture<?> second = endpoint.request("codeLens", "b");
+		CompletableFuture<?> third = endpoint.request("codeLens", "c");
+		Assert.assertEquals(1, lenses.results.size());
+		Assert.assertEquals(1, bulkhead.getQueueSize());
+		try {
+			third.get();
+			Assert.fail("Expected an ExecutionException.");
+		} catch (ExecutionException exception) {
+			ResponseError error = ((ResponseErrorException) exception.getCause()).getResponseError();
+			Assert.assertEquals(ResponseErrorCode.ServerCancelled.getValue(), error.getCode());
+		}
+		
+		// The queued request starts when the running one has completed
+		lenses.results.get(0).complete("A");
+		Assert.assertEquals("A", first.get());
+		Assert.assertEquals(2, lenses.results.size());
+		Assert.assertFalse(second.isDone());
+		lenses.results.get(1).complete("B");
+		Assert.assertEquals("B", second.get());
+		Assert.assertEquals(0, bulkhead.getActiveCount());
+		
+		Bulkhead.Counters counters = bulkhead.getCounters("codeLens");
+		Assert.assertEquals(2, counters.getStarted());
+		Assert.assertEquals(1, counters.getQueued());
+		Assert.assertEquals(1, counters.getRejected());
+	}
+
+	@Test
+	public void testBulkheadDrainsLongQueue() throws Exception {
+		Bulkhead bulkhead = new Bulkhead("x", 1, 20000);
+		CompletableFuture<Object> running = new CompletableFuture<>();
+		bulkhead.request("x", () -> running);
+		List<CompletableFuture<?>> queued = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			String value = "v" + i;
+			queued.add(bulkhead.request("x", () -> CompletableFuture.completedFuture(value)));
+			bulkhead.notify("y", () -> {});
+		}
+		Assert.assertEquals(20000, bulkhead.getQueueSize());
+		
+		// The queued handlers return completed futures, so they are all started by this thread
+		running.complete(null);
+		Assert.assertEquals(0, bulkhead.getQueueSize());
+		Assert.assertEquals(0, bulkhead.getActiveCount());
+		for (int i = 0; i < queued.size(); i++) {
+			Assert.assertEquals("v" + i, queued.get(i).getNow(null));
+		}
+	}
+	
+	/**
+	 * Defines the given classes itself, as the class loader of a bundle or plug-in does, so they are not visible from
+	 * the class loader of the library.
+	 */
+	private static class ChildClassLoader extends ClassLoader {
+		
+		private final List<String> classNames;
+		
+		ChildClassLoader(ClassLoader parent, String... classNames) {
+			super(parent);
+			this.classNames = Arrays.asList(classNames);
+		}
+		
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!classNames.contains(name))
+				return super.loadClass(name, resolve);
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> result = findLoadedClass(name);
+				if (result == null) {
+					try (InputStream input = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+						byte[] buffer = new byte[4096];
+						int count;
+						while ((count = input.read(buffer)) != -1) {
+							bytes.write(buffer, 0, count);
+						}
+						result = defineClass(name, bytes.toByteArray(), 0, bytes.size());
+					} catch (IOException e) {
+						throw new ClassNotFoundException(name, e);
+					}
+				}
+				return result;
+			}
+		}
+		
+	}
+	
+	@Test
+	public void testChildClassLoader() throws Exception {
+		ClassLoader classLoader = new ChildClassLoader(getClass().getClassLoader(), ChildLoaderService.class.getName());
+		Class<?> serviceClass = classLoader.loadClass(ChildLoaderService.class.getName());
+		Assert.assertNotSame(ChildLoaderService.class, serviceClass);
+		Object service = serviceClass.getConstructor().newInstance();
+		
+		GenericEndpoint endpoint = new GenericEndpoint(service);
+		Assert.assertEquals("hi x", endpoint.request("hello", "x").get());
+		endpoint.notify("log", "message");
+		Assert.assertEquals(Arrays.asList("message"), serviceClass.getField("messages").get(service));
+	}
+
 }
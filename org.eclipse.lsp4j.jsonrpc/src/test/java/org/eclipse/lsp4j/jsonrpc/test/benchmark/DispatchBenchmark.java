@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.benchmark;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.services.EndpointProxy;
+import org.eclipse.lsp4j.jsonrpc.services.GenericEndpoint;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
+
+/**
+ * Compares the dispatch of incoming messages to service methods through {@link GenericEndpoint}, which uses the
+ * dispatcher generated by the annotation processor, with the previous implementation, which called {@link Method#invoke(Object, Object...)} with a
+ * new argument array for each message. Also measures calls through a service proxy created by
+ * {@link ServiceEndpoints#toServiceObject(Endpoint, Class)}, and the creation of endpoints and proxies through the
+ * classes generated by the annotation processor compared to reflection. Run the main method; the number of calls
+ * per round can be passed as argument. This is not a unit test and is not run as part of the build.
+ */
+public class DispatchBenchmark {
+
+	public static interface Service {
+		@JsonNotification
+		void progress(String token);
+
+		@JsonRequest
+		CompletableFuture<String> echo(String text);
+	}
+
+	public static class ServiceImpl implements Service {
+		int progressCount;
+
+		@Override
+		public void progress(String token) {
+			progressCount++;
+		}
+
+		@Override
+		public CompletableFuture<String> echo(String text) {
+			return CompletableFuture.completedFuture(text);
+		}
+	}
+
+	/**
+	 * Overriding {@link GenericEndpoint#getArguments(Method, Object)} makes the endpoint fall back to reflection,
+	 * which is how the previous implementation dispatched every message.
+	 */
+	private static class ReflectiveEndpoint extends GenericEndpoint {
+		ReflectiveEndpoint(Object delegate) {
+			super(delegate);
+		}
+
+		@Override
+		protected Object[] getArguments(Method method, Object arg) {
+			return super.getArguments(method, arg);
+		}
+	}
+
+	private static volatile Object sink;
+
+	public static void main(String[] args) throws Exception {
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+		ServiceImpl service = new ServiceImpl();
+		Endpoint reflective = new ReflectiveEndpoint(service);
+		Endpoint generic = new GenericEndpoint(service);
+		Service proxy = ServiceEndpoints.toServiceObject(generic, Service.class);
+		for (int round = 0; round < 5; round++) {
+			// The first rounds serve as warm up
+			double reflectiveNotify = run(() -> reflective.notify("progress", "token"), calls);
+			double genericNotify = run(() -> generic.notify("progress", "token"), calls);
+			double reflectiveRequest = run(() -> sink = reflective.request("echo", "text"), calls);
+			double genericRequest = run(() -> sink = generic.request("echo", "text"), calls);
+			double proxyNotify = run(() -> proxy.progress("token"), calls);
+			double reflectiveCreate = run(() -> sink = Proxy.newProxyInstance(Service.class.getClassLoader(),
+					new Class<?>[] { Service.class, Endpoint.class }, new EndpointProxy(new ReflectiveEndpoint(service), Service.class)), calls / 100);
+			double generatedCreate = run(() -> sink = ServiceEndpoints.toServiceObject(new GenericEndpoint(service), Service.class), calls / 100);
+			System.out.printf("round %d: notification %6.1f -> %6.1f ns   request %6.1f -> %6.1f ns   proxy notification %6.1f ns   creation %7.1f -> %7.1f ns%n",
+					round, reflectiveNotify, genericNotify, reflectiveRequest, genericRequest, proxyNotify, reflectiveCreate, generatedCreate);
+		}
+		sink = service.progressCount;
+	}
+
+	/**
+	 * @return nanoseconds per call
+	 */
+	private static double run(Runnable call, int calls) {
+		long start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			call.run();
+		}
+		return (double) (System.nanoTime() - start) / calls;
+	}
+
+}
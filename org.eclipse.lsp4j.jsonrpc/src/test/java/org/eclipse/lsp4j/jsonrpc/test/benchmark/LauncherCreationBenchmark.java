@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.services.JsonDelegate;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.eclipse.lsp4j.jsonrpc.services.JsonSegment;
+
+/**
+ * Measures the creation of launchers for 1 and for 1000 sessions of the same service classes. Only the first
+ * session scans the service classes; later sessions take the method metadata, method handles and generated
+ * classes from the per-class caches. The public service is handled by the classes generated by the annotation
+ * processor, the private one by reflection. Run the main method; the number of sessions can be passed as
+ * argument. This is not a unit test and is not run as part of the build.
+ */
+public class LauncherCreationBenchmark {
+
+	@JsonSegment("server")
+	public static interface Server {
+		@JsonRequest
+		CompletableFuture<String> echo(String text);
+
+		@JsonNotification
+		void progress(String token);
+
+		@JsonDelegate
+		Documents getDocuments();
+	}
+
+	@JsonSegment("documents")
+	public static interface Documents {
+		@JsonNotification
+		void open(String uri);
+
+		@JsonRequest
+		CompletableFuture<Object> hover(String uri, Integer line, Integer character);
+	}
+
+	public static class ServerImpl implements Server, Documents {
+		@Override
+		public CompletableFuture<String> echo(String text) {
+			return CompletableFuture.completedFuture(text);
+		}
+
+		@Override
+		public void progress(String token) {
+		}
+
+		@Override
+		public Documents getDocuments() {
+			return this;
+		}
+
+		@Override
+		public void open(String uri) {
+		}
+
+		@Override
+		public CompletableFuture<Object> hover(String uri, Integer line, Integer character) {
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	/** A private type cannot be referenced by the generated code, so it is left to reflection. */
+	@JsonSegment("server")
+	private static interface PrivateServer {
+		@JsonRequest
+		CompletableFuture<String> echo(String text);
+
+		@JsonNotification
+		void progress(String token);
+
+		@JsonNotification("documents/open")
+		void open(String uri);
+
+		@JsonRequest("documents/hover")
+		CompletableFuture<Object> hover(String uri, Integer line, Integer character);
+	}
+
+	private static class PrivateServerImpl implements PrivateServer {
+		@Override
+		public CompletableFuture<String> echo(String text) {
+			return CompletableFuture.completedFuture(text);
+		}
+
+		@Override
+		public void progress(String token) {
+		}
+
+		@Override
+		public void open(String uri) {
+		}
+
+		@Override
+		public CompletableFuture<Object> hover(String uri, Integer line, Integer character) {
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	private static volatile Object sink;
+
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		measure("generated", sessions, () -> createLauncher(new ServerImpl(), Server.class));
+		measure("reflective", sessions, () -> createLauncher(new PrivateServerImpl(), PrivateServer.class));
+	}
+
+	private static <T> Launcher<T> createLauncher(Object localService, Class<T> remoteInterface) {
+		return new Launcher.Builder<T>()
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.setInput(new ByteArrayInputStream(new byte[0]))
+				.setOutput(new ByteArrayOutputStream())
+				.create();
+	}
+
+	private static void measure(String name, int sessions, Supplier<Launcher<?>> createLauncher) {
+		long start = System.nanoTime();
+		sink = createLauncher.get();
+		long first = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 1; i < sessions; i++) {
+			sink = createLauncher.get();
+		}
+		long rest = System.nanoTime() - start;
+		System.out.printf("%-10s  1 session: %8.1f us   %d sessions: %8.1f ms total, %6.1f us per later session%n",
+				name, first / 1000.0, sessions, (first + rest) / 1000000.0, sessions > 1 ? rest / 1000.0 / (sessions - 1) : 0);
+	}
+
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.RequestIdMap;
+
+/**
+ * Compares the pending request table of {@link org.eclipse.lsp4j.jsonrpc.RemoteEndpoint} with the previous
+ * implementation, a {@code LinkedHashMap} guarded by {@code synchronized}, under contention. Every operation
+ * follows the life cycle of a request: the id is stored when the request is sent, the method is resolved
+ * while the response is parsed, and the entry is removed when the response is handled.
+ * Run the main method; the number of operations per thread can be passed as argument.
+ * This is not a unit test and is not run as part of the build.
+ */
+public class RequestIdMapBenchmark {
+
+	private interface Table {
+		void put(String id, Object value);
+		Object get(String id);
+		Object remove(String id);
+	}
+
+	private static class SynchronizedTable implements Table {
+		private final Map<String, Object> map = new LinkedHashMap<>();
+
+		@Override
+		public void put(String id, Object value) {
+			synchronized (map) {
+				map.put(id, value);
+			}
+		}
+
+		@Override
+		public Object get(String id) {
+			synchronized (map) {
+				return map.get(id);
+			}
+		}
+
+		@Override
+		public Object remove(String id) {
+			synchronized (map) {
+				return map.remove(id);
+			}
+		}
+	}
+
+	private static class LockFreeTable implements Table {
+		private final RequestIdMap<Object> map = new RequestIdMap<>();
+
+		@Override
+		public void put(String id, Object value) {
+			map.put(id, value);
+		}
+
+		@Override
+		public Object get(String id) {
+			return map.get(id);
+		}
+
+		@Override
+		public Object remove(String id) {
+			return map.remove(id);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int operations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+			// Warm up
+			run(new SynchronizedTable(), threads, operations / 4);
+			run(new LockFreeTable(), threads, operations / 4);
+			double synchronizedRate = run(new SynchronizedTable(), threads, operations);
+			double lockFreeRate = run(new LockFreeTable(), threads, operations);
+			System.out.printf("%2d threads: synchronized %8.2f Mops/s   lock-free %8.2f Mops/s   (x%.1f)%n",
+					threads, synchronizedRate, lockFreeRate, lockFreeRate / synchronizedRate);
+		}
+	}
+
+	/**
+	 * @return millions of request life cycles per second
+	 */
+	private static double run(Table table, int threads, int operations) throws InterruptedException {
+		AtomicInteger nextId = new AtomicInteger();
+		Object value = new Object();
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					// Keep some requests pending, like a client that waits for several responses
+					String[] pending = new String[16];
+					for (int i = 0; i < operations; i++) {
+						int index = i & (pending.length - 1);
+						if (pending[index] != null) {
+							table.get(pending[index]);
+							table.remove(pending[index]);
+						}
+						String id = String.valueOf(nextId.incrementAndGet());
+						table.put(id, value);
+						pending[index] = id;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+		long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		return (double) threads * operations * 1000 / (System.nanoTime() - startTime);
+	}
+
+}
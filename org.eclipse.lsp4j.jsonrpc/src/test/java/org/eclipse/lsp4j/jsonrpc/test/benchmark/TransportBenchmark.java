@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.UnixDomainSockets;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+
+/**
+ * Compares the latency and throughput of JSON-RPC requests over piped streams, TCP loopback and
+ * Unix domain sockets. Run the main method; the number of requests can be passed as argument.
+ * This is not a unit test and is not run as part of the build.
+ */
+public class TransportBenchmark {
+
+	public static interface Server {
+		@JsonRequest
+		CompletableFuture<String> echo(String text);
+	}
+
+	public static interface Client {
+	}
+
+	private static final int TIMEOUT_SECONDS = 60;
+	private static final int PIPE_SIZE = 1 << 16;
+
+	public static void main(String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		char[] payload = new char[1024];
+		Arrays.fill(payload, 'x');
+		String text = new String(payload);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			List<Transport> transports = new ArrayList<>();
+			transports.add(new PipeTransport());
+			transports.add(new TcpTransport());
+			if (UnixDomainSockets.isSupported())
+				transports.add(new UnixDomainSocketTransport());
+			else
+				System.out.println("Unix domain sockets are not supported by this Java runtime.");
+			for (Transport transport : transports) {
+				try {
+					Server server = transport.connect(executor);
+					// Warm up
+					measureLatency(server, text, requests / 4);
+					measureThroughput(server, text, requests / 4);
+					double latency = measureLatency(server, text, requests);
+					double throughput = measureThroughput(server, text, requests);
+					System.out.printf("%-20s latency %8.1f us/request   throughput %10.0f requests/s%n",
+							transport.getName(), latency, throughput);
+				} finally {
+					transport.close();
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Send sequential requests and return the mean round trip time in microseconds.
+	 */
+	private static double measureLatency(Server server, String text, int requests) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			server.echo(text).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+		return (System.nanoTime() - start) / 1000.0 / requests;
+	}
+
+	/**
+	 * Send all requests without waiting for responses and return the number of requests per second.
+	 */
+	private static double measureThroughput(Server server, String text, int requests) throws Exception {
+		long start = System.nanoTime();
+		List<CompletableFuture<String>> responses = new ArrayList<>(requests);
+		for (int i = 0; i < requests; i++) {
+			responses.add(server.echo(text));
+		}
+		CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[requests])).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		return requests * 1e9 / (System.nanoTime() - start);
+	}
+
+	private static Server startClient(Launcher<Server> launcher) {
+		launcher.startListening();
+		return launcher.getRemoteProxy();
+	}
+
+	private static Server createServer() {
+		return text -> CompletableFuture.completedFuture(text);
+	}
+
+	private static abstract class Transport implements Closeable {
+
+		protected final List<Closeable> resources = new ArrayList<>();
+
+		abstract String getName();
+
+		abstract Server connect(ExecutorService executor) throws Exception;
+
+		@Override
+		public void close() throws IOException {
+			for (Closeable resource : resources) {
+				resource.close();
+			}
+		}
+	}
+
+	private static class PipeTransport extends Transport {
+
+		@Override
+		String getName() {
+			return "piped streams";
+		}
+
+		@Override
+		Server connect(ExecutorService executor) throws Exception {
+			PipedInputStream serverInput = new PipedInputStream(PIPE_SIZE);
+			PipedOutputStream clientOutput = new PipedOutputStream(serverInput);
+			PipedInputStream clientInput = new PipedInputStream(PIPE_SIZE);
+			PipedOutputStream serverOutput = new PipedOutputStream(clientInput);
+			resources.addAll(Arrays.asList(clientOutput, serverOutput));
+			Launcher.createLauncher(createServer(), Client.class, serverInput, serverOutput).startListening();
+			return startClient(Launcher.createLauncher(new Client() {}, Server.class, clientInput, clientOutput));
+		}
+	}
+
+	private static class TcpTransport extends Transport {
+
+		@Override
+		String getName() {
+			return "TCP loopback";
+		}
+
+		@Override
+		Server connect(ExecutorService executor) throws Exception {
+			ServerSocketChannel serverSocket = ServerSocketChannel.open();
+			resources.add(serverSocket);
+			serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			Future<SocketChannel> accepted = executor.submit(() -> serverSocket.accept());
+			SocketChannel clientChannel = SocketChannel.open(serverSocket.getLocalAddress());
+			clientChannel.socket().setTcpNoDelay(true);
+			SocketChannel serverChannel = accepted.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			serverChannel.socket().setTcpNoDelay(true);
+			resources.addAll(Arrays.asList(clientChannel, serverChannel));
+			Launcher.createLauncher(createServer(), Client.class, serverChannel).startListening();
+			return startClient(Launcher.createLauncher(new Client() {}, Server.class, clientChannel));
+		}
+	}
+
+	private static class UnixDomainSocketTransport extends Transport {
+
+		private Path directory;
+
+		@Override
+		String getName() {
+			return "Unix domain socket";
+		}
+
+		@Override
+		Server connect(ExecutorService executor) throws Exception {
+			directory = Files.createTempDirectory("lsp4j");
+			Path socketFile = directory.resolve("benchmark.sock");
+			ServerSocketChannel serverSocket = UnixDomainSockets.bind(socketFile);
+			resources.add(serverSocket);
+			Future<SocketChannel> accepted = executor.submit(() -> serverSocket.accept());
+			SocketChannel clientChannel = UnixDomainSockets.connect(socketFile);
+			SocketChannel serverChannel = accepted.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			resources.addAll(Arrays.asList(clientChannel, serverChannel));
+			Launcher.createLauncher(createServer(), Client.class, serverChannel).startListening();
+			return startClient(Launcher.createLauncher(new Client() {}, Server.class, clientChannel));
+		}
+
+		@Override
+		public void close() throws IOException {
+			super.close();
+			Files.deleteIfExists(directory.resolve("benchmark.sock"));
+			Files.deleteIfExists(directory);
+		}
+	}
+
+}
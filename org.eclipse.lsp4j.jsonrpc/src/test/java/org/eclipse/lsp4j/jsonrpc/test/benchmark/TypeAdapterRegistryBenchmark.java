@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.benchmark;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.TypeAdapterRegistry;
+import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Measures the heap retained per connection by the type adapters of {@link MessageJsonHandler}s that create their
+ * own adapters, compared to handlers that share a {@link TypeAdapterRegistry}. Each handler creates the adapters
+ * of a set of protocol-like types, as a connection does while it reads and writes messages. Run the main method
+ * with a large enough heap; the number of connections can be passed as argument. This is not a unit test and is
+ * not run as part of the build.
+ */
+public class TypeAdapterRegistryBenchmark {
+
+	public static class Position {
+		public int line;
+		public int character;
+	}
+
+	public static class Range {
+		public Position start;
+		public Position end;
+	}
+
+	public static class Location {
+		public String uri;
+		public Range range;
+	}
+
+	public static class Diagnostic {
+		public Range range;
+		public Integer severity;
+		public Either<String, Integer> code;
+		public String source;
+		public String message;
+		public List<Location> relatedInformation;
+	}
+
+	public static class TextEdit {
+		public Range range;
+		public String newText;
+	}
+
+	public static class WorkspaceEdit {
+		public Map<String, List<TextEdit>> changes;
+	}
+
+	public static class Command {
+		public String title;
+		public String command;
+		public List<Object> arguments;
+	}
+
+	public static class CompletionItem {
+		public String label;
+		public Integer kind;
+		public String detail;
+		public Either<String, MarkupContent> documentation;
+		public String sortText;
+		public String filterText;
+		public String insertText;
+		public TextEdit textEdit;
+		public List<TextEdit> additionalTextEdits;
+		public Command command;
+		public Object data;
+	}
+
+	public static class MarkupContent {
+		public String kind;
+		public String value;
+	}
+
+	public static class CompletionList {
+		public boolean isIncomplete;
+		public List<CompletionItem> items;
+	}
+
+	public static class Hover {
+		public Either<List<Either<String, MarkupContent>>, MarkupContent> contents;
+		public Range range;
+	}
+
+	public static class PublishDiagnosticsParams {
+		public String uri;
+		public List<Diagnostic> diagnostics;
+	}
+
+	private static final Type[] TYPES = {
+		Message.class, CancelParams.class, ResponseError.class, Position.class, Range.class, Location.class,
+		Diagnostic.class, TextEdit.class, WorkspaceEdit.class, Command.class, CompletionItem.class,
+		MarkupContent.class, CompletionList.class, Hover.class, PublishDiagnosticsParams.class,
+		new TypeToken<Either<List<CompletionItem>, CompletionList>>() {}.getType(),
+		new TypeToken<List<? extends Location>>() {}.getType(),
+		new TypeToken<List<TextEdit>>() {}.getType()
+	};
+
+	private static volatile Object sink;
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		Map<String, JsonRpcMethod> supportedMethods = Collections.emptyMap();
+		// Create the shared adapters and load all classes before measuring
+		sink = createHandlers(1, () -> new MessageJsonHandler(supportedMethods, TypeAdapterRegistry.getDefault()));
+		sink = createHandlers(1, () -> new MessageJsonHandler(supportedMethods));
+		for (int round = 0; round < 3; round++) {
+			long own = measure(connections, () -> new MessageJsonHandler(supportedMethods));
+			long shared = measure(connections, () -> new MessageJsonHandler(supportedMethods, TypeAdapterRegistry.getDefault()));
+			System.out.printf("round %d: %d types, per connection: own adapters %6.1f KB, shared registry %6.1f KB%n",
+					round, TYPES.length, own / 1024.0 / connections, shared / 1024.0 / connections);
+		}
+	}
+
+	/**
+	 * @return the bytes retained by the handlers
+	 */
+	private static long measure(int connections, Supplier<MessageJsonHandler> factory) {
+		sink = null;
+		long before = usedMemory();
+		sink = createHandlers(connections, factory);
+		long after = usedMemory();
+		sink = null;
+		return after - before;
+	}
+
+	private static List<MessageJsonHandler> createHandlers(int connections, Supplier<MessageJsonHandler> factory) {
+		List<MessageJsonHandler> handlers = new ArrayList<>(connections);
+		for (int i = 0; i < connections; i++) {
+			MessageJsonHandler handler = factory.get();
+			for (Type type : TYPES) {
+				handler.getGson().getAdapter(TypeToken.get(type));
+			}
+			handlers.add(handler);
+		}
+		return handlers;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.benchmark;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.VirtualThreads;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+
+/**
+ * Sends thousands of concurrent requests whose handlers block for a while, as handlers doing file I/O would,
+ * and compares the time until all responses have arrived with and without virtual threads. Run the main method;
+ * the number of requests and the blocking time in milliseconds can be passed as arguments. This is not a unit
+ * test and is not run as part of the build.
+ */
+public class VirtualThreadBenchmark {
+
+	public static interface Server {
+		@JsonRequest
+		CompletableFuture<String> load(String path);
+	}
+
+	public static interface Client {
+	}
+
+	private static final int TIMEOUT_SECONDS = 600;
+
+	public static void main(String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		long blockMillis = args.length > 1 ? Long.parseLong(args[1]) : 20;
+		if (!VirtualThreads.isSupported())
+			System.out.println("Virtual threads are not supported by this Java runtime, a cached thread pool is used instead.");
+		Server server = text -> CompletableFutures.computeAsync(cancelChecker -> {
+			try {
+				Thread.sleep(blockMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return text;
+		});
+		List<SocketChannel> channels = new ArrayList<>();
+		for (boolean virtualThreads : new boolean[] { false, true }) {
+			// Piped streams are not used since they do not work well with many short-lived writer threads
+			try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
+				serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+				SocketChannel clientChannel = SocketChannel.open(serverSocket.getLocalAddress());
+				SocketChannel serverChannel = serverSocket.accept();
+				channels.add(clientChannel);
+				channels.add(serverChannel);
+				new Launcher.Builder<Client>()
+						.setLocalService(server)
+						.setRemoteInterface(Client.class)
+						.setChannel(serverChannel)
+						.setVirtualThreads(virtualThreads)
+						.create()
+						.startListening();
+				Launcher<Server> clientLauncher = Launcher.createLauncher(new Client() {}, Server.class, clientChannel);
+				clientLauncher.startListening();
+				Server remoteProxy = clientLauncher.getRemoteProxy();
+
+				// Warm up
+				sendRequests(remoteProxy, Math.min(requests, 100));
+				long start = System.nanoTime();
+				sendRequests(remoteProxy, requests);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("%-16s %6d requests blocking %d ms: %8.2f s, %10.0f requests/s%n",
+						virtualThreads ? "virtual threads" : "platform threads", requests, blockMillis, seconds, requests / seconds);
+			} finally {
+				for (SocketChannel channel : channels) {
+					channel.close();
+				}
+				channels.clear();
+			}
+		}
+		System.exit(0);
+	}
+
+	private static void sendRequests(Server server, int requests) throws Exception {
+		List<CompletableFuture<String>> responses = new ArrayList<>(requests);
+		for (int i = 0; i < requests; i++) {
+			responses.add(server.load("file" + i));
+		}
+		CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[requests])).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+}
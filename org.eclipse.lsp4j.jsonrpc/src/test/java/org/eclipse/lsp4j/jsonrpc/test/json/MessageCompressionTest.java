@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.lsp4j.jsonrpc.json.MessageCompression;
+import org.eclipse.lsp4j.jsonrpc.json.MessageFrameDecoder;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonPrimitive;
+
+public class MessageCompressionTest {
+
+	private static final String LARGE_PARAMS = new String(new char[10000]).replace('\0', 'x');
+
+	private static NotificationMessage notification(String params) {
+		NotificationMessage message = new NotificationMessage();
+		message.setMethod("foo");
+		message.setParams(params);
+		return message;
+	}
+
+	private static String params(Message message) {
+		return ((JsonPrimitive) ((NotificationMessage) message).getParams()).getAsString();
+	}
+
+	/**
+	 * Split the given output into header and content of each message.
+	 */
+	private static List<byte[][]> splitMessages(byte[] output) {
+		List<byte[][]> result = new ArrayList<>();
+		int position = 0;
+		while (position < output.length) {
+			int headerEnd = position;
+			while (!(output[headerEnd] == '\r' && output[headerEnd + 1] == '\n' && output[headerEnd + 2] == '\r' && output[headerEnd + 3] == '\n'))
+				headerEnd++;
+			String header = new String(output, position, headerEnd - position, StandardCharsets.US_ASCII);
+			int contentLength = Integer.parseInt(header.replaceAll("(?s).*Content-Length: (\\d+).*", "$1"));
+			byte[] content = new byte[contentLength];
+			System.arraycopy(output, headerEnd + 4, content, 0, contentLength);
+			result.add(new byte[][] { header.getBytes(StandardCharsets.US_ASCII), content });
+			position = headerEnd + 4 + contentLength;
+		}
+		return result;
+	}
+
+	private static String readFully(InputStream input) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count;
+		while ((count = input.read(buffer)) >= 0) {
+			result.write(buffer, 0, count);
+		}
+		return result.toString(StandardCharsets.UTF_8.name());
+	}
+
+	@Test
+	public void testNotCompressedBeforeNegotiation() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		consumer.setCompression(new MessageCompression(1000, MessageCompression.GZIP, MessageCompression.DEFLATE));
+		consumer.consume(notification(LARGE_PARAMS));
+
+		List<byte[][]> messages = splitMessages(output.toByteArray());
+		Assert.assertEquals(1, messages.size());
+		String header = new String(messages.get(0)[0], StandardCharsets.US_ASCII);
+		Assert.assertTrue(header, header.contains("Accept-Encoding: gzip, deflate"));
+		Assert.assertFalse(header, header.contains("Content-Encoding"));
+		Assert.assertEquals(jsonHandler.serialize(notification(LARGE_PARAMS)), new String(messages.get(0)[1], StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		MessageCompression compression = new MessageCompression(1000, MessageCompression.GZIP, MessageCompression.DEFLATE);
+		compression.peerAccepts("deflate;q=0.5, gzip");
+		consumer.setCompression(compression);
+		consumer.consume(notification(LARGE_PARAMS));
+		consumer.consume(notification("small"));
+
+		List<byte[][]> messages = splitMessages(output.toByteArray());
+		Assert.assertEquals(2, messages.size());
+		// The accepted encodings are announced once since the peer has already announced its encodings
+		Assert.assertEquals("Content-Length: " + messages.get(0)[1].length + "\r\nContent-Encoding: gzip\r\nAccept-Encoding: gzip, deflate",
+				new String(messages.get(0)[0], StandardCharsets.US_ASCII));
+		Assert.assertTrue(messages.get(0)[1].length < 1000);
+		Assert.assertEquals(jsonHandler.serialize(notification(LARGE_PARAMS)),
+				readFully(new GZIPInputStream(new ByteArrayInputStream(messages.get(0)[1]))));
+		// Messages below the threshold are not compressed
+		Assert.assertEquals("Content-Length: " + messages.get(1)[1].length, new String(messages.get(1)[0], StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testDeflate() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		MessageCompression compression = new MessageCompression(1000, MessageCompression.GZIP, MessageCompression.DEFLATE);
+		compression.peerAccepts("gzip;q=0, deflate");
+		consumer.setCompression(compression);
+		Assert.assertEquals(MessageCompression.DEFLATE, compression.getNegotiatedEncoding());
+		consumer.consume(notification(LARGE_PARAMS));
+		consumer.consume(notification(LARGE_PARAMS + "y"));
+
+		List<byte[][]> messages = splitMessages(output.toByteArray());
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals(jsonHandler.serialize(notification(LARGE_PARAMS)),
+				readFully(new InflaterInputStream(new ByteArrayInputStream(messages.get(0)[1]))));
+		Assert.assertEquals(jsonHandler.serialize(notification(LARGE_PARAMS + "y")),
+				readFully(new InflaterInputStream(new ByteArrayInputStream(messages.get(1)[1]))));
+	}
+
+	@Test
+	public void testNoCommonEncoding() throws IOException {
+		MessageCompression compression = new MessageCompression(0, MessageCompression.GZIP);
+		compression.peerAccepts("br");
+		Assert.assertNull(compression.getNegotiatedEncoding());
+
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		consumer.setCompression(compression);
+		consumer.consume(notification(LARGE_PARAMS));
+		Assert.assertEquals(jsonHandler.serialize(notification(LARGE_PARAMS)), new String(splitMessages(output.toByteArray()).get(0)[1], StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		MessageCompression clientCompression = new MessageCompression(1000, MessageCompression.GZIP);
+		MessageCompression serverCompression = new MessageCompression(1000, MessageCompression.GZIP);
+
+		// The client sends the first message, which announces the accepted encodings
+		ByteArrayOutputStream clientOutput = new ByteArrayOutputStream();
+		StreamMessageConsumer clientConsumer = new StreamMessageConsumer(clientOutput, jsonHandler);
+		clientConsumer.setCompression(clientCompression);
+		clientConsumer.consume(notification("initialize"));
+
+		// The server reads that message and sends a large response
+		StreamMessageProducer serverProducer = new StreamMessageProducer(new ByteArrayInputStream(clientOutput.toByteArray()), jsonHandler);
+		serverProducer.setCompression(serverCompression);
+		List<Message> serverMessages = new ArrayList<>();
+		serverProducer.listen(serverMessages::add);
+		Assert.assertEquals(1, serverMessages.size());
+		Assert.assertEquals(MessageCompression.GZIP, serverCompression.getNegotiatedEncoding());
+
+		ByteArrayOutputStream serverOutput = new ByteArrayOutputStream();
+		StreamMessageConsumer serverConsumer = new StreamMessageConsumer(serverOutput, jsonHandler);
+		serverConsumer.setCompression(serverCompression);
+		serverConsumer.consume(notification(LARGE_PARAMS));
+		serverConsumer.consume(notification(LARGE_PARAMS));
+		Assert.assertTrue(serverOutput.size() < 2 * LARGE_PARAMS.length());
+
+		// The client decompresses the response
+		StreamMessageProducer clientProducer = new StreamMessageProducer(new ByteArrayInputStream(serverOutput.toByteArray()), jsonHandler);
+		clientProducer.setCompression(clientCompression);
+		List<Message> clientMessages = new ArrayList<>();
+		clientProducer.listen(clientMessages::add);
+		Assert.assertEquals(2, clientMessages.size());
+		Assert.assertEquals(LARGE_PARAMS, params(clientMessages.get(1)));
+		Assert.assertEquals(MessageCompression.GZIP, clientCompression.getNegotiatedEncoding());
+
+		// Both sides know each other's encodings now, so no more announcements are sent
+		clientOutput.reset();
+		clientConsumer.consume(notification("small"));
+		Assert.assertFalse(clientOutput.toString(StandardCharsets.US_ASCII.name()).contains("Accept-Encoding"));
+	}
+
+	@Test
+	public void testFrameDecoder() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		MessageCompression compression = new MessageCompression(1000, MessageCompression.DEFLATE);
+		compression.peerAccepts("deflate");
+		consumer.setCompression(compression);
+		consumer.consume(notification(LARGE_PARAMS));
+		consumer.consume(notification("small"));
+
+		List<Message> messages = new ArrayList<>();
+		MessageFrameDecoder decoder = new MessageFrameDecoder(jsonHandler, messages::add);
+		decoder.setCompression(new MessageCompression(1000, MessageCompression.DEFLATE));
+		byte[] bytes = output.toByteArray();
+		// Feed the whole input at once and then in small chunks
+		decoder.feed(bytes, 0, bytes.length);
+		for (int i = 0; i < bytes.length; i += 100) {
+			decoder.feed(bytes, i, Math.min(100, bytes.length - i));
+		}
+		Assert.assertEquals(4, messages.size());
+		Assert.assertEquals(LARGE_PARAMS, params(messages.get(0)));
+		Assert.assertEquals("small", params(messages.get(1)));
+		Assert.assertEquals(LARGE_PARAMS, params(messages.get(2)));
+	}
+
+	@Test
+	public void testMaxDecompressedSize() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		MessageCompression compression = new MessageCompression(1000, MessageCompression.GZIP);
+		compression.peerAccepts("gzip");
+		consumer.setCompression(compression);
+		consumer.consume(notification(LARGE_PARAMS));
+		consumer.consume(notification("small"));
+
+		List<Message> issueMessages = new ArrayList<>();
+		List<MessageIssue> issues = new ArrayList<>();
+		StreamMessageProducer producer = new StreamMessageProducer(new ByteArrayInputStream(output.toByteArray()), jsonHandler,
+				(message, messageIssues) -> {
+					issueMessages.add(message);
+					issues.addAll(messageIssues);
+				});
+		producer.setCompression(new MessageCompression(1000, MessageCompression.GZIP));
+		// The compressed content is smaller than this, but the decompressed content is larger
+		producer.setMaxMessageSize(5000);
+		List<Message> messages = new ArrayList<>();
+		producer.listen(messages::add);
+
+		Assert.assertEquals(1, issues.size());
+		Assert.assertEquals("foo", ((NotificationMessage) issueMessages.get(0)).getMethod());
+		Assert.assertEquals("Decompressed message exceeds the maximal size of 5000 bytes.", issues.get(0).getText());
+		Assert.assertEquals(1, messages.size());
+		Assert.assertEquals("small", params(messages.get(0)));
+	}
+
+	@Test
+	public void testMaxDecompressedSizeOfCompression() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		MessageCompression compression = new MessageCompression(1000, MessageCompression.GZIP);
+		compression.peerAccepts("gzip");
+		consumer.setCompression(compression);
+		consumer.consume(notification(LARGE_PARAMS));
+		consumer.consume(notification("small"));
+
+		List<MessageIssue> issues = new ArrayList<>();
+		StreamMessageProducer producer = new StreamMessageProducer(new ByteArrayInputStream(output.toByteArray()), jsonHandler,
+				(message, messageIssues) -> issues.addAll(messageIssues));
+		// The decompressed size is limited independently of the maximal message size
+		producer.setCompression(new MessageCompression(1000, 5000, MessageCompression.GZIP));
+		List<Message> messages = new ArrayList<>();
+		producer.listen(messages::add);
+
+		Assert.assertEquals(1, issues.size());
+		Assert.assertEquals("Decompressed message exceeds the maximal size of 5000 bytes.", issues.get(0).getText());
+		Assert.assertEquals(1, messages.size());
+		Assert.assertEquals("small", params(messages.get(0)));
+		Assert.assertEquals(MessageCompression.DEFAULT_MAX_DECOMPRESSED_SIZE, new MessageCompression().getMaxDecompressedSize());
+	}
+
+	@Test
+	public void testCompressionNotEnabled() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		MessageCompression compression = new MessageCompression(1000, MessageCompression.GZIP);
+		compression.peerAccepts("gzip");
+		consumer.setCompression(compression);
+		consumer.consume(notification(LARGE_PARAMS));
+		consumer.consume(notification("small"));
+		byte[] bytes = output.toByteArray();
+
+		List<Message> messages = new ArrayList<>();
+		new StreamMessageProducer(new ByteArrayInputStream(bytes), jsonHandler).listen(messages::add);
+		Assert.assertEquals(1, messages.size());
+		Assert.assertEquals("small", params(messages.get(0)));
+
+		messages.clear();
+		new MessageFrameDecoder(jsonHandler, messages::add).feed(bytes, 0, bytes.length);
+		Assert.assertEquals(1, messages.size());
+		Assert.assertEquals("small", params(messages.get(0)));
+	}
+
+}
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.JsonRpcException;
+import org.eclipse.lsp4j.jsonrpc.json.AsyncStreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.MessageOutputQueue;
+import org.eclipse.lsp4j.jsonrpc.json.MessageOutputQueue.OverflowPolicy;
+import org.eclipse.lsp4j.jsonrpc.json.MessageOutputQueue.SaturationEvent;
+import org.eclipse.lsp4j.jsonrpc.json.OutputQueueFullException;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageConsumerTest {
+
+	private static NotificationMessage notification(String params) {
+		NotificationMessage message = new NotificationMessage();
+		message.setMethod("foo");
+		message.setParams(params);
+		return message;
+	}
+
+	private static NotificationMessage notification(String method, String params) {
+		NotificationMessage message = notification(params);
+		message.setMethod(method);
+		return message;
+	}
+
+	private static String expectedOutput(MessageJsonHandler jsonHandler, NotificationMessage message) {
+		String content = jsonHandler.serialize(message);
+		return "Content-Length: " + content.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + content;
+	}
+
+	@Test
+	public void testUtf8Encoding() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		NotificationMessage message = notification("aä€😀\ud83dz");
+		consumer.consume(message);
+
+		String expected = expectedOutput(jsonHandler, message);
+		Assert.assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), output.toByteArray());
+	}
+
+	@Test
+	public void testLargeMessage() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, jsonHandler);
+		NotificationMessage message = notification(new String(new char[100000]).replace('\0', 'ü'));
+		consumer.consume(message);
+		consumer.consume(notification("small"));
+
+		String expected = expectedOutput(jsonHandler, message) + expectedOutput(jsonHandler, notification("small"));
+		Assert.assertEquals(expected, output.toString(StandardCharsets.UTF_8.name()));
+	}
+
+	@Test
+	public void testOtherEncoding() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, StandardCharsets.UTF_16.name(), jsonHandler);
+		NotificationMessage message = notification("ä");
+		consumer.consume(message);
+
+		byte[] content = jsonHandler.serialize(message).getBytes(StandardCharsets.UTF_16);
+		String header = "Content-Length: " + content.length + "\r\n"
+				+ "Content-Type: application/json; charset=UTF-16\r\n\r\n";
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(header.getBytes(StandardCharsets.US_ASCII));
+		expected.write(content);
+		Assert.assertArrayEquals(expected.toByteArray(), output.toByteArray());
+	}
+
+	@Test
+	public void testChannel() throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(Channels.newChannel(output), jsonHandler);
+		NotificationMessage message = notification("bar");
+		consumer.consume(message);
+
+		Assert.assertEquals(expectedOutput(jsonHandler, message), output.toString(StandardCharsets.UTF_8.name()));
+	}
+
+	@Test
+	public void testAsyncWriter() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		List<Runnable> tasks = new ArrayList<>();
+		MessageOutputQueue queue = new MessageOutputQueue(10);
+		AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(output, jsonHandler, queue, tasks::add);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5; i++) {
+			NotificationMessage message = notification("message " + i);
+			consumer.consume(message);
+			expected.append(expectedOutput(jsonHandler, message));
+		}
+		Assert.assertEquals(1, tasks.size());
+		Assert.assertEquals(5, queue.getQueueDepth());
+		Assert.assertEquals(0, output.size());
+
+		tasks.get(0).run();
+		Assert.assertEquals(expected.toString(), output.toString(StandardCharsets.UTF_8.name()));
+		Assert.assertEquals(0, queue.getQueueDepth());
+		Assert.assertEquals(1, queue.getBatchCount());
+		Assert.assertEquals(5, queue.getMessageCount());
+		Assert.assertEquals(5, queue.getMaxBatchSize());
+
+		// The writer is scheduled again for the next message
+		consumer.consume(notification("next"));
+		Assert.assertEquals(2, tasks.size());
+	}
+
+	@Test
+	public void testAsyncWriterThread() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			MessageOutputQueue queue = new MessageOutputQueue(4);
+			AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(Channels.newChannel(output), jsonHandler, queue, executor);
+			StringBuilder expected = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				NotificationMessage message = notification("message " + i);
+				consumer.consume(message);
+				expected.append(expectedOutput(jsonHandler, message));
+			}
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			Assert.assertEquals(expected.toString(), output.toString(StandardCharsets.UTF_8.name()));
+			Assert.assertEquals(100, queue.getMessageCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testAsyncWriterFailure() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		OutputStream output = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Stream closed");
+			}
+		};
+		MessageOutputQueue queue = new MessageOutputQueue();
+		AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(output, jsonHandler, queue, Runnable::run);
+		try {
+			consumer.consume(notification("foo"));
+			Assert.fail("Expected a JsonRpcException");
+		} catch (JsonRpcException exception) {
+			Assert.assertEquals("Stream closed", exception.getCause().getMessage());
+		}
+		Assert.assertEquals(0, queue.getQueueDepth());
+	}
+
+	@Test
+	public void testQueueFailFast() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		MessageOutputQueue queue = new MessageOutputQueue(2, Long.MAX_VALUE, OverflowPolicy.FAIL);
+		List<SaturationEvent> events = new ArrayList<>();
+		queue.setSaturationListener(events::add);
+		AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(new ByteArrayOutputStream(), jsonHandler, queue, task -> {});
+		consumer.consume(notification("1"));
+		consumer.consume(notification("2"));
+		try {
+			consumer.consume(notification("3"));
+			Assert.fail("Expected a JsonRpcException");
+		} catch (JsonRpcException exception) {
+			Assert.assertTrue(exception.getCause() instanceof OutputQueueFullException);
+		}
+		Assert.assertEquals(2, queue.getQueueDepth());
+		Assert.assertEquals(1, queue.getRejectedCount());
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(SaturationEvent.Kind.REJECTED, events.get(0).getKind());
+	}
+
+	@Test
+	public void testQueueByteCapacity() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		MessageOutputQueue queue = new MessageOutputQueue(100, 100, OverflowPolicy.FAIL);
+		AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(new ByteArrayOutputStream(), jsonHandler, queue, task -> {});
+		// A single message larger than the byte capacity is accepted when the queue is empty
+		consumer.consume(notification(new String(new char[200]).replace('\0', 'x')));
+		try {
+			consumer.consume(notification("small"));
+			Assert.fail("Expected a JsonRpcException");
+		} catch (JsonRpcException exception) {
+			Assert.assertTrue(exception.getCause() instanceof OutputQueueFullException);
+		}
+		Assert.assertEquals(1, queue.getQueueDepth());
+		Assert.assertTrue(queue.getQueuedBytes() > 200);
+	}
+
+	@Test
+	public void testQueueDropLowPriority() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		List<Runnable> tasks = new ArrayList<>();
+		MessageOutputQueue queue = new MessageOutputQueue(2, Long.MAX_VALUE, OverflowPolicy.DROP_LOW_PRIORITY);
+		List<SaturationEvent> events = new ArrayList<>();
+		queue.setSaturationListener(events::add);
+		AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(output, jsonHandler, queue, tasks::add);
+		NotificationMessage log1 = notification("window/logMessage", "log 1");
+		NotificationMessage important = notification("foo", "important");
+		NotificationMessage log2 = notification("window/logMessage", "log 2");
+		NotificationMessage other = notification("foo", "other");
+		consumer.consume(log1);
+		consumer.consume(important);
+		// The queue is full: the low-priority notification is dropped
+		consumer.consume(log2);
+		// The queue is full: the queued low-priority notification is evicted
+		consumer.consume(other);
+
+		tasks.get(0).run();
+		String expected = expectedOutput(jsonHandler, important) + expectedOutput(jsonHandler, other);
+		Assert.assertEquals(expected, output.toString(StandardCharsets.UTF_8.name()));
+		Assert.assertEquals(2, queue.getDroppedCount());
+		Assert.assertEquals(2, events.size());
+		Assert.assertEquals(SaturationEvent.Kind.DROPPED, events.get(0).getKind());
+		Assert.assertEquals("window/logMessage", events.get(0).getMethod());
+		Assert.assertEquals(SaturationEvent.Kind.DROPPED, events.get(1).getKind());
+	}
+
+	@Test
+	public void testQueueCoalesceLowPriority() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		List<Runnable> tasks = new ArrayList<>();
+		MessageOutputQueue queue = new MessageOutputQueue(3, Long.MAX_VALUE, OverflowPolicy.COALESCE_LOW_PRIORITY);
+		List<SaturationEvent> events = new ArrayList<>();
+		queue.setSaturationListener(events::add);
+		AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(output, jsonHandler, queue, tasks::add);
+		NotificationMessage event1 = notification("telemetry/event", "event 1");
+		NotificationMessage important = notification("foo", "important");
+		NotificationMessage event2 = notification("telemetry/event", "event 2");
+		NotificationMessage event3 = notification("telemetry/event", "event 3");
+		consumer.consume(event1);
+		consumer.consume(important);
+		consumer.consume(event2);
+		// The queue is full: the queued events are replaced by the latest one
+		consumer.consume(event3);
+
+		tasks.get(0).run();
+		String expected = expectedOutput(jsonHandler, important) + expectedOutput(jsonHandler, event3);
+		Assert.assertEquals(expected, output.toString(StandardCharsets.UTF_8.name()));
+		Assert.assertEquals(2, queue.getDroppedCount());
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(SaturationEvent.Kind.COALESCED, events.get(0).getKind());
+	}
+
+	@Test
+	public void testQueueCoalesceEvictsOtherLowPriority() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		List<Runnable> tasks = new ArrayList<>();
+		MessageOutputQueue queue = new MessageOutputQueue(2, Long.MAX_VALUE, OverflowPolicy.COALESCE_LOW_PRIORITY);
+		List<SaturationEvent> events = new ArrayList<>();
+		queue.setSaturationListener(events::add);
+		AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(output, jsonHandler, queue, tasks::add);
+		NotificationMessage log = notification("window/logMessage", "log");
+		NotificationMessage important = notification("foo", "important");
+		NotificationMessage event = notification("telemetry/event", "event");
+		consumer.consume(log);
+		consumer.consume(important);
+		// The queue is full and there is nothing to coalesce: the older low-priority notification is evicted
+		consumer.consume(event);
+
+		tasks.get(0).run();
+		String expected = expectedOutput(jsonHandler, important) + expectedOutput(jsonHandler, event);
+		Assert.assertEquals(expected, output.toString(StandardCharsets.UTF_8.name()));
+		Assert.assertEquals(1, queue.getDroppedCount());
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(SaturationEvent.Kind.DROPPED, events.get(0).getKind());
+		Assert.assertEquals("window/logMessage", events.get(0).getMethod());
+	}
+
+	@Test
+	public void testQueueBlock() throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		List<Runnable> tasks = new ArrayList<>();
+		MessageOutputQueue queue = new MessageOutputQueue(1);
+		List<SaturationEvent> events = Collections.synchronizedList(new ArrayList<>());
+		queue.setSaturationListener(events::add);
+		AsyncStreamMessageConsumer consumer = new AsyncStreamMessageConsumer(output, jsonHandler, queue, tasks::add);
+		consumer.consume(notification("window/logMessage", "1"));
+		Thread sender = new Thread(() -> consumer.consume(notification("window/logMessage", "2")));
+		sender.start();
+		sender.join(100);
+		Assert.assertTrue(sender.isAlive());
+
+		tasks.get(0).run();
+		sender.join(10000);
+		Assert.assertFalse(sender.isAlive());
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(SaturationEvent.Kind.BLOCKED, events.get(0).getKind());
+		Assert.assertEquals(0, queue.getDroppedCount());
+	}
+
+}
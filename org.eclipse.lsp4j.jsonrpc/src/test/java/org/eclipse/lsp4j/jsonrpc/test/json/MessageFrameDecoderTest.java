@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.json.MessageFrameDecoder;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageFrameDecoderTest {
+
+	private Level logLevel;
+
+	@Before
+	public void setup() {
+		Logger logger = Logger.getLogger(MessageFrameDecoder.class.getName());
+		logLevel = logger.getLevel();
+		logger.setLevel(Level.OFF);
+	}
+
+	@After
+	public void teardown() {
+		Logger logger = Logger.getLogger(MessageFrameDecoder.class.getName());
+		logger.setLevel(logLevel);
+	}
+
+	private static String notification(String method) {
+		String content = "{\"jsonrpc\":\"2.0\",\"method\":\"" + method + "\"}";
+		return "Content-Length: " + content.length() + "\r\n\r\n" + content;
+	}
+
+	private static void assertMethods(List<Message> messages, String... methods) {
+		Assert.assertEquals(methods.length, messages.size());
+		for (int i = 0; i < methods.length; i++) {
+			Assert.assertEquals(methods[i], ((NotificationMessage) messages.get(i)).getMethod());
+		}
+	}
+
+	@Test
+	public void testMultipleMessagesInOneChunk() {
+		List<Message> messages = new ArrayList<>();
+		MessageFrameDecoder decoder = new MessageFrameDecoder(new MessageJsonHandler(Collections.emptyMap()), messages::add);
+		decoder.feed(ByteBuffer.wrap((notification("foo") + notification("bar") + notification("baz")).getBytes(StandardCharsets.UTF_8)));
+		assertMethods(messages, "foo", "bar", "baz");
+		Assert.assertTrue(decoder.isIdle());
+	}
+
+	@Test
+	public void testSplitAtEveryPosition() {
+		byte[] bytes = ("Content-Type: application/json; charset=utf-8\r\n" + notification("foo") + notification("bar"))
+				.getBytes(StandardCharsets.UTF_8);
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		for (int split = 0; split <= bytes.length; split++) {
+			List<Message> messages = new ArrayList<>();
+			MessageFrameDecoder decoder = new MessageFrameDecoder(jsonHandler, messages::add);
+			decoder.feed(bytes, 0, split);
+			decoder.feed(bytes, split, bytes.length - split);
+			assertMethods(messages, "foo", "bar");
+		}
+	}
+
+	@Test
+	public void testByteByByte() {
+		byte[] bytes = (notification("foo") + notification("bar")).getBytes(StandardCharsets.UTF_8);
+		List<Message> messages = new ArrayList<>();
+		MessageFrameDecoder decoder = new MessageFrameDecoder(new MessageJsonHandler(Collections.emptyMap()), messages::add);
+		for (int i = 0; i < bytes.length; i++) {
+			decoder.feed(bytes, i, 1);
+			if (i == 10)
+				Assert.assertFalse(decoder.isIdle());
+		}
+		assertMethods(messages, "foo", "bar");
+		Assert.assertTrue(decoder.isIdle());
+	}
+
+	@Test
+	public void testRandomChunks() {
+		StringBuilder input = new StringBuilder();
+		List<String> methods = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			methods.add("method" + i);
+			input.append(notification("method" + i));
+		}
+		byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+		List<Message> messages = new ArrayList<>();
+		MessageFrameDecoder decoder = new MessageFrameDecoder(new MessageJsonHandler(Collections.emptyMap()), messages::add);
+		Random random = new Random(42);
+		ByteBuffer chunk = ByteBuffer.allocateDirect(256);
+		for (int position = 0; position < bytes.length;) {
+			int length = Math.min(random.nextInt(chunk.capacity()) + 1, bytes.length - position);
+			chunk.clear();
+			chunk.put(bytes, position, length);
+			chunk.flip();
+			decoder.feed(chunk);
+			Assert.assertFalse(chunk.hasRemaining());
+			position += length;
+		}
+		assertMethods(messages, methods.toArray(new String[methods.size()]));
+	}
+
+	@Test
+	public void testOtherCharset() {
+		String content = "{\"jsonrpc\":\"2.0\",\"method\":\"föö\"}";
+		byte[] contentBytes = content.getBytes(StandardCharsets.UTF_16);
+		byte[] header = ("Content-Length: " + contentBytes.length + "\r\n"
+				+ "Content-Type: application/json; charset=UTF-16\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+		List<Message> messages = new ArrayList<>();
+		MessageFrameDecoder decoder = new MessageFrameDecoder(new MessageJsonHandler(Collections.emptyMap()), messages::add);
+		decoder.feed(header, 0, header.length);
+		decoder.feed(contentBytes, 0, 5);
+		decoder.feed(contentBytes, 5, contentBytes.length - 5);
+		assertMethods(messages, "föö");
+	}
+
+	@Test
+	public void testMaxMessageSize() {
+		String content = "{\"jsonrpc\":\"2.0\",\"id\":42,\"method\":\"foo\",\"params\":\"" + new String(new char[10000]).replace('\0', 'x') + "\"}";
+		byte[] bytes = ("Content-Length: " + content.length() + "\r\n\r\n" + content + notification("bar"))
+				.getBytes(StandardCharsets.UTF_8);
+		List<Message> messages = new ArrayList<>();
+		List<Message> issueMessages = new ArrayList<>();
+		List<MessageIssue> issues = new ArrayList<>();
+		MessageFrameDecoder decoder = new MessageFrameDecoder(new MessageJsonHandler(Collections.emptyMap()), messages::add,
+				(message, messageIssues) -> {
+					issueMessages.add(message);
+					issues.addAll(messageIssues);
+				});
+		decoder.setMaxMessageSize(1000);
+		for (int position = 0; position < bytes.length; position += 100) {
+			decoder.feed(bytes, position, Math.min(100, bytes.length - position));
+		}
+
+		Assert.assertEquals(1, issueMessages.size());
+		RequestMessage request = (RequestMessage) issueMessages.get(0);
+		Assert.assertEquals("42", request.getId());
+		Assert.assertEquals("foo", request.getMethod());
+		Assert.assertTrue(issues.get(0).getText(), issues.get(0).getText().startsWith("Message exceeds the maximal size of 1000 bytes"));
+		assertMethods(messages, "bar");
+	}
+
+	@Test
+	public void testRecoverFromErrors() {
+		String malformed = "{\"jsonrpc\":\"2.0\",\"method\":";
+		byte[] bytes = ("Foo: bar\r\n\r\n" + "Content-Length: " + malformed.length() + "\r\n\r\n" + malformed + notification("foo"))
+				.getBytes(StandardCharsets.UTF_8);
+		List<Message> messages = new ArrayList<>();
+		MessageFrameDecoder decoder = new MessageFrameDecoder(new MessageJsonHandler(Collections.emptyMap()), messages::add);
+		decoder.feed(bytes, 0, bytes.length);
+		assertMethods(messages, "foo");
+	}
+
+	@Test
+	public void testReset() {
+		byte[] bytes = notification("foo").getBytes(StandardCharsets.UTF_8);
+		List<Message> messages = new ArrayList<>();
+		MessageFrameDecoder decoder = new MessageFrameDecoder(new MessageJsonHandler(Collections.emptyMap()), messages::add);
+		decoder.feed(bytes, 0, bytes.length - 3);
+		Assert.assertFalse(decoder.isIdle());
+		decoder.reset();
+		Assert.assertTrue(decoder.isIdle());
+		decoder.feed(bytes, 0, bytes.length);
+		assertMethods(messages, "foo");
+	}
+
+}
@@ -7,6 +7,8 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.test.json;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -19,6 +21,7 @@ import java.util.function.Consumer;
 
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.TypeAdapterRegistry;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
@@ -94,6 +97,22 @@ public class MessageJsonHandlerTest {
 		}
 	}
 	
+	@Test
+	public void testParseFromBytes() {
+		MessageJsonHandler handler = new MessageJsonHandler(Collections.emptyMap());
+		byte[] bytes = "{\"jsonrpc\":\"2.0\",\"method\":\"f\u00f6\u00f6\u20ac\",\"params\":\"\ud83d\ude00\"}"
+				.getBytes(StandardCharsets.UTF_8);
+		NotificationMessage message = (NotificationMessage) handler.parseMessage(ByteBuffer.wrap(bytes));
+		Assert.assertEquals("f\u00f6\u00f6\u20ac", message.getMethod());
+		Assert.assertEquals("\ud83d\ude00", message.getParams().toString().replace("\"", ""));
+		
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 2);
+		direct.put((byte) 'x').put(bytes).put((byte) 'x');
+		direct.position(1).limit(bytes.length + 1);
+		message = (NotificationMessage) handler.parseMessage(direct, StandardCharsets.UTF_8);
+		Assert.assertEquals("f\u00f6\u00f6\u20ac", message.getMethod());
+	}
+	
 	@Test
 	public void testSerializeEmptyList() {
 		MessageJsonHandler handler = new MessageJsonHandler(Collections.emptyMap());
@@ -726,4 +745,28 @@ public class MessageJsonHandlerTest {
 			Assert.assertEquals("dummy://mymodel.mydsl", ((Location)params).uri);
 		});
 	}
+
+	@Test
+	public void testSharedTypeAdapterRegistry() {
+		TypeAdapterRegistry registry = new TypeAdapterRegistry(TypeAdapterRegistry.createGsonBuilder());
+		Map<String, JsonRpcMethod> fooMethods = new LinkedHashMap<>();
+		fooMethods.put("foo", JsonRpcMethod.notification("foo", Location.class));
+		Map<String, JsonRpcMethod> barMethods = new LinkedHashMap<>();
+		barMethods.put("bar", JsonRpcMethod.notification("bar", Entry.class));
+		MessageJsonHandler fooHandler = new MessageJsonHandler(fooMethods, registry);
+		MessageJsonHandler barHandler = new MessageJsonHandler(barMethods, registry);
+		
+		NotificationMessage foo = (NotificationMessage) fooHandler.parseMessage("{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":{\"uri\":\"dummy://foo\"}}");
+		Assert.assertEquals("dummy://foo", ((Location) foo.getParams()).uri);
+		NotificationMessage bar = (NotificationMessage) barHandler.parseMessage("{\"jsonrpc\":\"2.0\",\"method\":\"bar\",\"params\":{\"name\":\"bar\",\"location\":{\"uri\":\"dummy://bar\"}}}");
+		Assert.assertEquals("dummy://bar", ((Entry) bar.getParams()).location.uri);
+		// Messages are resolved with the methods of each handler
+		NotificationMessage unknown = (NotificationMessage) barHandler.parseMessage(fooHandler.serialize(foo));
+		Assert.assertEquals(JsonObject.class, unknown.getParams().getClass());
+		
+		// The adapters of other types are created once and shared
+		Assert.assertSame(registry.getAdapter(TypeToken.get(Location.class)), fooHandler.getGson().getAdapter(Location.class));
+		Assert.assertSame(fooHandler.getGson().getAdapter(Location.class), barHandler.getGson().getAdapter(Location.class));
+		Assert.assertNotSame(fooHandler.getGson().getAdapter(Message.class), barHandler.getGson().getAdapter(Message.class));
+	}
 }
@@ -7,12 +7,18 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.test.json;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
 import java.net.SocketException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -21,9 +27,17 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.lsp4j.jsonrpc.JsonRpcException;
+import org.eclipse.lsp4j.jsonrpc.json.BufferPool;
+import org.eclipse.lsp4j.jsonrpc.json.MessageDecodingPipeline;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.SizeClassBufferPool;
 import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.MessageIssue;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -116,5 +130,213 @@ public class MessageProducerTest {
 			throw e.getCause();
 		}
 	}
+	
+	private static String notification(String method) {
+		String content = "{\"jsonrpc\":\"2.0\",\"method\":\"" + method + "\"}";
+		return "Content-Length: " + content.length() + "\r\n\r\n" + content;
+	}
+	
+	private List<Message> readMessages(StreamMessageProducer messageProducer) {
+		List<Message> messages = new ArrayList<>();
+		messageProducer.listen(messages::add);
+		return messages;
+	}
+	
+	@Test
+	public void testMultipleMessagesInOneChunk() throws Exception {
+		InputStream input = new ByteArrayInputStream((notification("foo") + notification("bar") + notification("baz"))
+				.getBytes(StandardCharsets.UTF_8));
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		List<Message> messages = readMessages(new StreamMessageProducer(input, jsonHandler));
+		Assert.assertEquals(3, messages.size());
+		Assert.assertEquals("foo", ((NotificationMessage) messages.get(0)).getMethod());
+		Assert.assertEquals("bar", ((NotificationMessage) messages.get(1)).getMethod());
+		Assert.assertEquals("baz", ((NotificationMessage) messages.get(2)).getMethod());
+	}
+	
+	@Test
+	public void testHeadersSplitAcrossReads() throws Exception {
+		byte[] bytes = ("Content-Type: application/json; charset=utf-8\r\n" + notification("foo") + notification("bar"))
+				.getBytes(StandardCharsets.UTF_8);
+		InputStream input = new ByteArrayInputStream(bytes) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				// Deliver the input byte by byte
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		List<Message> messages = readMessages(new StreamMessageProducer(input, jsonHandler));
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals("foo", ((NotificationMessage) messages.get(0)).getMethod());
+		Assert.assertEquals("bar", ((NotificationMessage) messages.get(1)).getMethod());
+	}
+	
+	@Test
+	public void testCustomHeaderParser() throws Exception {
+		InputStream input = new ByteArrayInputStream(("X-Custom: 42\r\n" + notification("foo"))
+				.getBytes(StandardCharsets.UTF_8));
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		List<String> headerLines = new ArrayList<>();
+		StreamMessageProducer messageProducer = new StreamMessageProducer(input, jsonHandler) {
+			@Override
+			protected void parseHeader(String line, Headers headers) {
+				headerLines.add(line);
+				super.parseHeader(line, headers);
+			}
+		};
+		List<Message> messages = readMessages(messageProducer);
+		Assert.assertEquals(1, messages.size());
+		Assert.assertEquals(Collections.singletonList("X-Custom: 42"), headerLines.subList(0, 1));
+		Assert.assertEquals(2, headerLines.size());
+	}
+	
+	@Test
+	public void testMaxMessageSize() throws Exception {
+		String content = "{\"jsonrpc\":\"2.0\",\"id\":42,\"method\":\"foo\",\"params\":\"" + new String(new char[10000]).replace('\0', 'x') + "\"}";
+		InputStream input = new ByteArrayInputStream(("Content-Length: " + content.length() + "\r\n\r\n" + content + notification("bar"))
+				.getBytes(StandardCharsets.UTF_8));
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		List<Message> issueMessages = new ArrayList<>();
+		List<MessageIssue> issues = new ArrayList<>();
+		StreamMessageProducer messageProducer = new StreamMessageProducer(input, jsonHandler, (message, messageIssues) -> {
+			issueMessages.add(message);
+			issues.addAll(messageIssues);
+		});
+		messageProducer.setMaxMessageSize(1000);
+		List<Message> messages = readMessages(messageProducer);
+		
+		Assert.assertEquals(1, issueMessages.size());
+		RequestMessage request = (RequestMessage) issueMessages.get(0);
+		Assert.assertEquals("42", request.getId());
+		Assert.assertEquals("foo", request.getMethod());
+		Assert.assertTrue(issues.get(0).getText(), issues.get(0).getText().startsWith("Message exceeds the maximal size of 1000 bytes"));
+		Assert.assertEquals(1, messages.size());
+		Assert.assertEquals("bar", ((NotificationMessage) messages.get(0)).getMethod());
+	}
+	
+	@Test
+	public void testBufferPool() throws Exception {
+		InputStream input = new ByteArrayInputStream((notification("foo") + notification("bar"))
+				.getBytes(StandardCharsets.UTF_8));
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		StreamMessageProducer messageProducer = new StreamMessageProducer(input, jsonHandler);
+		SizeClassBufferPool delegate = new SizeClassBufferPool();
+		List<byte[]> acquired = new ArrayList<>();
+		List<byte[]> released = new ArrayList<>();
+		messageProducer.setBufferPool(new BufferPool() {
+			@Override
+			public byte[] acquire(int minLength) {
+				byte[] buffer = delegate.acquire(minLength);
+				acquired.add(buffer);
+				return buffer;
+			}
+			@Override
+			public void release(byte[] buffer) {
+				released.add(buffer);
+				delegate.release(buffer);
+			}
+		});
+		List<Message> messages = readMessages(messageProducer);
+		
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals(acquired, released);
+		// The second message reuses the buffer of the first one
+		Assert.assertSame(acquired.get(0), acquired.get(1));
+	}
+	
+	@Test
+	public void testDecodingPipeline() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			input.append(notification("foo" + i));
+		}
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		StreamMessageProducer messageProducer = new StreamMessageProducer(
+				new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)), jsonHandler);
+		List<byte[]> released = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> releasingThreads = Collections.synchronizedList(new ArrayList<>());
+		SizeClassBufferPool delegate = new SizeClassBufferPool();
+		messageProducer.setBufferPool(new BufferPool() {
+			@Override
+			public byte[] acquire(int minLength) {
+				return delegate.acquire(minLength);
+			}
+			@Override
+			public void release(byte[] buffer) {
+				released.add(buffer);
+				releasingThreads.add(Thread.currentThread());
+				delegate.release(buffer);
+			}
+		});
+		MessageDecodingPipeline pipeline = new MessageDecodingPipeline(2);
+		messageProducer.setDecodingPipeline(pipeline, executorService);
+		List<Message> messages = Collections.synchronizedList(new ArrayList<>());
+		messageProducer.listen(message -> {
+			messages.add(message);
+			if (messages.size() % 10 == 0)
+				Thread.yield();
+		});
+		
+		// All messages have been decoded when listen returns
+		Assert.assertEquals(100, messages.size());
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals("foo" + i, ((NotificationMessage) messages.get(i)).getMethod());
+		}
+		Assert.assertEquals(100, released.size());
+		// The buffers are released on the reading thread, which has acquired them
+		Assert.assertTrue(releasingThreads.stream().allMatch(thread -> thread == Thread.currentThread()));
+		Assert.assertEquals(100, pipeline.getFrameCount());
+		Assert.assertEquals(0, pipeline.getQueueDepth());
+		Assert.assertTrue(pipeline.getMaxQueueDepth() >= 1 && pipeline.getMaxQueueDepth() <= 2);
+	}
+	
+	@Test
+	public void testSizeClassBufferPool() {
+		SizeClassBufferPool pool = new SizeClassBufferPool(4096, 1, 1, TimeUnit.MINUTES);
+		byte[] small = pool.acquire(100);
+		Assert.assertEquals(1024, small.length);
+		byte[] medium = pool.acquire(3000);
+		Assert.assertEquals(4096, medium.length);
+		Assert.assertEquals(5000, pool.acquire(5000).length);
+		pool.release(small);
+		pool.release(medium);
+		Assert.assertSame(small, pool.acquire(1024));
+		Assert.assertNotSame(small, pool.acquire(1024));
+		Assert.assertSame(medium, pool.acquire(2049));
+		pool.release(medium);
+		pool.trim();
+		Assert.assertNotSame(medium, pool.acquire(4096));
+	}
+	
+	@Test
+	public void testSizeClassBufferPoolIdleThread() throws Exception {
+		SizeClassBufferPool pool = new SizeClassBufferPool(4096, 1, 50, TimeUnit.MILLISECONDS);
+		List<WeakReference<byte[]>> released = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(1);
+		Thread thread = new Thread(() -> {
+			byte[] buffer = pool.acquire(100);
+			released.add(new WeakReference<>(buffer));
+			pool.release(buffer);
+			buffer = null;
+			try {
+				// Stay alive without using the pool again
+				done.await();
+			} catch (InterruptedException exception) {
+			}
+		});
+		thread.start();
+		try {
+			long start = System.currentTimeMillis();
+			while (released.isEmpty() || released.get(0).get() != null) {
+				Assert.assertTrue("The buffer of the idle thread is still retained", System.currentTimeMillis() - start < 5000);
+				System.gc();
+				Thread.sleep(10);
+			}
+		} finally {
+			done.countDown();
+			thread.join();
+		}
+	}
 
 }
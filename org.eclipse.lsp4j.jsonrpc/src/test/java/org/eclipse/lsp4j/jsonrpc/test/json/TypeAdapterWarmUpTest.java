@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.TypeAdapterRegistry;
+import org.eclipse.lsp4j.jsonrpc.json.TypeAdapterWarmUp;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+public class TypeAdapterWarmUpTest {
+
+	private static final long TIMEOUT = 2000;
+
+	public static interface MyServer {
+		@JsonRequest
+		CompletableFuture<MyClassList> askServer(MyClass param);
+
+		@JsonNotification
+		void notifyServer(String text, List<MyClass> values);
+	}
+
+	/**
+	 * Records the types for which the registry creates adapters.
+	 */
+	private static class RecordingFactory implements TypeAdapterFactory {
+		final Set<Type> types = ConcurrentHashMap.newKeySet();
+
+		@Override
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			types.add(type.getType());
+			return null;
+		}
+	}
+
+	@Test
+	public void testWarmUp() {
+		RecordingFactory factory = new RecordingFactory();
+		TypeAdapterRegistry registry = new TypeAdapterRegistry(TypeAdapterRegistry.createGsonBuilder().registerTypeAdapterFactory(factory));
+		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<>();
+		supportedMethods.put("askServer", JsonRpcMethod.request("askServer", MyClassList.class, MyClass.class));
+		supportedMethods.put("notifyServer", JsonRpcMethod.notification("notifyServer", String.class,
+				new TypeToken<List<MyClass>>() {}.getType()));
+		MessageJsonHandler handler = new MessageJsonHandler(supportedMethods, registry);
+		TypeAdapterWarmUp warmUp = new TypeAdapterWarmUp(handler, supportedMethods.values(), 10) {
+			@Override
+			protected String getSampleMessage(JsonRpcMethod method) {
+				String message = super.getSampleMessage(method);
+				// The synthetic messages must be valid
+				Assert.assertNotNull(handler.parseMessage(message));
+				return message;
+			}
+		};
+		warmUp.run();
+		Assert.assertTrue(factory.types.containsAll(Arrays.asList(MyClass.class, MyClassList.class, String.class,
+				new TypeToken<List<MyClass>>() {}.getType())));
+	}
+
+	@Test
+	public void testLauncherWarmUp() throws Exception {
+		RecordingFactory factory = new RecordingFactory();
+		TypeAdapterRegistry registry = new TypeAdapterRegistry(TypeAdapterRegistry.createGsonBuilder().registerTypeAdapterFactory(factory));
+		new Launcher.Builder<MyServer>()
+			.setLocalService(new Object())
+			.setRemoteInterface(MyServer.class)
+			.setInput(new ByteArrayInputStream(new byte[0]))
+			.setOutput(new ByteArrayOutputStream())
+			.setTypeAdapterRegistry(registry)
+			.setWarmUp(true)
+			.create();
+		long start = System.currentTimeMillis();
+		while (!factory.types.contains(MyClassList.class)) {
+			Assert.assertTrue("Timeout waiting for the warm-up", System.currentTimeMillis() - start < TIMEOUT);
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(factory.types.contains(MyClass.class));
+	}
+
+}
@@ -7,14 +7,18 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.launch;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.ByteChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 
 import org.eclipse.lsp4j.jsonrpc.Launcher;
 import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.MethodPriorities;
+import org.eclipse.lsp4j.jsonrpc.PriorityScheduler;
 import org.eclipse.lsp4j.jsonrpc.validation.ReflectiveMessageValidator;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.LanguageServer;
@@ -86,6 +90,21 @@ public final class LSPLauncher {
 				.create();
 	}
 	
+	/**
+	 * Create a new Launcher for a language server and a blocking channel, e.g. a Unix domain socket channel
+	 * obtained with {@link org.eclipse.lsp4j.jsonrpc.UnixDomainSockets#accept(java.nio.file.Path)}.
+	 * 
+	 * @param server - the server that receives method calls from the remote client
+	 * @param channel - channel to listen for incoming messages and to send outgoing messages
+	 */
+	public static Launcher<LanguageClient> createServerLauncher(LanguageServer server, ByteChannel channel) {
+		return new Builder<LanguageClient>()
+				.setLocalService(server)
+				.setRemoteInterface(LanguageClient.class)
+				.setChannel(channel)
+				.create();
+	}
+	
 	/**
 	 * Create a new Launcher for a language client and an input and output stream.
 	 * 
@@ -146,6 +165,37 @@ public final class LSPLauncher {
 				.create();
 	}
 	
+	/**
+	 * Create a new Launcher for a language client and a blocking channel, e.g. a Unix domain socket channel
+	 * obtained with {@link org.eclipse.lsp4j.jsonrpc.UnixDomainSockets#connect(java.nio.file.Path)}.
+	 * 
+	 * @param client - the client that receives method calls from the remote server
+	 * @param channel - channel to listen for incoming messages and to send outgoing messages
+	 */
+	public static Launcher<LanguageServer> createClientLauncher(LanguageClient client, ByteChannel channel) {
+		return new Builder<LanguageServer>()
+				.setLocalService(client)
+				.setRemoteInterface(LanguageServer.class)
+				.setChannel(channel)
+				.create();
+	}
+	
+	/**
+	 * Create the default priorities of Language Server Protocol methods, e.g. for handling completion requests
+	 * before workspace symbol requests. The priorities are loaded from {@code method-priorities.properties} in
+	 * this package; pass them to a {@link PriorityScheduler} and configure it with
+	 * {@link Launcher.Builder#setPriorityScheduler(PriorityScheduler)}.
+	 */
+	public static MethodPriorities createMethodPriorities() {
+		try (InputStream input = LSPLauncher.class.getResourceAsStream("method-priorities.properties")) {
+			if (input == null)
+				throw new IllegalStateException("Missing resource method-priorities.properties");
+			return MethodPriorities.load(input);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	/**
 	 * Launcher builder for the Language Server Protocol.
 	 */
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2018 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.launch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.lsp4j.CodeActionParams;
+import org.eclipse.lsp4j.CodeLensParams;
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
+import org.eclipse.lsp4j.DocumentColorParams;
+import org.eclipse.lsp4j.DocumentLinkParams;
+import org.eclipse.lsp4j.DocumentSymbolParams;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.StaleRequestCanceller;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+
+/**
+ * Cancels incoming requests that refer to the contents of a text document, e.g. hover and completion, when a
+ * {@code textDocument/didChange} notification with a newer version of that document arrives. The client then
+ * receives a {@code RequestCancelled} error and can send a new request for the changed document.
+ * Requests that modify documents, e.g. formatting and rename, are not cancelled by default.
+ *
+ * <p>Configure a server launcher with {@link Launcher.Builder#setStaleRequestCanceller(StaleRequestCanceller)}.</p>
+ */
+public class StaleDocumentRequestCanceller extends StaleRequestCanceller {
+
+	public static final String DID_CHANGE = "textDocument/didChange";
+	public static final String DID_CLOSE = "textDocument/didClose";
+
+	/** The methods of requests that are cancelled by default. */
+	public static final Set<String> DEFAULT_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			"textDocument/hover",
+			"textDocument/completion",
+			"textDocument/signatureHelp",
+			"textDocument/documentHighlight",
+			"textDocument/definition",
+			"textDocument/typeDefinition",
+			"textDocument/implementation",
+			"textDocument/references",
+			"textDocument/codeAction",
+			"textDocument/codeLens",
+			"textDocument/documentSymbol",
+			"textDocument/documentLink",
+			"textDocument/documentColor")));
+
+	private final Set<String> methods = ConcurrentHashMap.newKeySet();
+
+	public StaleDocumentRequestCanceller() {
+		this(DEFAULT_METHODS);
+	}
+
+	/**
+	 * @param methods - the methods of requests that are cancelled when their document changes
+	 */
+	public StaleDocumentRequestCanceller(Set<String> methods) {
+		this.methods.addAll(methods);
+	}
+
+	/**
+	 * The methods of requests that are cancelled when their document changes. The returned set can be modified.
+	 */
+	public Set<String> getMethods() {
+		return methods;
+	}
+
+	@Override
+	protected Object getResource(RequestMessage request) {
+		if (request.getMethod() == null || !methods.contains(request.getMethod()))
+			return null;
+		TextDocumentIdentifier textDocument = getTextDocument(request.getParams());
+		return textDocument != null ? textDocument.getUri() : null;
+	}
+
+	/**
+	 * The document that a request with the given parameters refers to, or {@code null}.
+	 */
+	protected TextDocumentIdentifier getTextDocument(Object params) {
+		if (params instanceof TextDocumentPositionParams)
+			return ((TextDocumentPositionParams) params).getTextDocument();
+		if (params instanceof CodeActionParams)
+			return ((CodeActionParams) params).getTextDocument();
+		if (params instanceof CodeLensParams)
+			return ((CodeLensParams) params).getTextDocument();
+		if (params instanceof DocumentSymbolParams)
+			return ((DocumentSymbolParams) params).getTextDocument();
+		if (params instanceof DocumentLinkParams)
+			return ((DocumentLinkParams) params).getTextDocument();
+		if (params instanceof DocumentColorParams)
+			return ((DocumentColorParams) params).getTextDocument();
+		return null;
+	}
+
+	@Override
+	protected Object getChangedResource(NotificationMessage notification) {
+		VersionedTextDocumentIdentifier textDocument = getChangedDocument(notification);
+		return textDocument != null ? textDocument.getUri() : null;
+	}
+
+	@Override
+	protected Integer getChangedVersion(NotificationMessage notification) {
+		VersionedTextDocumentIdentifier textDocument = getChangedDocument(notification);
+		return textDocument != null ? textDocument.getVersion() : null;
+	}
+
+	@Override
+	protected Object getReleasedResource(NotificationMessage notification) {
+		if (DID_CLOSE.equals(notification.getMethod()) && notification.getParams() instanceof DidCloseTextDocumentParams) {
+			TextDocumentIdentifier textDocument = ((DidCloseTextDocumentParams) notification.getParams()).getTextDocument();
+			return textDocument != null ? textDocument.getUri() : null;
+		}
+		return null;
+	}
+
+	private VersionedTextDocumentIdentifier getChangedDocument(NotificationMessage notification) {
+		if (DID_CHANGE.equals(notification.getMethod()) && notification.getParams() instanceof DidChangeTextDocumentParams)
+			return ((DidChangeTextDocumentParams) notification.getParams()).getTextDocument();
+		return null;
+	}
+
+}
@@ -8,12 +8,14 @@
 package org.eclipse.lsp4j.test.launch;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -31,6 +33,9 @@ import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.eclipse.lsp4j.jsonrpc.Endpoint;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.MethodPriorities;
+import org.eclipse.lsp4j.jsonrpc.PriorityScheduler.Priority;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
 import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
@@ -81,6 +86,23 @@ public class LauncherTest {
 		client.joinOnEmpty();
 	}
 	
+	@Test public void testMethodPriorities() throws Exception {
+		MethodPriorities priorities = LSPLauncher.createMethodPriorities();
+		Assert.assertEquals(Priority.URGENT, priorities.get("textDocument/didChange"));
+		Assert.assertEquals(Priority.INTERACTIVE, priorities.get("textDocument/completion"));
+		Assert.assertEquals(Priority.BACKGROUND, priorities.get("workspace/symbol"));
+		Assert.assertNull(priorities.get("textDocument/rename"));
+		// All configured methods are part of the protocol
+		Map<String, JsonRpcMethod> methods = ServiceEndpoints.getSupportedMethods(LanguageServer.class);
+		Properties properties = new Properties();
+		try (InputStream input = LSPLauncher.class.getResourceAsStream("method-priorities.properties")) {
+			properties.load(input);
+		}
+		for (String method : properties.stringPropertyNames()) {
+			Assert.assertTrue(method, methods.containsKey(method));
+		}
+	}
+	
 	
 	static class AssertingEndpoint implements Endpoint {
 		public Map<String, Pair<Object, Object>> expectedRequests = new LinkedHashMap<>();